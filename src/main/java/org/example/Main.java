@@ -2,33 +2,29 @@ package org.example;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
-import akka.pattern.Patterns;
-import akka.util.Timeout;
+import com.typesafe.config.ConfigFactory;
 import org.example.actor.VaultManagerActor;
-import org.example.message.collector.ArtifactResponseFromCollector;
-import org.example.message.vault.AddArtifactToVault;
-import org.example.message.vault.GetArtifactFromVault;
-import scala.jdk.javaapi.FutureConverters;
-
-import java.time.Duration;
-import java.util.Collections;
-import java.util.concurrent.CompletionStage;
+import org.example.actor.VaultSettings;
+import org.example.sharding.ShardSizing;
+import org.example.workload.WorkloadGenerator;
+import org.example.workload.WorkloadSettings;
 
+// Soak test of a local vault, see WorkloadSettings.parse for the options, e.g. --rate=2000 --duration=3600 --keys=1000
 public class Main
 {
-    public static void main(String[] args)
+    public static void main(String[] args) throws InterruptedException
     {
-        ActorSystem actorSystem = ActorSystem.create("Vault");
-        ActorRef vault = actorSystem.actorOf(VaultManagerActor.props(5, 3, 10));
+        WorkloadSettings settings = WorkloadSettings.parse(args);
 
-        vault.tell(new AddArtifactToVault("artefakt", Collections.nCopies(19, (byte) 1)), ActorRef.noSender());
+        ActorSystem actorSystem = ActorSystem.create("Vault", ConfigFactory.parseString("akka.loglevel = ERROR").withFallback(ConfigFactory.load()));
+        ShardSizing sizing = new ShardSizing(settings.shardSize(), Math.max(1, settings.shardSize() / 16), 8 * settings.shardSize());
+        ActorRef vault = actorSystem.actorOf(VaultManagerActor.props(sizing, settings.replicas(), settings.warehouses(), VaultSettings.defaults()),
+                "Vault");
 
-        CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(vault, new GetArtifactFromVault("artefakt"), Timeout.create(Duration.ofSeconds(5))));
+        WorkloadGenerator generator = new WorkloadGenerator(settings, vault, System.out);
+        generator.preload();
+        generator.run();
 
-        future.thenAccept(response -> {
-            ArtifactResponseFromCollector artifact = (ArtifactResponseFromCollector) response;
-            System.out.println(artifact.artifactId());
-            System.out.println(artifact.data());
-        });
+        actorSystem.terminate();
     }
-}
\ No newline at end of file
+}
@@ -2,93 +2,449 @@ package org.example.actor;
 
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
+import akka.actor.Terminated;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+import org.example.message.ConsistencyLevel;
+import org.example.message.TimeoutMessage;
+import org.example.message.collector.ArtifactRangeResponseFromCollector;
+import org.example.message.collector.ArtifactResponseFromCollector;
+import org.example.message.collector.CannotCompleteQuorum;
+import org.example.message.collector.CannotRecoverArtifact;
+import org.example.message.manager.CannotCompleteWrite;
 import org.example.message.manager.DeleteArtifactFromManager;
 import org.example.message.manager.GetArtifactFromManager;
+import org.example.message.manager.GetArtifactRangeFromManager;
+import org.example.message.manager.HandOffShard;
+import org.example.message.manager.HandOffTimeout;
 import org.example.message.manager.InconsistencyFound;
+import org.example.message.manager.ReadsFinished;
+import org.example.message.manager.RelocateShard;
+import org.example.message.manager.RestoreReplica;
+import org.example.message.manager.StartReadRepair;
+import org.example.message.manager.WarehouseUnavailable;
+import org.example.message.replicator.ReplicaRestoreFailed;
+import org.example.message.replicator.ReplicaRestored;
+import org.example.message.replicator.ReplicasRepaired;
+import org.example.message.warehouse.AddHintToWarehouse;
 import org.example.message.warehouse.AddShardToWarehouse;
+import org.example.message.vault.ArtifactAddedToVault;
+import org.example.message.vault.InvalidArtifactRange;
+import org.example.message.vault.ReadRepairRequested;
+import org.example.message.vault.ShardNotAcknowledged;
+import org.example.message.vault.ShardRejectedOverQuota;
 import org.example.message.warehouse.DeleteShardFromWarehouse;
+import org.example.message.warehouse.ShardRejectedByWarehouse;
+import org.example.message.warehouse.ShardStoredInWarehouse;
+import org.example.message.manager.VersionWriteFailed;
+import org.example.message.manager.VersionWritten;
+import org.example.metadata.ArtifactVersion;
+import org.example.sharding.ShardLayout;
+import org.example.tracing.TraceContext;
+import org.example.tracing.Tracer;
 
-import java.util.List;
-import java.util.UUID;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.IntStream;
 
 public class ArtifactManagerActor extends AbstractActor
 {
     private final String artifactId;
+    // Replicas of the shards of the version, keyed by shard ids of the artifact
     private final Multimap<Integer, ActorRef> dataWarehouses;
+    // Shard ids of a version being written are final once the shards shared with the previous version are known
+    private ArtifactVersion version;
+    private final ShardLayout layout;
 
-    // Variables used only in preStart method (so ArtifactManager doesn't send messages from constructor)
+    // Written data starting at dataOffset of the version, kept until every replica is stored or handed off to a substitute warehouse.
+    // Shards with the same range and digest as in the previous version are shared instead of written again.
     private List<Byte> _data;
-    private final int _numberOfShards;
+    private final int dataOffset;
+    private final ArtifactVersion previous;
+    private final Set<Integer> newShards;
 
+    // Partial tail shard of the previous version, read first when an append rewrites it
+    private final int tailShard;
+    private final Multimap<Integer, ActorRef> unacknowledgedReplicas = HashMultimap.create();
+    private final Multimap<Integer, ActorRef> handOffs = HashMultimap.create();
+    // Replicas rejected by warehouses over their quota, waiting for the vault to place them elsewhere
+    private final Multimap<Integer, ActorRef> relocations = HashMultimap.create();
+
+    // Write acknowledgements, the client is answered once every shard is stored by enough replicas
+    private final ConsistencyLevel writeConsistency;
+    private final Duration writeTimeout;
+    private final ActorRef client;
+    private final Map<Integer, Set<ActorRef>> acknowledgements = new HashMap<>();
+    private int unacknowledgedShards;
+    private Cancellable writeDeadline;
+
+    // Collectors of reads admitted by the vault, reported back once they stop
+    private final Set<ActorRef> readers = new HashSet<>();
+
+    // Read repairs by shard ids, queued by the vault until it starts them. Inconsistencies found meanwhile are merged into them.
+    private final Map<Integer, ReadRepair> readRepairs = new HashMap<>();
+
+    private final Tracer tracer = Tracer.get(getContext().getSystem());
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
 
-    public static Props props(String artifactId, List<Byte> data, Multimap<Integer, ActorRef> warehouses, int numberOfShards)
+    public static Props props(String artifactId, List<Byte> data, Multimap<Integer, ActorRef> warehouses, ShardLayout layout,
+                              ConsistencyLevel writeConsistency, ActorRef client)
+    {
+        ArtifactVersion version = new ArtifactVersion(1, layout, IntStream.range(0, layout.numberOfShards()).toArray(), new HashCode[0]);
+        return props(artifactId, data, warehouses, version, null, Set.copyOf(Ints.asList(version.shardIds())), writeConsistency,
+                VaultSettings.defaults().writeTimeout(), client);
+    }
+
+    // Previous version is null for the first one
+    public static Props props(String artifactId, List<Byte> data, Multimap<Integer, ActorRef> warehouses, ArtifactVersion version,
+                              ArtifactVersion previous, Set<Integer> newShards, ConsistencyLevel writeConsistency, Duration writeTimeout,
+                              ActorRef client)
     {
-        return Props.create(ArtifactManagerActor.class, () -> new ArtifactManagerActor(artifactId, data, warehouses, numberOfShards));
+        return Props.create(ArtifactManagerActor.class, () -> new ArtifactManagerActor(artifactId, data, 0, warehouses, version, previous,
+                newShards, -1, writeConsistency, writeTimeout, client));
     }
 
-    public ArtifactManagerActor(String artifactId, List<Byte> data, Multimap<Integer, ActorRef> warehouses, int numberOfShards)
+    // Written shards start at dataOffset, with the bytes of the tail shard in front of the appended data if it is rewritten
+    public static Props propsForAppend(String artifactId, List<Byte> appended, int dataOffset, Multimap<Integer, ActorRef> warehouses,
+                                       ArtifactVersion version, Set<Integer> newShards, int tailShard, ConsistencyLevel writeConsistency,
+                                       Duration writeTimeout, ActorRef client)
+    {
+        return Props.create(ArtifactManagerActor.class, () -> new ArtifactManagerActor(artifactId, appended, dataOffset, warehouses, version,
+                null, newShards, tailShard, writeConsistency, writeTimeout, client));
+    }
+
+    public static Props props(String artifactId, Multimap<Integer, ActorRef> warehouses, ArtifactVersion version)
+    {
+        return Props.create(ArtifactManagerActor.class, () -> new ArtifactManagerActor(artifactId, null, 0, warehouses, version, null, Set.of(),
+                -1, null, null, ActorRef.noSender()));
+    }
+
+    public ArtifactManagerActor(String artifactId, List<Byte> data, int dataOffset, Multimap<Integer, ActorRef> warehouses, ArtifactVersion version,
+                                ArtifactVersion previous, Set<Integer> newShards, int tailShard, ConsistencyLevel writeConsistency, Duration writeTimeout, ActorRef client)
     {
         this.artifactId = artifactId;
 
         dataWarehouses = warehouses;
+        this.version = version;
+        this.layout = version.layout();
 
         this._data = data;
-        this._numberOfShards = numberOfShards;
+        this.dataOffset = dataOffset;
+        this.previous = previous;
+        this.newShards = new HashSet<>(newShards);
+        this.tailShard = tailShard;
+
+        this.writeConsistency = writeConsistency;
+        this.writeTimeout = writeTimeout;
+        this.client = client;
+        this.unacknowledgedShards = data == null ? 0 : newShards.size();
     }
 
     @Override
     public void preStart()
     {
-        int shardSize = _data.size() / _numberOfShards;
+        // Artifact is already stored, e.g. recovered by the vault
+        if (_data == null)
+        {
+            return;
+        }
 
-        for (int shardId = 0; shardId < _numberOfShards; ++shardId)
+        writeDeadline = getContext().getSystem().scheduler().scheduleOnce(
+                writeTimeout,
+                getSelf(),
+                new TimeoutMessage(),
+                getContext().getDispatcher(),
+                getSelf()
+        );
+
+        if (tailShard >= 0)
         {
-            int startIndex = shardId * shardSize;
-            int endIndex;
+            getContext().actorOf(ShardCollectorActor.props(artifactId, List.of(tailShard), dataWarehouses, ConsistencyLevel.QUORUM,
+                    getSelf(), getSelf()), actorName("ArtifactCollector", artifactId));
+            return;
+        }
 
-            if (shardId == _numberOfShards - 1)
+        writeShards();
+    }
+
+    // Shards are hashed here rather than by the vault, so the cost of a write stays off the vault's mailbox
+    private void writeShards()
+    {
+        int[] shardIds = version.shardIds().clone();
+        HashCode[] shardDigests = version.digests().clone();
+        ArtifactVersion written = new ArtifactVersion(version.version(), layout, shardIds, shardDigests);
+
+        for (int index = 0; index < layout.numberOfShards(); ++index)
+        {
+            int shardId = shardIds[index];
+
+            if (!newShards.contains(shardId))
             {
-                endIndex = _data.size();
+                continue;
             }
-            else
+
+            int startIndex = layout.start(index);
+            int endIndex = layout.end(index);
+
+            if (log.isDebugEnabled())
             {
-                endIndex = (shardId + 1) * shardSize;
+                log.debug("Shard [{}] range: [{}:{}]", shardId, startIndex, endIndex);
             }
 
-            log.info("Shard [" + shardId + "] range: [" + startIndex + ":" + endIndex + "]");
+            List<Byte> shard = _data.subList(startIndex - dataOffset, endIndex - dataOffset);
 
-            List<Byte> shard = _data.subList(startIndex, endIndex);
+            if (index < shardDigests.length)
+            {
+                shardDigests[index] = Hashing.murmur3_128().hashBytes(Bytes.toArray(shard));
+            }
+
+            // Same range and content as a shard of the previous version
+            int previousIndex = previous == null || startIndex >= previous.layout().size() ? -1 : previous.layout().shardAt(startIndex);
+
+            if (previousIndex >= 0 && written.sameShard(index, previous, previousIndex))
+            {
+                shardIds[index] = previous.shardIds()[previousIndex];
+                newShards.remove(shardId);
+                dataWarehouses.removeAll(shardId);
+                continue;
+            }
 
             for (ActorRef warehouse : dataWarehouses.get(shardId))
             {
                 warehouse.tell(new AddShardToWarehouse(artifactId, shardId, shard), getSelf());
+                unacknowledgedReplicas.put(shardId, warehouse);
             }
         }
 
-        log.info("Created ArtifactManager [" + artifactId + "]. Data length: " + _data.size());
+        if (log.isDebugEnabled())
+        {
+            log.debug("Writing version {} of artifact [{}], shards written: {}/{}", version.version(), artifactId, newShards.size(),
+                    layout.numberOfShards());
+        }
+
+        version = written;
+        unacknowledgedShards = newShards.size();
+
+        // Content of the previous version, nothing to write
+        if (unacknowledgedShards == 0)
+        {
+            _data = null;
+            writeDeadline.cancel();
+            writeAcknowledged();
+            return;
+        }
+
+        // Replicas not acknowledged by then are written to substitute warehouses with a hint
+        getContext().getSystem().scheduler().scheduleOnce(
+                Duration.ofSeconds(1),
+                getSelf(),
+                new HandOffTimeout(),
+                getContext().getDispatcher(),
+                getSelf()
+        );
+    }
+
+    private void tailShardRead(ArtifactResponseFromCollector message)
+    {
+        if (_data == null)
+        {
+            return;
+        }
+
+        List<Byte> tail = message.data();
+
+        if (dataOffset + tail.size() + _data.size() != layout.size())
+        {
+            log.error("Tail shard [{}] of artifact [{}] has unexpected length {}", tailShard, artifactId, tail.size());
+            writeFailed();
+            return;
+        }
+
+        List<Byte> data = new ArrayList<>(tail.size() + _data.size());
+        data.addAll(tail);
+        data.addAll(_data);
+        _data = data;
+
+        writeShards();
+    }
+
+    private void tailShardNotRead(Object message)
+    {
+        if (_data != null)
+        {
+            log.error("Cannot read tail shard [{}] of artifact [{}]", tailShard, artifactId);
+            writeFailed();
+        }
+    }
 
-        // Cleanup
-        this._data = null;
+    // Collectors are stopped with the manager
+    @Override
+    public void postStop()
+    {
+        if (!readers.isEmpty())
+        {
+            getContext().getParent().tell(new ReadsFinished(readers.size()), getSelf());
+        }
     }
 
     @Override
     public Receive createReceive()
     {
         return receiveBuilder()
-                .match(GetArtifactFromManager.class, this::getArtifact)
+                .match(GetArtifactFromManager.class, message -> tracer.traced("manager get", "manager", message.trace(),
+                        trace -> getArtifact(message, trace)))
+                .match(GetArtifactRangeFromManager.class, message -> tracer.traced("manager get range", "manager", message.trace(),
+                        trace -> getArtifactRange(message, trace)))
                 .match(DeleteArtifactFromManager.class, this::deleteArtifact)
-                .match(InconsistencyFound.class, this::callReplicator)
+                .match(InconsistencyFound.class, this::inconsistencyFound)
+                .match(StartReadRepair.class, this::callReplicator)
+                .match(ReplicasRepaired.class, this::replicasRepaired)
+                .match(ShardStoredInWarehouse.class, this::shardStored)
+                .match(ShardRejectedByWarehouse.class, this::shardRejected)
+                .match(RelocateShard.class, this::relocateShard)
+                .match(TimeoutMessage.class, this::writeTimeout)
+                .match(ArtifactResponseFromCollector.class, this::tailShardRead)
+                .match(Terminated.class, this::readFinished)
+                .match(CannotCompleteQuorum.class, this::tailShardNotRead)
+                .match(CannotRecoverArtifact.class, this::tailShardNotRead)
+                .match(HandOffTimeout.class, this::handOffTimeout)
+                .match(HandOffShard.class, this::handOffShard)
+                .match(WarehouseUnavailable.class, this::warehouseUnavailable)
+                .match(RestoreReplica.class, this::restoreReplica)
+                .match(ReplicaRestored.class, this::replicaRestored)
+                .match(ReplicaRestoreFailed.class, message -> getContext().getParent().tell(message, getSelf()))
                 .build();
     }
 
-    private void getArtifact(GetArtifactFromManager message)
+    private void shardStored(ShardStoredInWarehouse message)
     {
-        getContext().actorOf(ShardCollectorActor.props(artifactId, dataWarehouses, getSelf(), getSender()), "ArtifactCollector-" + artifactId + "-" + UUID.randomUUID());
+        int shardId = message.shardId();
+
+        if (!dataWarehouses.containsEntry(shardId, getSender()) && !handOffs.containsEntry(shardId, getSender()))
+        {
+            return;
+        }
+
+        if (unacknowledgedReplicas.remove(shardId, getSender()))
+        {
+            releaseDataIfWritten();
+        }
+
+        if (unacknowledgedShards == 0)
+        {
+            return;
+        }
+
+        Set<ActorRef> acknowledged = acknowledgements.computeIfAbsent(shardId, id -> new HashSet<>());
+        int requiredReplicas = writeConsistency.requiredReplicas(dataWarehouses.get(shardId).size());
+
+        if (acknowledged.add(getSender()) && acknowledged.size() == requiredReplicas)
+        {
+            --unacknowledgedShards;
+
+            if (unacknowledgedShards == 0)
+            {
+                writeDeadline.cancel();
+                acknowledgements.clear();
+                writeAcknowledged();
+            }
+        }
+    }
+
+    private void writeTimeout(TimeoutMessage message)
+    {
+        if (unacknowledgedShards > 0)
+        {
+            log.error("Cannot complete write of artifact [{}]. {} shards not acknowledged with consistency {}", artifactId, unacknowledgedShards,
+                    writeConsistency);
+            writeFailed();
+        }
+
+        _data = null;
+        unacknowledgedReplicas.clear();
+    }
+
+    private void writeFailed()
+    {
+        writeDeadline.cancel();
+        _data = null;
+        unacknowledgedReplicas.clear();
+        unacknowledgedShards = 0;
+
+        // Vault rolls the version back before the client can retry
+        getContext().getParent().tell(new VersionWriteFailed(artifactId, version.version()), getSelf());
+        client.tell(new CannotCompleteWrite(artifactId), getSelf());
+    }
+
+    private void writeAcknowledged()
+    {
+        // Vault records the version before the client can send its next request
+        getContext().getParent().tell(new VersionWritten(artifactId, version), getSelf());
+        client.tell(new ArtifactAddedToVault(artifactId, version.version()), getSelf());
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Artifact [{}] version {} acknowledged with consistency {}", artifactId, version.version(), writeConsistency);
+        }
+    }
+
+    private void getArtifact(GetArtifactFromManager message, TraceContext trace)
+    {
+        reading(getContext().actorOf(ShardCollectorActor.props(artifactId, Ints.asList(version.shardIds()), dataWarehouses, message.readConsistency(),
+                message.readMode(), trace, getSelf(), getSender()), actorName("ArtifactCollector", artifactId)));
+    }
+
+    private void getArtifactRange(GetArtifactRangeFromManager message, TraceContext trace)
+    {
+        int offset = message.offset();
+        int length = message.length();
+
+        if (offset < 0 || length < 0 || offset > layout.size())
+        {
+            getContext().getParent().tell(new ReadsFinished(1), getSelf());
+            getSender().tell(new InvalidArtifactRange(artifactId, offset, length, layout.size()), getSelf());
+            log.warning("Invalid range [{}:{}] of artifact [{}] of size {}", offset, length, artifactId, layout.size());
+            return;
+        }
+
+        int end = (int) Math.min((long) offset + length, layout.size());
+
+        if (offset == end)
+        {
+            getContext().getParent().tell(new ReadsFinished(1), getSelf());
+            getSender().tell(new ArtifactRangeResponseFromCollector(artifactId, offset, Collections.emptyList()), getSelf());
+            return;
+        }
+
+        int firstShard = layout.shardAt(offset);
+        int lastShard = layout.shardAt(end - 1);
+        List<Integer> shardIds = Ints.asList(version.shardIds()).subList(firstShard, lastShard + 1);
+
+        reading(getContext().actorOf(ShardCollectorActor.propsForRange(artifactId, shardIds, dataWarehouses, message.readConsistency(),
+                message.readMode(), offset, offset - layout.start(firstShard), end - offset, trace, getSelf(), getSender()), actorName("ArtifactCollector", artifactId)));
+    }
+
+    private void reading(ActorRef collector)
+    {
+        readers.add(getContext().watch(collector));
+    }
+
+    private void readFinished(Terminated message)
+    {
+        if (readers.remove(message.getActor()))
+        {
+            getContext().getParent().tell(new ReadsFinished(1), getSelf());
+        }
     }
 
     private void deleteArtifact(DeleteArtifactFromManager message)
@@ -102,14 +458,192 @@ public class ArtifactManagerActor extends AbstractActor
         }
         dataWarehouses.clear();
 
+        for (var entry : handOffs.entries())
+        {
+            entry.getValue().tell(new DeleteShardFromWarehouse(artifactId, entry.getKey()), getSelf());
+        }
+
         getContext().stop(getSelf());
     }
 
-    private void callReplicator(InconsistencyFound message)
+    private void inconsistencyFound(InconsistencyFound message)
     {
         int shardId = message.shardId();
-        List<Byte> correctData = message.correctData();
+        ReadRepair repair = readRepairs.get(shardId);
+
+        // Replicas being repaired already are checked again by later reads
+        if (repair != null)
+        {
+            if (!repair.started())
+            {
+                repair.divergentReplicas().addAll(message.divergentReplicas());
+            }
+
+            return;
+        }
+
+        readRepairs.put(shardId, new ReadRepair(message.correctData(), new HashSet<>(message.divergentReplicas())));
+        getContext().getParent().tell(new ReadRepairRequested(artifactId, shardId), getSelf());
+    }
+
+    private void callReplicator(StartReadRepair message)
+    {
+        int shardId = message.shardId();
+        ReadRepair repair = readRepairs.get(shardId);
+
+        if (repair == null || repair.started())
+        {
+            getSender().tell(new ReplicasRepaired(artifactId, shardId, 0), getSelf());
+            return;
+        }
 
-        getContext().actorOf(ShardReplicatorActor.props(artifactId, shardId, correctData, dataWarehouses.get(shardId).stream().toList()), "ShardReplicator-" + artifactId + "-" + shardId + "-" + UUID.randomUUID());
+        // Replicas moved away in the meantime aren't written
+        List<ActorRef> replicas = repair.divergentReplicas().stream()
+                .filter(warehouse -> dataWarehouses.containsEntry(shardId, warehouse))
+                .toList();
+
+        readRepairs.put(shardId, new ReadRepair(repair.data(), repair.divergentReplicas(), true));
+        getContext().actorOf(ShardReplicatorActor.props(artifactId, shardId, repair.data(), replicas), actorName("ShardReplicator", artifactId + "-" + shardId));
+    }
+
+    private void replicasRepaired(ReplicasRepaired message)
+    {
+        readRepairs.remove(message.shardId());
+        getContext().getParent().tell(message, getSelf());
+    }
+
+    private void warehouseUnavailable(WarehouseUnavailable message)
+    {
+        // Reads stop waiting for the failed replica before it is restored elsewhere
+        dataWarehouses.values().removeIf(warehouse -> warehouse.equals(message.warehouse()));
+        unacknowledgedReplicas.values().removeIf(warehouse -> warehouse.equals(message.warehouse()));
+    }
+
+    private void restoreReplica(RestoreReplica message)
+    {
+        int shardId = message.shardId();
+        List<ActorRef> sources = dataWarehouses.get(shardId).stream().toList();
+
+        getContext().actorOf(ShardReplicatorActor.propsForRestore(artifactId, shardId, sources, message.failedWarehouseId(), message.targetWarehouseId(),
+                message.target()), actorName("ShardReplicator", artifactId + "-" + shardId));
+    }
+
+    private void replicaRestored(ReplicaRestored message)
+    {
+        if (!dataWarehouses.containsEntry(message.shardId(), message.target()))
+        {
+            dataWarehouses.put(message.shardId(), message.target());
+        }
+
+        getContext().getParent().tell(message, getSelf());
+    }
+
+    private void handOffTimeout(HandOffTimeout message)
+    {
+        for (var entry : unacknowledgedReplicas.entries())
+        {
+            getContext().getParent().tell(new ShardNotAcknowledged(artifactId, entry.getKey(), entry.getValue()), getSelf());
+        }
+    }
+
+    private void handOffShard(HandOffShard message)
+    {
+        int shardId = message.shardId();
+
+        // Acknowledged in the meantime or the write has already timed out
+        if (_data == null || !unacknowledgedReplicas.remove(shardId, message.owner()))
+        {
+            return;
+        }
+
+        int index = Ints.indexOf(version.shardIds(), shardId);
+
+        handOffs.put(shardId, message.substitute());
+        message.substitute().tell(new AddHintToWarehouse(artifactId, shardId, _data.subList(layout.start(index) - dataOffset, layout.end(index) - dataOffset),
+                message.ownerWarehouseId(), message.owner()), getSelf());
+
+        log.warning("Handed off shard [{}] of artifact [{}] for warehouse [{}]", shardId, artifactId, message.ownerWarehouseId());
+
+        releaseDataIfWritten();
+    }
+
+    private void shardRejected(ShardRejectedByWarehouse message)
+    {
+        int shardId = message.shardId();
+
+        // Substitute of a hand-off is full, the owner's replica stays missing
+        if (handOffs.remove(shardId, getSender()))
+        {
+            log.warning("Substitute warehouse [{}] rejected shard [{}] of artifact [{}]", message.warehouseId(), shardId, artifactId);
+            return;
+        }
+
+        // Warehouse is overloaded, the replica is handed off as if it weren't acknowledged in time
+        if (message.isOverloaded())
+        {
+            if (_data != null && unacknowledgedReplicas.containsEntry(shardId, getSender()))
+            {
+                getContext().getParent().tell(new ShardNotAcknowledged(artifactId, shardId, getSender()), getSelf());
+            }
+
+            return;
+        }
+
+        if (!unacknowledgedReplicas.remove(shardId, getSender()))
+        {
+            return;
+        }
+
+        relocations.put(shardId, getSender());
+        getContext().getParent().tell(new ShardRejectedOverQuota(artifactId, shardId, getSender()), getSelf());
+    }
+
+    private void relocateShard(RelocateShard message)
+    {
+        int shardId = message.shardId();
+
+        if (!relocations.remove(shardId, message.from()))
+        {
+            return;
+        }
+
+        dataWarehouses.remove(shardId, message.from());
+        dataWarehouses.put(shardId, message.target());
+
+        // Write has timed out in the meantime
+        if (_data == null)
+        {
+            return;
+        }
+
+        int index = Ints.indexOf(version.shardIds(), shardId);
+
+        message.target().tell(new AddShardToWarehouse(artifactId, shardId, _data.subList(layout.start(index) - dataOffset, layout.end(index) - dataOffset)),
+                getSelf());
+        unacknowledgedReplicas.put(shardId, message.target());
+
+        log.info("Relocated shard [{}] of artifact [{}] to warehouse [{}]", shardId, artifactId, message.targetWarehouseId());
+    }
+
+    // Unique name of a child actor, artifact ids may contain characters which aren't allowed in actor names
+    static String actorName(String kind, String artifactId)
+    {
+        return kind + "-" + URLEncoder.encode(artifactId, StandardCharsets.UTF_8) + "-" + UUID.randomUUID();
+    }
+
+    private void releaseDataIfWritten()
+    {
+        if (unacknowledgedReplicas.isEmpty() && relocations.isEmpty())
+        {
+            _data = null;
+        }
+    }
+
+    private record ReadRepair(List<Byte> data, Set<ActorRef> divergentReplicas, boolean started)
+    {
+        ReadRepair(List<Byte> data, Set<ActorRef> divergentReplicas)
+        {
+            this(data, divergentReplicas, false);
+        }
     }
 }
@@ -6,64 +6,178 @@ import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import akka.pattern.Patterns;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Bytes;
+import org.example.buffer.CompositeByteList;
+import org.example.message.ConsistencyLevel;
+import org.example.message.ReadMode;
 import org.example.message.TimeoutMessage;
+import org.example.message.collector.ArtifactRangeResponseFromCollector;
 import org.example.message.collector.ArtifactResponseFromCollector;
 import org.example.message.collector.CannotCompleteQuorum;
 import org.example.message.collector.CannotRecoverArtifact;
 import org.example.message.collector.CollectShardsForCollector;
+import org.example.message.collector.HedgeShardRequests;
+import org.example.message.collector.ShardDigestComputed;
 import org.example.message.manager.InconsistencyFound;
 import org.example.message.warehouse.ArtifactNotFoundInWarehouse;
 import org.example.message.warehouse.GetShardFromWarehouse;
 import org.example.message.warehouse.ShardNotFoundInWarehouse;
 import org.example.message.warehouse.ShardResponseFromWarehouse;
+import org.example.selection.ReplicaSelector;
+import org.example.storage.LocalShardReads;
+import org.example.tracing.TraceContext;
+import org.example.tracing.Tracer;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class ShardCollectorActor extends AbstractActor
 {
+    // Smaller shards are digested right away, handing them over would cost more than hashing them
+    private static final int OFFLOADED_DIGEST_SIZE = 64 * 1024;
+
     private final String artifactId;
     private final Multimap<Integer, ActorRef> warehouses;
-    private final List<Map<List<Byte>, Integer>> shards;
-    private final int numberOfShards;
-    private int expectedResponses;
-    private int receivedResponses = 0;
+    private final List<Integer> shardIds;
+    private final Map<Integer, Integer> shardIndexes = new HashMap<>();
+    // Votes for every version of each shard by its digest, the data of each version and the version returned by each replica
+    private final List<Map<HashCode, Integer>> shards;
+    private final List<Map<HashCode, List<Byte>>> shardData;
+    private final List<Map<ActorRef, HashCode>> replicaDigests;
+
+    // Digests of large shards are computed on the verification dispatcher, the responses wait for them before being counted
+    private final Executor verificationExecutor;
+    private final int[] verifyingPerShard;
+    private int verifying = 0;
+
+    // Replicas of each shard not asked yet, in the order they are asked, and the requests waiting for a response since their send time
+    private final ReadMode readMode;
+    private final List<Deque<ActorRef>> unaskedReplicas;
+    private final Map<ShardRequest, Long> pendingRequests = new HashMap<>();
+    private final int[] pendingPerShard;
+    private Cancellable hedge;
+
+    // Shard is resolved once a single version of it has been returned by enough replicas, by the digest of that version
+    private final ConsistencyLevel readConsistency;
+    private final HashCode[] resolved;
+    private int resolvedShards = 0;
+
+    // Requested slice of the collected shards, skip is counted from the beginning of the first collected shard
+    private final boolean rangeRequest;
+    private final int offset;
+    private final int skip;
+    private final int length;
 
     private final ActorRef artifactManager;
     private final ActorRef originalSender;
     private Cancellable timeout;
 
+    // Context of the read which spawned the collector and the span of the collection
+    private final TraceContext trace;
+    private final long spanId;
+    private long startedAt;
+
+    private final Tracer tracer = Tracer.get(getContext().getSystem());
+    private final ReplicaSelector replicaSelector = ReplicaSelector.get(getContext().getSystem());
+    private final LocalShardReads localShardReads = LocalShardReads.get(getContext().getSystem());
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
 
-    public static Props props(String artifactId, Multimap<Integer, ActorRef> warehouses, ActorRef artifactManager, ActorRef originalSender)
+    public static Props props(String artifactId, int numberOfShards, Multimap<Integer, ActorRef> warehouses, ConsistencyLevel readConsistency,
+                              ActorRef artifactManager, ActorRef originalSender)
+    {
+        return props(artifactId, IntStream.range(0, numberOfShards).boxed().toList(), warehouses, readConsistency, artifactManager, originalSender);
+    }
+
+    public static Props props(String artifactId, List<Integer> shardIds, Multimap<Integer, ActorRef> warehouses, ConsistencyLevel readConsistency,
+                              ActorRef artifactManager, ActorRef originalSender)
+    {
+        return props(artifactId, shardIds, warehouses, readConsistency, ReadMode.FAN_OUT, TraceContext.NONE, artifactManager, originalSender);
+    }
+
+    public static Props props(String artifactId, List<Integer> shardIds, Multimap<Integer, ActorRef> warehouses, ConsistencyLevel readConsistency,
+                              ReadMode readMode, TraceContext trace, ActorRef artifactManager, ActorRef originalSender)
+    {
+        return Props.create(ShardCollectorActor.class, () -> new ShardCollectorActor(artifactId, shardIds, warehouses, readConsistency,
+                readMode, false, 0, 0, -1, trace, artifactManager, originalSender));
+    }
+
+    public static Props propsForRange(String artifactId, List<Integer> shardIds, Multimap<Integer, ActorRef> warehouses, ConsistencyLevel readConsistency,
+                                      int offset, int skip, int length, ActorRef artifactManager, ActorRef originalSender)
+    {
+        return propsForRange(artifactId, shardIds, warehouses, readConsistency, ReadMode.FAN_OUT, offset, skip, length, TraceContext.NONE,
+                artifactManager, originalSender);
+    }
+
+    public static Props propsForRange(String artifactId, List<Integer> shardIds, Multimap<Integer, ActorRef> warehouses, ConsistencyLevel readConsistency,
+                                      ReadMode readMode, int offset, int skip, int length, TraceContext trace, ActorRef artifactManager,
+                                      ActorRef originalSender)
     {
-        return Props.create(ShardCollectorActor.class, () -> new ShardCollectorActor(artifactId, warehouses, artifactManager, originalSender));
+        return Props.create(ShardCollectorActor.class, () -> new ShardCollectorActor(artifactId, shardIds, warehouses, readConsistency,
+                readMode, true, offset, skip, length, trace, artifactManager, originalSender));
     }
 
-    public ShardCollectorActor(String artifactId, Multimap<Integer, ActorRef> warehouses, ActorRef artifactManager, ActorRef originalSender)
+    public ShardCollectorActor(String artifactId, List<Integer> shardIds, Multimap<Integer, ActorRef> warehouses, ConsistencyLevel readConsistency,
+                               ReadMode readMode, boolean rangeRequest, int offset, int skip, int length, TraceContext trace,
+                               ActorRef artifactManager, ActorRef originalSender)
     {
         this.artifactId = artifactId;
         this.warehouses = warehouses;
+        this.shardIds = shardIds;
+        this.readConsistency = readConsistency;
+        this.resolved = new HashCode[shardIds.size()];
 
-        numberOfShards = Collections.max(warehouses.keySet()) + 1;
+        this.readMode = readMode;
+        this.unaskedReplicas = new ArrayList<>(shardIds.size());
+        this.pendingPerShard = new int[shardIds.size()];
 
-        this.shards = new ArrayList<>(numberOfShards);
+        this.shards = new ArrayList<>(shardIds.size());
+        this.shardData = new ArrayList<>(shardIds.size());
+        this.replicaDigests = new ArrayList<>(shardIds.size());
+        this.verificationExecutor = getContext().getSystem().dispatchers().lookup("shard-vault.verification-dispatcher");
+        this.verifyingPerShard = new int[shardIds.size()];
 
-        for (int i = 0; i < numberOfShards; ++i)
+        for (int i = 0; i < shardIds.size(); ++i)
         {
+            this.shardIndexes.put(shardIds.get(i), i);
             this.shards.add(new HashMap<>());
+            this.shardData.add(new HashMap<>());
+            this.replicaDigests.add(new HashMap<>());
         }
 
+        this.rangeRequest = rangeRequest;
+        this.offset = offset;
+        this.skip = skip;
+        this.length = length;
+
         this.artifactManager = artifactManager;
         this.originalSender = originalSender;
 
-        log.info("Created artifact collector of artifact [" + artifactId + "]");
+        this.trace = trace;
+        this.spanId = tracer.newSpanId();
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Created artifact collector of artifact [{}]", artifactId);
+        }
     }
 
     @Override
     public void preStart()
     {
+        if (trace.isTraced())
+        {
+            startedAt = Tracer.now();
+            tracer.recordTransit("collector spawn", "collector", trace, startedAt);
+        }
+
         getSelf().tell(new CollectShardsForCollector(), getSelf());
 
         timeout = getContext().getSystem().scheduler().scheduleOnce(
@@ -81,43 +195,208 @@ public class ShardCollectorActor extends AbstractActor
         return receiveBuilder()
                 .match(CollectShardsForCollector.class, this::askForShards)
                 .match(ShardResponseFromWarehouse.class, this::buildArtifact)
+                .match(ShardDigestComputed.class, this::countVote)
                 .match(TimeoutMessage.class, this::timeout)
                 .match(ArtifactNotFoundInWarehouse.class, this::artifactNotFound)
                 .match(ShardNotFoundInWarehouse.class, this::shardNotFound)
+                .match(HedgeShardRequests.class, this::hedgeRequests)
                 .build();
     }
 
     private void askForShards(CollectShardsForCollector message)
     {
-        int messagesSent = 0;
-        for (int shardId : warehouses.keySet())
+        boolean hedged = readMode == ReadMode.HEDGED;
+
+        for (int index = 0; index < shardIds.size(); ++index)
         {
-            for (ActorRef warehouse : warehouses.get(shardId))
+            Collection<ActorRef> replicas = warehouses.get(shardIds.get(index));
+            unaskedReplicas.add(new ArrayDeque<>(hedged ? replicaSelector.fastestFirst(replicas) : replicas));
+
+            int requests = hedged ? readConsistency.requiredReplicas(replicas.size()) : replicas.size();
+
+            for (int i = 0; i < requests; ++i)
             {
-                warehouse.tell(new GetShardFromWarehouse(artifactId, shardId), getSelf());
-                ++messagesSent;
-                log.info("Asked for shard [" + shardId + "]");
+                askNextReplica(index);
             }
         }
 
-        this.expectedResponses = messagesSent;
+        if (log.isDebugEnabled())
+        {
+            log.debug("Asked {} warehouses for {} shards of artifact [{}]", pendingRequests.size(), shardIds.size(), artifactId);
+        }
+
+        if (pendingRequests.isEmpty())
+        {
+            finish();
+        }
+        else if (hedged)
+        {
+            scheduleHedge();
+        }
+    }
+
+    private boolean askNextReplica(int index)
+    {
+        ActorRef warehouse = unaskedReplicas.get(index).poll();
+
+        if (warehouse == null)
+        {
+            return false;
+        }
+
+        int shardId = shardIds.get(index);
+        List<Byte> local = localShardReads.get(warehouse, artifactId, shardId);
+
+        // In-memory shard of a warehouse in this actor system is read directly and handled as its response
+        if (local != null)
+        {
+            getSelf().tell(new ShardResponseFromWarehouse(artifactId, shardId, local), warehouse);
+        }
+        else
+        {
+            warehouse.tell(new GetShardFromWarehouse(artifactId, shardId, tracer.child(trace, spanId)), getSelf());
+        }
+
+        pendingRequests.put(new ShardRequest(warehouse, shardId), System.nanoTime());
+        ++pendingPerShard[index];
+        replicaSelector.requestSent(warehouse);
+
+        return true;
+    }
+
+    private void scheduleHedge()
+    {
+        hedge = getContext().getSystem().scheduler().scheduleOnce(
+                replicaSelector.hedgeDelay(),
+                getSelf(),
+                new HedgeShardRequests(),
+                getContext().getDispatcher(),
+                getSelf()
+        );
+    }
+
+    // Shards still unresolved after the hedge delay are asked from one more replica each
+    private void hedgeRequests(HedgeShardRequests message)
+    {
+        boolean replicasLeft = false;
+
+        for (int index = 0; index < shardIds.size(); ++index)
+        {
+            if (resolved[index] == null && askNextReplica(index))
+            {
+                replicasLeft |= !unaskedReplicas.get(index).isEmpty();
+            }
+        }
+
+        if (replicasLeft)
+        {
+            scheduleHedge();
+        }
     }
 
     private void buildArtifact(ShardResponseFromWarehouse message)
     {
-        ++receivedResponses;
+        tracer.recordTransit("warehouse reply", "collector", message.trace(), Tracer.now());
 
-        int shardId = message.shardId();
+        Integer index = shardIndexes.get(message.shardId());
         List<Byte> data = message.data();
+        ActorRef warehouse = getSender();
+
+        if (index == null || !responded(getSender(), message.shardId()))
+        {
+            log.warning("Received unexpected shard [{}] of artifact [{}]", message.shardId(), artifactId);
+            return;
+        }
+
+        if (data.size() < OFFLOADED_DIGEST_SIZE)
+        {
+            countVote(new ShardDigestComputed(message.shardId(), warehouse, digest(data), data));
+            return;
+        }
+
+        ++verifyingPerShard[index];
+        ++verifying;
+
+        Patterns.pipe(CompletableFuture.supplyAsync(() -> new ShardDigestComputed(message.shardId(), warehouse, digest(data), data), verificationExecutor),
+                getContext().getDispatcher()).to(getSelf());
+    }
+
+    private void countVote(ShardDigestComputed message)
+    {
+        int index = shardIndexes.get(message.shardId());
+
+        if (message.data().size() >= OFFLOADED_DIGEST_SIZE)
+        {
+            --verifyingPerShard[index];
+            --verifying;
+        }
 
-        shards.get(shardId).merge(data, 1, Integer::sum);
+        int votes = shards.get(index).merge(message.digest(), 1, Integer::sum);
+        shardData.get(index).putIfAbsent(message.digest(), message.data());
+        replicaDigests.get(index).put(message.warehouse(), message.digest());
 
-        if (receivedResponses == expectedResponses)
+        if (resolved[index] == null && votes >= readConsistency.requiredReplicas(warehouses.get(message.shardId()).size()))
+        {
+            resolved[index] = message.digest();
+            ++resolvedShards;
+        }
+
+        continueCollecting(index);
+    }
+
+    private static HashCode digest(List<Byte> data)
+    {
+        return Hashing.murmur3_128().hashBytes(Bytes.toArray(data));
+    }
+
+    // Shard without a request in flight and without enough votes, e.g. replicas disagree or miss it, is asked from another replica
+    private void continueCollecting(int index)
+    {
+        if (readMode == ReadMode.HEDGED && resolved[index] == null && pendingPerShard[index] == 0 && verifyingPerShard[index] == 0)
+        {
+            askNextReplica(index);
+        }
+
+        if ((pendingRequests.isEmpty() && verifying == 0) || resolvedShards == shardIds.size())
         {
             finish();
         }
     }
 
+    private boolean responded(ActorRef warehouse, int shardId)
+    {
+        Long sentAt = pendingRequests.remove(new ShardRequest(warehouse, shardId));
+
+        if (sentAt == null)
+        {
+            return false;
+        }
+
+        --pendingPerShard[shardIndexes.get(shardId)];
+        replicaSelector.responseReceived(warehouse, (System.nanoTime() - sentAt) / 1000);
+
+        return true;
+    }
+
+    // Requests still in flight count against the response time of their warehouses
+    @Override
+    public void postStop()
+    {
+        if (hedge != null)
+        {
+            hedge.cancel();
+        }
+
+        long now = System.nanoTime();
+
+        for (var request : pendingRequests.entrySet())
+        {
+            replicaSelector.requestAbandoned(request.getKey().warehouse(), (now - request.getValue()) / 1000);
+        }
+
+        pendingRequests.clear();
+    }
+
     private void timeout(TimeoutMessage message)
     {
         finish();
@@ -130,62 +409,102 @@ public class ShardCollectorActor extends AbstractActor
             timeout.cancel();
         }
 
+        // Collection ends early once every response is received or every shard is resolved
+        boolean timedOut = (!pendingRequests.isEmpty() || verifying > 0) && resolvedShards < shardIds.size();
+        tracer.record(timedOut ? "collector timeout" : "collector collect", "collector", trace, spanId, startedAt, Tracer.now());
+
         if (shards.stream().noneMatch(Map::isEmpty))
         {
-            List<List<Byte>> result = new LinkedList<>();
+            List<List<Byte>> result = new ArrayList<>(shardIds.size());
 
-            for (int shardId = 0; shardId < numberOfShards; ++shardId)
+            for (int index = 0; index < shardIds.size(); ++index)
             {
-                Map<List<Byte>, Integer> options = shards.get(shardId);
-
-                int maxVotes = Collections.max(options.values());
-
-                List<List<Byte>> candidates = options.entrySet().stream()
-                        .filter(entry -> entry.getValue() == maxVotes)
-                        .map(Map.Entry::getKey)
-                        .toList();
+                int shardId = shardIds.get(index);
+                HashCode correctDigest = resolved[index];
 
-                if (candidates.size() == 1)
-                {
-                    List<Byte> correctData = candidates.getFirst();
-                    result.add(correctData);
-
-                    if (options.size() > 1)
-                    {
-                        artifactManager.tell(new InconsistencyFound(shardId, correctData), getSelf());
-                        log.info("Detected inconsistency of shard [" + shardId + "] of artifact [" + artifactId + "]");
-                    }
-                }
-                else
+                // Version with the most votes is not returned when fewer replicas than the read consistency requires agree on it,
+                // and the version which resolved the shard is kept even if replies arriving later diverge from it
+                if (correctDigest == null)
                 {
                     originalSender.tell(new CannotCompleteQuorum(artifactId), originalSender);
-                    log.error("Cannot complete quorum. There are " + candidates.size() + " candidates with " + maxVotes + " votes");
+                    log.error("Cannot complete quorum of shard [{}] of artifact [{}], no version of it returned by {} replicas", shardId, artifactId,
+                            readConsistency.requiredReplicas(warehouses.get(shardId).size()));
                     getContext().stop(getSelf());
                     return;
                 }
 
+                List<Byte> correctData = shardData.get(index).get(correctDigest);
+                result.add(correctData);
+
+                // Only the replicas which returned another version are repaired
+                if (shards.get(index).size() > 1)
+                {
+                    Set<ActorRef> divergentReplicas = replicaDigests.get(index).entrySet().stream()
+                            .filter(entry -> !entry.getValue().equals(correctDigest))
+                            .map(Map.Entry::getKey)
+                            .collect(Collectors.toUnmodifiableSet());
+
+                    artifactManager.tell(new InconsistencyFound(shardId, correctData, divergentReplicas), getSelf());
+                    log.info("Detected inconsistency of shard [{}] of artifact [{}] in {} replicas", shardId, artifactId, divergentReplicas.size());
+                }
+            }
+
+            // The shards received are shared by the response rather than copied
+            CompositeByteList artifact = CompositeByteList.of(result);
+
+            if (rangeRequest)
+            {
+                int end = Math.min(skip + length, artifact.size());
+                CompositeByteList slice = artifact.subList(Math.min(skip, end), end);
+                originalSender.tell(new ArtifactRangeResponseFromCollector(artifactId, offset, slice), getSelf());
+
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Sending range [{}:{}] of artifact [{}] to client", offset, offset + slice.size(), artifactId);
+                }
             }
+            else
+            {
+                originalSender.tell(new ArtifactResponseFromCollector(artifactId, artifact), getSelf());
 
-            List<Byte> artifact = result.stream().flatMap(Collection::stream).toList();
-            originalSender.tell(new ArtifactResponseFromCollector(artifactId, artifact), getSelf());
-            log.info("Sending artifact [" + artifactId + "] to client");
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Sending artifact [{}] to client", artifactId);
+                }
+            }
         }
         else
         {
             originalSender.tell(new CannotRecoverArtifact(artifactId), originalSender);
-            log.error("Cannot rebuild the artifact [" + artifactId + "]");
+            log.error("Cannot rebuild the artifact [{}]", artifactId);
         }
 
         getContext().stop(getSelf());
     }
 
+    // Answers one of the requests sent to the warehouse
     private void artifactNotFound(ArtifactNotFoundInWarehouse message)
     {
-
+        pendingRequests.keySet().stream()
+                .filter(request -> request.warehouse().equals(getSender()))
+                .findFirst()
+                .ifPresent(request -> missingResponse(request.shardId()));
     }
 
     private void shardNotFound(ShardNotFoundInWarehouse message)
     {
+        missingResponse(message.shardId());
+    }
+
+    private void missingResponse(int shardId)
+    {
+        if (responded(getSender(), shardId))
+        {
+            continueCollecting(shardIndexes.get(shardId));
+        }
+    }
 
+    private record ShardRequest(ActorRef warehouse, int shardId)
+    {
     }
 }
@@ -2,12 +2,19 @@ package org.example.actor;
 
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import org.example.message.TimeoutMessage;
+import org.example.message.replicator.ReplicaRestoreFailed;
+import org.example.message.replicator.ReplicaRestored;
+import org.example.message.replicator.ReplicasRepaired;
 import org.example.message.replicator.Replicate;
-import org.example.message.warehouse.AddShardToWarehouse;
+import org.example.message.warehouse.*;
 
+import java.time.Duration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -15,23 +22,45 @@ public class ShardReplicatorActor extends AbstractActor
 {
     private final String artifactId;
     private final int shardId;
-    private final List<Byte> data;
+    private List<Byte> data;
 
     private final List<ActorRef> warehouses;
 
+    // Repairing divergent replicas with the data read, each of them has to acknowledge it
+    private final Set<ActorRef> unacknowledgedReplicas = new HashSet<>();
+    private int repairedReplicas = 0;
+
+    // Restoring a replica of a failed warehouse, the data is fetched from the surviving replicas first
+    private final ActorRef target;
+    private final int failedWarehouseId;
+    private final int targetWarehouseId;
+    private int missingSources;
+    private Cancellable timeout;
+
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
 
     public static Props props(String artifactId, int shardId, List<Byte> data, List<ActorRef> warehouses)
     {
-        return Props.create(ShardReplicatorActor.class, () -> new ShardReplicatorActor(artifactId, shardId, data, warehouses));
+        return Props.create(ShardReplicatorActor.class, () -> new ShardReplicatorActor(artifactId, shardId, data, warehouses, null, -1, -1));
+    }
+
+    public static Props propsForRestore(String artifactId, int shardId, List<ActorRef> sources, int failedWarehouseId, int targetWarehouseId, ActorRef target)
+    {
+        return Props.create(ShardReplicatorActor.class, () -> new ShardReplicatorActor(artifactId, shardId, null, sources, target, failedWarehouseId, targetWarehouseId));
     }
 
-    public ShardReplicatorActor(String artifactId, int shardId, List<Byte> data, List<ActorRef> warehouses)
+    public ShardReplicatorActor(String artifactId, int shardId, List<Byte> data, List<ActorRef> warehouses,
+                                ActorRef target, int failedWarehouseId, int targetWarehouseId)
     {
         this.artifactId = artifactId;
         this.shardId = shardId;
         this.data = data;
         this.warehouses = warehouses;
+
+        this.target = target;
+        this.failedWarehouseId = failedWarehouseId;
+        this.targetWarehouseId = targetWarehouseId;
+        this.missingSources = warehouses.size();
     }
 
     @Override
@@ -45,17 +74,156 @@ public class ShardReplicatorActor extends AbstractActor
     {
         return receiveBuilder()
                 .match(Replicate.class, this::replicate)
+                .match(ShardResponseFromWarehouse.class, this::sourceResponse)
+                .match(ShardNotFoundInWarehouse.class, message -> missingSource())
+                .match(ArtifactNotFoundInWarehouse.class, message -> missingSource())
+                .match(ShardStoredInWarehouse.class, this::stored)
+                .match(ShardRejectedByWarehouse.class, message -> repairAcknowledged(false))
+                .match(TimeoutMessage.class, this::timeout)
                 .build();
     }
 
     private void replicate(Replicate message)
     {
+        if (target != null)
+        {
+            fetchFromSources();
+            return;
+        }
+
+        if (warehouses.isEmpty())
+        {
+            repairFinished();
+            return;
+        }
+
         for (ActorRef warehouse : warehouses)
         {
             warehouse.tell(new AddShardToWarehouse(artifactId, shardId, data), getSelf());
+            unacknowledgedReplicas.add(warehouse);
+        }
+
+        scheduleTimeout();
+    }
+
+    private void scheduleTimeout()
+    {
+        timeout = getContext().getSystem().scheduler().scheduleOnce(
+                Duration.ofSeconds(5),
+                getSelf(),
+                new TimeoutMessage(),
+                getContext().getDispatcher(),
+                getSelf()
+        );
+    }
+
+    private void fetchFromSources()
+    {
+        if (warehouses.isEmpty())
+        {
+            restoreFailed("no surviving replicas");
+            return;
+        }
+
+        for (ActorRef warehouse : warehouses)
+        {
+            warehouse.tell(new GetShardFromWarehouse(artifactId, shardId), getSelf());
+        }
+
+        scheduleTimeout();
+    }
+
+    private void sourceResponse(ShardResponseFromWarehouse message)
+    {
+        // The first surviving replica is copied, divergent replicas are fixed by read repair
+        if (data == null)
+        {
+            data = message.data();
+            target.tell(new AddShardToWarehouse(artifactId, shardId, data), getSelf());
+        }
+    }
+
+    private void missingSource()
+    {
+        if (--missingSources == 0 && data == null)
+        {
+            restoreFailed("shard not found in surviving replicas");
+        }
+    }
+
+    private void stored(ShardStoredInWarehouse message)
+    {
+        if (target == null)
+        {
+            repairAcknowledged(true);
+        }
+        else
+        {
+            restored();
+        }
+    }
+
+    private void repairAcknowledged(boolean stored)
+    {
+        if (!unacknowledgedReplicas.remove(getSender()))
+        {
+            return;
+        }
+
+        if (stored)
+        {
+            ++repairedReplicas;
+        }
+
+        if (unacknowledgedReplicas.isEmpty())
+        {
+            timeout.cancel();
+            repairFinished();
+        }
+    }
+
+    private void timeout(TimeoutMessage message)
+    {
+        if (target == null)
+        {
+            log.warning("{} replicas of shard [{}] of artifact [{}] didn't acknowledge the repair", unacknowledgedReplicas.size(), shardId, artifactId);
+            repairFinished();
+        }
+        else
+        {
+            restoreFailed("timeout");
+        }
+    }
+
+    // Replicas not repaired are left to the next read which finds them
+    private void repairFinished()
+    {
+        getContext().getParent().tell(new ReplicasRepaired(artifactId, shardId, repairedReplicas), getSelf());
+        log.info("Repaired {}/{} divergent replicas of shard [{}] of artifact [{}]", repairedReplicas, warehouses.size(), shardId, artifactId);
+
+        getContext().stop(getSelf());
+    }
+
+    private void restored()
+    {
+        timeout.cancel();
+        getContext().getParent().tell(new ReplicaRestored(artifactId, shardId, failedWarehouseId, targetWarehouseId, target), getSelf());
+
+        log.info("Restored shard [{}] of artifact [{}] from warehouse [{}] to warehouse [{}]", shardId, artifactId, failedWarehouseId,
+                targetWarehouseId);
+
+        getContext().stop(getSelf());
+    }
+
+    private void restoreFailed(String reason)
+    {
+        if (timeout != null)
+        {
+            timeout.cancel();
         }
 
-        log.info("Replicated shard [" + shardId + "] of artifact [" + artifactId + "] to " + warehouses.size() + " warehouses");
+        getContext().getParent().tell(new ReplicaRestoreFailed(artifactId, shardId, failedWarehouseId), getSelf());
+        log.warning("Cannot restore shard [{}] of artifact [{}]: {}", shardId, artifactId, reason);
 
         getContext().stop(getSelf());
     }
@@ -1,70 +1,242 @@
 package org.example.actor;
 
-import akka.actor.AbstractActor;
+import akka.actor.AbstractActorWithTimers;
 import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.actor.SupervisorStrategy;
+import akka.actor.Terminated;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
-import org.example.message.manager.DeleteArtifactFromManager;
+import com.google.common.hash.HashCode;
+import com.google.common.primitives.Ints;
+import com.typesafe.config.Config;
 import org.example.message.manager.GetArtifactFromManager;
+import org.example.message.manager.GetArtifactRangeFromManager;
+import org.example.message.manager.HandOffShard;
+import org.example.message.manager.ReadsFinished;
+import org.example.message.manager.RelocateShard;
+import org.example.message.manager.RestoreReplica;
+import org.example.message.manager.StartReadRepair;
+import org.example.message.manager.VersionWriteFailed;
+import org.example.message.manager.VersionWritten;
+import org.example.message.manager.WarehouseUnavailable;
+import org.example.message.replicator.ReplicaRestoreFailed;
+import org.example.message.replicator.ReplicaRestored;
+import org.example.message.replicator.ReplicasRepaired;
 import org.example.message.vault.*;
+import org.example.admission.AdmissionController;
+import org.example.admission.TokenBucket;
+import org.example.expiry.HierarchicalTimerWheel;
+import org.example.message.warehouse.DeleteArtifactsFromWarehouse;
+import org.example.message.warehouse.DeleteShardFromWarehouse;
 import org.example.message.warehouse.NumberOfStoredShards;
+import org.example.metadata.ArtifactIndex;
+import org.example.metadata.ArtifactMetadata;
+import org.example.metadata.ArtifactVersion;
+import org.example.metadata.MetadataEvent;
+import org.example.metadata.MetadataJournal;
+import org.example.metadata.VaultMetadata;
+import org.example.sharding.ShardLayout;
+import org.example.sharding.ShardSizing;
+import org.example.storage.ShardStore;
+import org.example.tracing.TraceContext;
+import org.example.tracing.Tracer;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 
-public class VaultManagerActor extends AbstractActor
+public class VaultManagerActor extends AbstractActorWithTimers
 {
-    private final int numberOfShards;
+    private static final String REPAIR_TIMER = "RepairReplicas";
+    private static final int MAX_REPAIR_ATTEMPTS = 3;
+    private static final String EXPIRY_TIMER = "ExpireArtifacts";
+    private static final int EXPIRATIONS_PER_TICK = 10_000;
+    private static final int DELETE_BATCH = 1_000;
+    private static final int MAX_LIST_PAGE = 10_000;
+
+    private final ShardSizing shardSizing;
     private final int replicaCount;
     private final int initialWarehouses;
+    private final VaultSettings settings;
 
     private int nextWarehouseId = 0;
     private final Map<String, ActorRef> artifactManagers = new HashMap<>();
     private final Map<Integer, ActorRef> warehouses = new HashMap<>();
     private final Map<Integer, Integer> warehouseSizes = new HashMap<>();
 
+    // Warehouses which didn't acknowledge a write in time, cleared once they report their size again
+    private final Set<Integer> suspectedWarehouses = new HashSet<>();
+
+    // Warehouses without room for another shard within their quota
+    private final Set<Integer> fullWarehouses = new HashSet<>();
+
+    // Placement of all artifacts, managers are created lazily for artifacts recovered from the journal
+    private VaultMetadata metadata = new VaultMetadata();
+    private MetadataJournal journal;
+
+    // Ids of the artifacts in the metadata in order, kept beside it so snapshots don't copy it
+    private final ArtifactIndex artifactIndex = new ArtifactIndex();
+
+    // Replicas lost with failed warehouses, the least replicated shards are restored first
+    private final PriorityQueue<ReplicaRepair> pendingRepairs = new PriorityQueue<>(Comparator.comparingInt(ReplicaRepair::liveReplicas));
+    private final Map<ShardReplica, ReplicaRepair> inFlightRepairs = new HashMap<>();
+
+    // Divergent replicas found by reads, queued once per shard by the managers asking for them and started at a limited rate.
+    // They share the concurrent repairs with the restores, which go first.
+    private final Map<ArtifactShard, ActorRef> pendingReadRepairs = new LinkedHashMap<>();
+    private final Map<ArtifactShard, ActorRef> inFlightReadRepairs = new HashMap<>();
+    private final TokenBucket readRepairRate;
+    private final int maxQueuedReadRepairs;
+
+    // Artifacts with a time to live, a single timer drives the wheel and expired artifacts are deleted in batches
+    private final HierarchicalTimerWheel<String> expiryWheel = new HierarchicalTimerWheel<>(1000, 6, 4, System.currentTimeMillis());
+    private final Deque<String> expiredArtifacts = new ArrayDeque<>();
+
+    // New versions being written, readers keep getting the latest version until the new one is acknowledged
+    private final Map<String, PendingVersion> pendingVersions = new HashMap<>();
+
+    // Replaced versions waiting for the grace period by their timer keys, cancelled when the artifact is deleted
+    private final Map<String, Map<String, RetireArtifactVersion>> retirements = new HashMap<>();
+
+    // Read-only managers of retained versions older than the latest by their version, created by range reads pinned to them
+    // and stopped once the version is no longer retained
+    private final Map<String, Map<Integer, ActorRef>> versionManagers = new HashMap<>();
+
+    // Admitted writes by their managers with the written bytes, released once acknowledged or failed
+    private final AdmissionController<String> admission;
+    private final Map<ActorRef, Long> writesInFlight = new HashMap<>();
+
+    private final Tracer tracer = Tracer.get(getContext().getSystem());
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
 
-    public static Props props(int numberOfShards, int replicaCount, int initialWarehouses)
+    public static Props props(ShardSizing shardSizing, int replicaCount, int initialWarehouses)
     {
-        return Props.create(VaultManagerActor.class, () -> new VaultManagerActor(numberOfShards, replicaCount, initialWarehouses));
+        return props(shardSizing, replicaCount, initialWarehouses, VaultSettings.defaults());
     }
 
-    public VaultManagerActor(int numberOfShards, int replicaCount, int initialWarehouses)
+    public static Props props(ShardSizing shardSizing, int replicaCount, int initialWarehouses, VaultSettings settings)
     {
-        Preconditions.checkArgument(initialWarehouses >= 1, "Warehouses number must be greater or equal 1");
+        return Props.create(VaultManagerActor.class, () -> new VaultManagerActor(shardSizing, replicaCount, initialWarehouses, settings));
+    }
+
+    public VaultManagerActor(ShardSizing shardSizing, int replicaCount, int initialWarehouses, VaultSettings settings)
+    {
+        // Warehouses may also be attached later from other actor systems
+        Preconditions.checkArgument(initialWarehouses >= 0, "Warehouses number must be greater or equal 0");
         Preconditions.checkArgument(replicaCount % 2 == 1, "Replica count should be odd");
-        Preconditions.checkArgument(replicaCount <= initialWarehouses, "Replica count must be lesser or equal to the number of warehouses");
 
-        this.numberOfShards = numberOfShards;
+        this.shardSizing = shardSizing;
         this.replicaCount = replicaCount;
         this.initialWarehouses = initialWarehouses;
+        this.settings = settings;
+        this.admission = new AdmissionController<>(settings.admission());
+
+        Config readRepair = getContext().getSystem().settings().config().getConfig("shard-vault.read-repair");
+        this.readRepairRate = new TokenBucket(readRepair.getDouble("repairs-per-second"), readRepair.getInt("burst"), System.nanoTime());
+        this.maxQueuedReadRepairs = readRepair.getInt("max-queued");
     }
 
     @Override
-    public void preStart()
+    public void preStart() throws IOException
     {
-        for (int i = 0; i < initialWarehouses; ++i)
+        if (settings.metadataDirectory() != null)
+        {
+            long start = System.nanoTime();
+
+            journal = new MetadataJournal(settings.metadataDirectory(), settings.snapshotInterval());
+            metadata = journal.recover();
+            metadata.artifacts().forEach(artifact -> artifactIndex.add(artifact.artifactId()));
+
+            // Remote warehouses come back by attaching themselves again
+            for (int id : metadata.warehouses())
+            {
+                nextWarehouseId = id + 1;
+
+                if (!metadata.isRemoteWarehouse(id))
+                {
+                    addWarehouse(id);
+                }
+            }
+
+            log.info("Recovered {} artifacts and {} warehouses in {} ms", metadata.numberOfArtifacts(), metadata.warehouses().size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+
+        while (warehouses.size() < initialWarehouses)
         {
             int id = nextWarehouseId++;
             addWarehouse(id);
+            record(new MetadataEvent.WarehouseAdded(id, false));
+        }
+
+        syncJournal();
+
+        for (ArtifactMetadata artifact : metadata.artifacts())
+        {
+            if (artifact.expires())
+            {
+                expiryWheel.schedule(artifact.artifactId(), artifact.expiresAt());
+            }
         }
 
+        getTimers().startTimerWithFixedDelay(EXPIRY_TIMER, new ExpireArtifacts(), Duration.ofSeconds(1));
+
         log.info("Created VaultManager");
     }
 
+    @Override
+    public void postStop() throws IOException
+    {
+        if (journal != null)
+        {
+            journal.close();
+        }
+    }
+
+    // A restarted warehouse would come back empty while the placement still counts its replicas
+    @Override
+    public SupervisorStrategy supervisorStrategy()
+    {
+        return SupervisorStrategy.stoppingStrategy();
+    }
+
     @Override
     public Receive createReceive()
     {
         return receiveBuilder()
-                .match(AddArtifactToVault.class, this::addArtifact)
-                .match(GetArtifactFromVault.class, this::getArtifact)
+                .match(AddArtifactToVault.class, message -> traced("vault add", message.trace(), trace -> addArtifact(message)))
+                .match(UpdateArtifactInVault.class, message -> traced("vault update", message.trace(), trace -> updateArtifact(message)))
+                .match(AppendToArtifactInVault.class, message -> traced("vault append", message.trace(), trace -> appendToArtifact(message)))
+                .match(VersionWritten.class, this::versionWritten)
+                .match(VersionWriteFailed.class, this::versionWriteFailed)
+                .match(RetireArtifactVersion.class, this::retireVersion)
+                .match(ReadsFinished.class, message -> admission.readsFinished(message.reads()))
+                .match(GetArtifactFromVault.class, message -> traced("vault get", message.trace(), trace -> getArtifact(message, trace)))
+                .match(GetArtifactRangeFromVault.class, message -> traced("vault get range", message.trace(), trace -> getArtifactRange(message, trace)))
+                .match(GetArtifactInfoFromVault.class, this::getArtifactInfo)
                 .match(DeleteArtifactFromVault.class, this::deleteArtifact)
+                .match(DeleteArtifactsFromVault.class, message -> deleteArtifacts(message.artifactIds()))
+                .match(DeleteArtifactsWithPrefixFromVault.class, this::deleteArtifactsWithPrefix)
+                .match(ListArtifactsInVault.class, this::listArtifacts)
                 .match(AddWarehouseToVault.class, this::addWarehouseToVault)
+                .match(AttachWarehouseToVault.class, this::attachWarehouse)
                 .match(NumberOfStoredShards.class, this::updateWarehouseSizes)
+                .match(Terminated.class, this::childTerminated)
+                .match(ShardNotAcknowledged.class, this::shardNotAcknowledged)
+                .match(ShardRejectedOverQuota.class, this::shardRejectedOverQuota)
+                .match(ReplicaRestored.class, this::replicaRestored)
+                .match(ReplicaRestoreFailed.class, this::replicaRestoreFailed)
+                .match(ReadRepairRequested.class, this::readRepairRequested)
+                .match(ReplicasRepaired.class, this::replicasRepaired)
+                .match(RepairReplicas.class, message -> dispatchRepairs())
+                .match(ExpireArtifacts.class, this::expireArtifacts)
                 .build();
     }
 
@@ -73,96 +245,1196 @@ public class VaultManagerActor extends AbstractActor
         String artifactId = message.artifactId();
         List<Byte> data = message.data();
 
-        if (artifactManagers.containsKey(artifactId))
+        if (metadata.containsArtifact(artifactId))
         {
-            log.warning("Artifact [" + artifactId + "] already exists");
+            log.warning("Artifact [{}] already exists", artifactId);
             getSender().tell(new ArtifactAlreadyExistsInVault(artifactId), getSelf());
         }
-        else
+        else if (warehouses.size() < replicaCount)
+        {
+            log.warning("Cannot store artifact [{}]. Only {} warehouses available, {} required", artifactId, warehouses.size(), replicaCount);
+            getSender().tell(new NotEnoughWarehousesInVault(artifactId, warehouses.size(), replicaCount), getSelf());
+        }
+        else if (admitWrite(message.clientId(), artifactId, data.size()))
         {
-            Multimap<Integer, ActorRef> assignedWarehouses = assignWarehouses();
+            ShardLayout layout = shardSizing.layoutFor(data.size());
+            int[][] placement = assignWarehouses(layout.numberOfShards());
+            long expiresAt = message.timeToLive() != null ? System.currentTimeMillis() + message.timeToLive().toMillis() : 0;
+
+            // Digests are added by the manager once the shards are written
+            if (!record(new MetadataEvent.ArtifactCreated(artifactId, layout, placement, new HashCode[layout.numberOfShards()], expiresAt)))
+            {
+                notRecorded(List.of(artifactId));
+                return;
+            }
 
-            ActorRef artifactManager = getContext().actorOf(ArtifactManagerActor.props(artifactId, data,
-                    assignedWarehouses, numberOfShards), "ArtifactManager-" + artifactId + "-" + UUID.randomUUID());
+            // Artifact is written only once it survives a restart, an unsynced one is dropped again
+            if (!syncJournal())
+            {
+                record(new MetadataEvent.ArtifactDeleted(artifactId));
+                notRecorded(List.of(artifactId));
+                return;
+            }
+
+            if (expiresAt != 0)
+            {
+                expiryWheel.schedule(artifactId, expiresAt);
+            }
+
+            ArtifactMetadata artifact = metadata.artifact(artifactId);
+            ActorRef artifactManager = getContext().actorOf(ArtifactManagerActor.props(artifactId, data, warehouseRefs(artifact.placement()),
+                    artifact.latest(), null, artifact.placement().keySet(), message.writeConsistency(), settings.writeTimeout(), getSender()), ArtifactManagerActor.actorName("ArtifactManager", artifactId));
+            getContext().watch(artifactManager);
             artifactManagers.put(artifactId, artifactManager);
+            writesInFlight.put(artifactManager, (long) data.size());
         }
     }
 
-    private void getArtifact(GetArtifactFromVault message)
+    private void updateArtifact(UpdateArtifactInVault message)
     {
         String artifactId = message.artifactId();
+        List<Byte> data = message.data();
+        ArtifactMetadata artifact = metadata.artifact(artifactId);
 
-        if (artifactManagers.containsKey(artifactId))
+        if (!canWriteVersion(message.clientId(), artifactId, artifact, data.size()))
         {
-            ActorRef artifactManger = artifactManagers.get(artifactId);
-            artifactManger.tell(new GetArtifactFromManager(), getSender());
+            return;
         }
-        else
+
+        // Same size keeps the shard boundaries, e.g. of an appended artifact
+        ArtifactVersion latest = artifact.latest();
+        ShardLayout layout = data.size() == latest.layout().size() ? latest.layout() : shardSizing.layoutFor(data.size());
+        ArtifactVersion version = new ArtifactVersion(latest.version() + 1, layout, new int[layout.numberOfShards()], new HashCode[layout.numberOfShards()]);
+
+        // Every shard is placed as a new one. The manager hashes them and shares those with the same range and digest as in the latest version instead.
+        List<Integer> changed = new ArrayList<>();
+
+        for (int index = 0; index < layout.numberOfShards(); ++index)
         {
-            log.warning("Artifact [" + artifactId + "] not found in the vault");
-            getSender().tell(new ArtifactNotFoundInVault(artifactId), getSelf());
+            version.shardIds()[index] = artifact.nextShardId() + index;
+            changed.add(index);
         }
+
+        Map<Integer, int[]> newShards = placeShards(version, changed);
+
+        writeVersion(artifact, version, newShards, data.size(), ArtifactManagerActor.props(artifactId, data, warehouseRefs(placement(artifact, newShards)),
+                version, latest, newShards.keySet(), message.writeConsistency(), settings.writeTimeout(), getSender()));
     }
 
-    private void deleteArtifact(DeleteArtifactFromVault message)
+    private void appendToArtifact(AppendToArtifactInVault message)
     {
         String artifactId = message.artifactId();
+        ArtifactMetadata artifact = metadata.artifact(artifactId);
 
-        if (artifactManagers.containsKey(artifactId))
+        if (!canWriteVersion(message.clientId(), artifactId, artifact, message.data().size()))
         {
-            ActorRef artifactManager = artifactManagers.get(artifactId);
-            artifactManagers.remove(artifactId);
-            artifactManager.tell(new DeleteArtifactFromManager(), getSelf());
+            return;
         }
-        else
+
+        ArtifactVersion latest = artifact.latest();
+        ShardLayout layout = shardSizing.layoutForAppend(latest.layout(), message.data().size());
+        int tail = latest.layout().numberOfShards() - 1;
+        boolean rewriteTail = layout.end(tail) != latest.layout().end(tail);
+
+        // Digests of the written shards are known once the manager has read the tail
+        HashCode[] digests = new HashCode[latest.digests().length == 0 ? 0 : layout.numberOfShards()];
+        System.arraycopy(latest.digests(), 0, digests, 0, Math.min(latest.digests().length, digests.length));
+
+        ArtifactVersion version = new ArtifactVersion(latest.version() + 1, layout, new int[layout.numberOfShards()], digests);
+        System.arraycopy(latest.shardIds(), 0, version.shardIds(), 0, tail + 1);
+
+        List<Integer> changed = new ArrayList<>();
+
+        for (int index = rewriteTail ? tail : tail + 1; index < layout.numberOfShards(); ++index)
+        {
+            version.shardIds()[index] = artifact.nextShardId() + changed.size();
+            changed.add(index);
+
+            if (index < digests.length)
+            {
+                digests[index] = null;
+            }
+        }
+
+        Map<Integer, int[]> newShards = placeShards(version, changed);
+        int dataOffset = rewriteTail ? latest.layout().start(tail) : latest.layout().size();
+
+        writeVersion(artifact, version, newShards, message.data().size(), ArtifactManagerActor.propsForAppend(artifactId, message.data(), dataOffset,
+                warehouseRefs(placement(artifact, newShards)), version, newShards.keySet(), rewriteTail ? latest.shardIds()[tail] : -1,
+                message.writeConsistency(), settings.writeTimeout(), getSender()));
+    }
+
+    private boolean canWriteVersion(String clientId, String artifactId, ArtifactMetadata artifact, long bytes)
+    {
+        if (artifact == null)
         {
-            log.warning("Artifact [" + artifactId + "] not found in the vault");
+            log.warning("Artifact [{}] not found in the vault", artifactId);
             getSender().tell(new ArtifactNotFoundInVault(artifactId), getSelf());
+            return false;
+        }
+
+        if (pendingVersions.containsKey(artifactId))
+        {
+            log.warning("Artifact [{}] is already being written", artifactId);
+            getSender().tell(new ArtifactWriteInProgress(artifactId), getSelf());
+            return false;
+        }
+
+        if (warehouses.size() < replicaCount)
+        {
+            log.warning("Cannot store artifact [{}]. Only {} warehouses available, {} required", artifactId, warehouses.size(), replicaCount);
+            getSender().tell(new NotEnoughWarehousesInVault(artifactId, warehouses.size(), replicaCount), getSelf());
+            return false;
         }
+
+        return admitWrite(clientId, artifactId, bytes);
     }
 
-    private void addWarehouseToVault(AddWarehouseToVault message)
+    // Clients are rate limited by the id carried in their requests, the sender of an ask is a new actor every time
+    private boolean admitWrite(String clientId, String artifactId, long bytes)
     {
-        int id = nextWarehouseId++;
-        addWarehouse(id);
+        Optional<AdmissionController.Rejection> rejection = admission.admitWrite(clientId, bytes, System.nanoTime());
+        rejection.ifPresent(reason -> reject(artifactId, reason));
 
-        log.info("Added warehouse [" + id + "] to vault");
+        return rejection.isEmpty();
     }
 
-    private Multimap<Integer, ActorRef> assignWarehouses()
+    private boolean admitRead(String clientId, String artifactId)
     {
-        Multimap<Integer, ActorRef> warehousesAssignment = ArrayListMultimap.create();
+        Optional<AdmissionController.Rejection> rejection = admission.admitRead(clientId, System.nanoTime());
+        rejection.ifPresent(reason -> reject(artifactId, reason));
 
-        Map<Integer, Integer> expectedSizesOfWarehouses = new HashMap<>(warehouseSizes);
+        return rejection.isEmpty();
+    }
 
-        for (int shardId = 0; shardId < numberOfShards; ++shardId)
+    // Not logged as a warning, rejections come in floods under overload
+    private void reject(String artifactId, AdmissionController.Rejection rejection)
+    {
+        if (log.isDebugEnabled())
         {
-            List<Map.Entry<Integer, Integer>> sorted = expectedSizesOfWarehouses.entrySet().stream().sorted(Map.Entry.comparingByValue()).toList();
+            log.debug("Rejected request for artifact [{}]: {}", artifactId, rejection.reason());
+        }
+
+        getSender().tell(new ArtifactRequestRejected(artifactId, rejection.reason(), rejection.retryAfter()), getSelf());
+    }
+
+    private void writeFinished(ActorRef artifactManager)
+    {
+        Long bytes = writesInFlight.remove(artifactManager);
+
+        if (bytes != null)
+        {
+            admission.writeFinished(bytes);
+        }
+    }
+
+    private Map<Integer, int[]> placeShards(ArtifactVersion version, List<Integer> changed)
+    {
+        int[][] assignment = assignWarehouses(changed.size());
+        Map<Integer, int[]> newShards = new HashMap<>();
+
+        for (int i = 0; i < changed.size(); ++i)
+        {
+            newShards.put(version.shardIds()[changed.get(i)], assignment[i]);
+        }
+
+        return Map.copyOf(newShards);
+    }
+
+    private static Map<Integer, int[]> placement(ArtifactMetadata artifact, Map<Integer, int[]> newShards)
+    {
+        Map<Integer, int[]> placement = new HashMap<>(artifact.placement());
+        placement.putAll(newShards);
+
+        return placement;
+    }
+
+    private void writeVersion(ArtifactMetadata artifact, ArtifactVersion version, Map<Integer, int[]> newShards, long bytes, Props managerProps)
+    {
+        String artifactId = artifact.artifactId();
+
+        ActorRef artifactManager = getContext().actorOf(managerProps, ArtifactManagerActor.actorName("ArtifactManager", artifactId));
+        getContext().watch(artifactManager);
+        writesInFlight.put(artifactManager, bytes);
+        pendingVersions.put(artifactId, new PendingVersion(version, newShards, artifactManager));
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Writing version {} of artifact [{}]. Changed shards: {}/{}", version.version(), artifactId, newShards.size(),
+                    version.layout().numberOfShards());
+        }
+    }
+
+    private void versionWritten(VersionWritten message)
+    {
+        writeFinished(getSender());
+
+        String artifactId = message.artifactId();
+        ArtifactVersion written = message.version();
+        PendingVersion pending = pendingVersions.get(artifactId);
+        ArtifactMetadata previous = metadata.artifact(artifactId);
+
+        // First versions are recorded when the artifact is created, their digests once written
+        if (pending == null && written.version() == 1 && previous != null && previous.latest().version() == 1
+                && getSender().equals(artifactManagers.get(artifactId)))
+        {
+            record(new MetadataEvent.DigestsAdded(artifactId, 1, written.digests()));
+            syncJournal();
+            return;
+        }
+
+        if (pending == null || pending.version().version() != written.version())
+        {
+            return;
+        }
+
+        pendingVersions.remove(artifactId);
+
+        // Shards placed for the version but shared with the previous one weren't written
+        Map<Integer, int[]> newShards = new HashMap<>(pending.newShards());
+        newShards.keySet().retainAll(Ints.asList(written.shardIds()));
+
+        // Version which cannot be journaled is dropped like a failed write, the artifact stays at the previous one
+        if (!record(new MetadataEvent.VersionAdded(artifactId, written, Map.copyOf(newShards), settings.retainedVersions())))
+        {
+            getContext().unwatch(pending.manager());
+            getContext().stop(pending.manager());
+            deleteShards(artifactId, pending.newShards());
+            return;
+        }
+
+        syncJournal();
+        ArtifactMetadata artifact = metadata.artifact(artifactId);
+
+        Map<Integer, int[]> collected = new HashMap<>(previous.placement());
+        collected.keySet().removeAll(artifact.placement().keySet());
+
+        ActorRef previousManager = artifactManagers.put(artifactId, pending.manager());
+
+        // Reads already started by the previous manager may still need its shards
+        if (previousManager != null)
+        {
+            getContext().unwatch(previousManager);
+        }
+
+        String timer = retireTimer(artifactId, written.version());
+        RetireArtifactVersion retirement = new RetireArtifactVersion(artifactId, written.version(), previousManager, collected);
+        retirements.computeIfAbsent(artifactId, id -> new HashMap<>()).put(timer, retirement);
+        getTimers().startSingleTimer(timer, retirement, settings.versionGracePeriod());
 
-            for (var entry : sorted.subList(0, replicaCount))
+        if (log.isDebugEnabled())
+        {
+            log.debug("Artifact [{}] updated to version {}. Collecting {} shards", artifactId, written.version(), collected.size());
+        }
+    }
+
+    private void versionWriteFailed(VersionWriteFailed message)
+    {
+        writeFinished(getSender());
+
+        PendingVersion pending = pendingVersions.get(message.artifactId());
+        ArtifactMetadata artifact = metadata.artifact(message.artifactId());
+
+        // First version is recorded when the artifact is created, a failed one takes the artifact with it so the client can retry
+        if (pending == null && message.version() == 1 && artifact != null && artifact.latest().version() == 1
+                && getSender().equals(artifactManagers.get(message.artifactId())))
+        {
+            List<String> deletes = new ArrayList<>();
+
+            if (removeArtifact(artifact, deletes) && syncJournal())
             {
-                int warehouseId = entry.getKey();
-                warehousesAssignment.put(shardId, warehouses.get(warehouseId));
-                expectedSizesOfWarehouses.merge(warehouseId, 1, Integer::sum);
+                deleteFromWarehouses(deletes);
             }
+
+            log.warning("Write of artifact [{}] failed, the artifact is removed", message.artifactId());
+            return;
         }
 
-        return warehousesAssignment;
+        if (pending == null || pending.version().version() != message.version())
+        {
+            return;
+        }
+
+        pendingVersions.remove(message.artifactId());
+        getContext().unwatch(pending.manager());
+        getContext().stop(pending.manager());
+        deleteShards(message.artifactId(), pending.newShards());
     }
 
-    private void addWarehouse(int id)
+    private void retireVersion(RetireArtifactVersion message)
     {
-        warehouses.put(id, getContext().actorOf(WarehouseActor.props(id, getSelf()), "Warehouse-" + id));
-        warehouseSizes.put(id, 0);
+        String artifactId = message.artifactId();
+        Map<String, RetireArtifactVersion> retiring = retirements.get(artifactId);
+
+        if (retiring == null || retiring.remove(retireTimer(artifactId, message.version())) == null)
+        {
+            return;
+        }
+
+        if (retiring.isEmpty())
+        {
+            retirements.remove(artifactId);
+        }
+
+        if (message.manager() != null)
+        {
+            getContext().stop(message.manager());
+            dropReadRepairs(message.manager());
+        }
+
+        // Shard ids are reused by an artifact added again under the same id, its shards are never deleted here
+        Map<Integer, int[]> unreferenced = new HashMap<>(message.shards());
+        ArtifactMetadata artifact = metadata.artifact(artifactId);
+        PendingVersion pending = pendingVersions.get(artifactId);
+
+        if (artifact != null)
+        {
+            unreferenced.keySet().removeAll(artifact.placement().keySet());
+        }
+
+        if (pending != null)
+        {
+            unreferenced.keySet().removeAll(pending.newShards().keySet());
+        }
+
+        // Pinned reads of versions dropped with the update had the grace period to finish
+        if (artifact != null)
+        {
+            stopVersionManagers(artifactId, version -> artifact.versions().stream().noneMatch(retained -> retained.version() == version));
+        }
+
+        deleteShards(artifactId, unreferenced);
     }
 
-    private void updateWarehouseSizes(NumberOfStoredShards message)
+    private static String retireTimer(String artifactId, int version)
     {
-        int warehouseId = message.warehouseId();
-        int numberOfShards = message.numberOfStoredShards();
+        return "Retire-" + artifactId + "-" + version;
+    }
 
-        warehouseSizes.put(warehouseId, numberOfShards);
+    private void deleteShards(String artifactId, Map<Integer, int[]> shards)
+    {
+        for (var entry : shards.entrySet())
+        {
+            for (int warehouseId : entry.getValue())
+            {
+                ActorRef warehouse = warehouses.get(warehouseId);
+
+                if (warehouse != null)
+                {
+                    warehouse.tell(new DeleteShardFromWarehouse(artifactId, entry.getKey()), getSelf());
+                }
+            }
+        }
+    }
+
+    // Vault starts the traces of sampled requests
+    private void traced(String name, TraceContext received, Consumer<TraceContext> handler)
+    {
+        tracer.traced(name, "vault", tracer.sample(received), handler);
+    }
+
+    private void getArtifact(GetArtifactFromVault message, TraceContext trace)
+    {
+        String artifactId = message.artifactId();
+
+        if (metadata.containsArtifact(artifactId))
+        {
+            if (!admitRead(message.clientId(), artifactId))
+            {
+                return;
+            }
+
+            ActorRef artifactManger = artifactManager(artifactId);
+            artifactManger.tell(new GetArtifactFromManager(message.readConsistency(), settings.readMode(), trace), getSender());
+        }
+        else
+        {
+            log.warning("Artifact [{}] not found in the vault", artifactId);
+            getSender().tell(new ArtifactNotFoundInVault(artifactId), getSelf());
+        }
+    }
+
+    private void getArtifactRange(GetArtifactRangeFromVault message, TraceContext trace)
+    {
+        String artifactId = message.artifactId();
+        ArtifactMetadata artifact = metadata.artifact(artifactId);
+
+        if (artifact != null)
+        {
+            // Reads pinned to a version no longer retained cannot be served anymore
+            int pinned = message.version() == 0 ? artifact.latest().version() : message.version();
+            Optional<ArtifactVersion> version = artifact.versions().stream().filter(retained -> retained.version() == pinned).findFirst();
+
+            if (version.isEmpty())
+            {
+                getSender().tell(new ArtifactVersionChanged(artifactId, message.version(), artifact.latest().version()), getSelf());
+                return;
+            }
+
+            if (!admitRead(message.clientId(), artifactId))
+            {
+                return;
+            }
+
+            ActorRef artifactManger = pinned == artifact.latest().version() ? artifactManager(artifactId) : versionManager(artifact, version.get());
+            artifactManger.tell(new GetArtifactRangeFromManager(message.offset(), message.length(), message.readConsistency(), settings.readMode(), trace), getSender());
+        }
+        else
+        {
+            log.warning("Artifact [{}] not found in the vault", artifactId);
+            getSender().tell(new ArtifactNotFoundInVault(artifactId), getSelf());
+        }
+    }
+
+    private void getArtifactInfo(GetArtifactInfoFromVault message)
+    {
+        String artifactId = message.artifactId();
+        ArtifactMetadata artifact = metadata.artifact(artifactId);
+
+        if (artifact != null)
+        {
+            getSender().tell(new ArtifactInfoFromVault(artifactId, artifact.latest().version(), artifact.layout().size()), getSelf());
+        }
+        else
+        {
+            getSender().tell(new ArtifactNotFoundInVault(artifactId), getSelf());
+        }
+    }
+
+    private void deleteArtifact(DeleteArtifactFromVault message)
+    {
+        String artifactId = message.artifactId();
+
+        if (metadata.containsArtifact(artifactId))
+        {
+            List<String> deletes = new ArrayList<>();
+
+            if (!removeArtifact(metadata.artifact(artifactId), deletes) || !syncJournal())
+            {
+                notRecorded(List.of(artifactId));
+                return;
+            }
+
+            deleteFromWarehouses(deletes);
+            getSender().tell(new ArtifactDeletedFromVault(artifactId), getSelf());
+        }
+        else
+        {
+            log.warning("Artifact [{}] not found in the vault", artifactId);
+            getSender().tell(new ArtifactNotFoundInVault(artifactId), getSelf());
+        }
+    }
 
-        log.info("Updated warehouse [" + warehouseId + "] size to: " + numberOfShards);
+    private void expireArtifacts(ExpireArtifacts message)
+    {
+        long now = System.currentTimeMillis();
+        expiredArtifacts.addAll(expiryWheel.advance(now));
+
+        List<String> deletes = new ArrayList<>();
+        int expired = 0;
+
+        while (expired < EXPIRATIONS_PER_TICK && !expiredArtifacts.isEmpty())
+        {
+            String artifactId = expiredArtifacts.poll();
+            ArtifactMetadata artifact = metadata.artifact(artifactId);
+
+            // Deleted in the meantime, possibly added again with another time to live
+            if (artifact == null || !artifact.expires() || artifact.expiresAt() > now)
+            {
+                continue;
+            }
+
+            removeArtifact(artifact, deletes);
+            ++expired;
+        }
+
+        if (syncJournal())
+        {
+            deleteFromWarehouses(deletes);
+        }
+
+        if (expired > 0)
+        {
+            log.info("Expired {} artifacts, {} left for the next tick", expired, expiredArtifacts.size());
+        }
+    }
+
+    private void deleteArtifacts(List<String> artifactIds)
+    {
+        List<String> deletes = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+
+        for (String artifactId : artifactIds)
+        {
+            ArtifactMetadata artifact = metadata.artifact(artifactId);
+
+            if (artifact != null && removeArtifact(artifact, deletes))
+            {
+                deleted.add(artifactId);
+            }
+        }
+
+        // Deletes of a batch are synced together, the batch is acknowledged only as a whole
+        if (!syncJournal())
+        {
+            notRecorded(deleted);
+            return;
+        }
+
+        deleteFromWarehouses(deletes);
+        getSender().tell(new ArtifactsDeletedFromVault(deleted), getSelf());
+
+        log.info("Deleted {} of {} artifacts", deleted.size(), artifactIds.size());
+    }
+
+    private void deleteArtifactsWithPrefix(DeleteArtifactsWithPrefixFromVault message)
+    {
+        deleteArtifacts(artifactIndex.list(message.prefix(), null, Integer.MAX_VALUE));
+    }
+
+    // Work is bounded by the page, so large listings are served a page at a time between the other requests
+    private void listArtifacts(ListArtifactsInVault message)
+    {
+        int limit = Math.clamp(message.limit(), 1, MAX_LIST_PAGE);
+        List<String> artifactIds = artifactIndex.list(message.prefix(), message.cursor(), limit + 1);
+        String nextCursor = null;
+
+        if (artifactIds.size() > limit)
+        {
+            artifactIds = artifactIds.subList(0, limit);
+            nextCursor = artifactIds.get(limit - 1);
+        }
+
+        getSender().tell(new ArtifactListFromVault(message.prefix(), List.copyOf(artifactIds), artifactIndex.count(message.prefix()), nextCursor),
+                getSelf());
+    }
+
+    // Artifact is forgotten right away, its id is collected and deleted from the warehouses by deleteFromWarehouses once the journal is synced.
+    // One whose delete cannot be journaled is kept with its shards.
+    private boolean removeArtifact(ArtifactMetadata artifact, List<String> deletes)
+    {
+        if (!forgetArtifact(artifact.artifactId()))
+        {
+            return false;
+        }
+
+        deletes.add(artifact.artifactId());
+        return true;
+    }
+
+    // One message per warehouse and batch instead of one per shard. Every warehouse is told, so shards of versions being written or
+    // retired and hints held for other warehouses go as well, before any write of an artifact added again under the id.
+    private void deleteFromWarehouses(List<String> deletes)
+    {
+        for (List<String> batch : Lists.partition(deletes, DELETE_BATCH))
+        {
+            for (ActorRef warehouse : warehouses.values())
+            {
+                warehouse.tell(new DeleteArtifactsFromWarehouse(batch), getSelf());
+            }
+        }
+    }
+
+    // Managers of the artifact are stopped without deleting anything, the vault deletes its shards itself.
+    // Their deletes would arrive after writes of an artifact added again under the id, whose shard ids start over.
+    private boolean forgetArtifact(String artifactId)
+    {
+        if (!record(new MetadataEvent.ArtifactDeleted(artifactId)))
+        {
+            return false;
+        }
+
+        ActorRef artifactManager = artifactManagers.remove(artifactId);
+
+        if (artifactManager != null)
+        {
+            getContext().unwatch(artifactManager);
+            getContext().stop(artifactManager);
+            writeFinished(artifactManager);
+        }
+
+        PendingVersion pending = pendingVersions.remove(artifactId);
+
+        if (pending != null)
+        {
+            getContext().unwatch(pending.manager());
+            getContext().stop(pending.manager());
+            writeFinished(pending.manager());
+        }
+
+        stopVersionManagers(artifactId, version -> true);
+
+        // Replaced versions go with the artifact, so their timers cannot delete shards of an artifact added again under the id
+        Map<String, RetireArtifactVersion> retiring = retirements.remove(artifactId);
+
+        if (retiring != null)
+        {
+            for (var entry : retiring.entrySet())
+            {
+                getTimers().cancel(entry.getKey());
+
+                if (entry.getValue().manager() != null)
+                {
+                    getContext().stop(entry.getValue().manager());
+                    dropReadRepairs(entry.getValue().manager());
+                }
+            }
+        }
+
+        inFlightRepairs.keySet().removeIf(replica -> replica.artifactId().equals(artifactId));
+        pendingReadRepairs.keySet().removeIf(shard -> shard.artifactId().equals(artifactId));
+        inFlightReadRepairs.keySet().removeIf(shard -> shard.artifactId().equals(artifactId));
+
+        return true;
+    }
+
+    private void addWarehouseToVault(AddWarehouseToVault message)
+    {
+        int id = nextWarehouseId++;
+        addWarehouse(id);
+        record(new MetadataEvent.WarehouseAdded(id, false));
+        syncJournal();
+
+        log.info("Added warehouse [{}] to vault", id);
+    }
+
+    private void attachWarehouse(AttachWarehouseToVault message)
+    {
+        int id = message.warehouseId();
+        boolean known = metadata.warehouses().contains(id);
+
+        if (warehouses.containsKey(id) || (known && !metadata.isRemoteWarehouse(id)))
+        {
+            log.warning("Warehouse [{}] already exists in the vault", id);
+            getSender().tell(new WarehouseAlreadyExistsInVault(id), getSelf());
+            return;
+        }
+
+        warehouses.put(id, message.warehouse());
+        warehouseSizes.put(id, 0);
+        getContext().watch(message.warehouse());
+        nextWarehouseId = Math.max(nextWarehouseId, id + 1);
+
+        if (!known)
+        {
+            record(new MetadataEvent.WarehouseAdded(id, true));
+            syncJournal();
+        }
+
+        getSender().tell(new WarehouseAttachedToVault(id), getSelf());
+        log.info("Attached warehouse [{}] at {}", id, message.warehouse().path());
+    }
+
+    private ActorRef artifactManager(String artifactId)
+    {
+        return artifactManagers.computeIfAbsent(artifactId, id -> {
+            ArtifactMetadata artifact = metadata.artifact(id);
+
+            return getContext().watch(getContext().actorOf(ArtifactManagerActor.props(id, warehouseRefs(artifact.placement()), artifact.latest()),
+                    ArtifactManagerActor.actorName("ArtifactManager", id)));
+        });
+    }
+
+    // Shards of the retained versions stay in the placement of the artifact until they are retired
+    private ActorRef versionManager(ArtifactMetadata artifact, ArtifactVersion version)
+    {
+        return versionManagers.computeIfAbsent(artifact.artifactId(), id -> new HashMap<>()).computeIfAbsent(version.version(), number ->
+                getContext().watch(getContext().actorOf(ArtifactManagerActor.props(artifact.artifactId(), warehouseRefs(artifact.placement()), version),
+                        ArtifactManagerActor.actorName("ArtifactManager", artifact.artifactId()))));
+    }
+
+    private void stopVersionManagers(String artifactId, IntPredicate versions)
+    {
+        Map<Integer, ActorRef> managers = versionManagers.get(artifactId);
+
+        if (managers == null)
+        {
+            return;
+        }
+
+        managers.entrySet().removeIf(entry -> {
+            if (!versions.test(entry.getKey()))
+            {
+                return false;
+            }
+
+            getContext().unwatch(entry.getValue());
+            getContext().stop(entry.getValue());
+            dropReadRepairs(entry.getValue());
+            return true;
+        });
+
+        if (managers.isEmpty())
+        {
+            versionManagers.remove(artifactId);
+        }
+    }
+
+    private int[][] assignWarehouses(int numberOfShards)
+    {
+        int[][] warehousesAssignment = new int[numberOfShards][];
+
+        Map<Integer, Integer> expectedSizesOfWarehouses = new HashMap<>(warehouseSizes);
+
+        if (expectedSizesOfWarehouses.size() - fullWarehouses.size() >= replicaCount)
+        {
+            expectedSizesOfWarehouses.keySet().removeAll(fullWarehouses);
+        }
+
+        if (expectedSizesOfWarehouses.size() - suspectedWarehouses.size() >= replicaCount)
+        {
+            expectedSizesOfWarehouses.keySet().removeAll(suspectedWarehouses);
+        }
+
+        for (int shardId = 0; shardId < numberOfShards; ++shardId)
+        {
+            List<Map.Entry<Integer, Integer>> sorted = expectedSizesOfWarehouses.entrySet().stream().sorted(Map.Entry.comparingByValue()).toList();
+
+            warehousesAssignment[shardId] = new int[replicaCount];
+
+            for (int replica = 0; replica < replicaCount; ++replica)
+            {
+                int warehouseId = sorted.get(replica).getKey();
+                warehousesAssignment[shardId][replica] = warehouseId;
+                expectedSizesOfWarehouses.merge(warehouseId, 1, Integer::sum);
+            }
+        }
+
+        return warehousesAssignment;
+    }
+
+    private Multimap<Integer, ActorRef> warehouseRefs(Map<Integer, int[]> placement)
+    {
+        Multimap<Integer, ActorRef> warehousesAssignment = ArrayListMultimap.create();
+
+        for (var entry : placement.entrySet())
+        {
+            for (int warehouseId : entry.getValue())
+            {
+                // Remote warehouse which hasn't attached again since the vault was restarted
+                if (warehouses.containsKey(warehouseId))
+                {
+                    warehousesAssignment.put(entry.getKey(), warehouses.get(warehouseId));
+                }
+            }
+        }
+
+        return warehousesAssignment;
+    }
+
+    // Event is applied only once appended to the journal. It is durable after the next syncJournal, called once per message.
+    private boolean record(MetadataEvent event)
+    {
+        if (journal != null)
+        {
+            try
+            {
+                journal.append(event);
+            }
+            catch (IOException e)
+            {
+                log.error(e, "Cannot write metadata event {}", event);
+                return false;
+            }
+        }
+
+        metadata.apply(event);
+
+        switch (event)
+        {
+            case MetadataEvent.ArtifactCreated created -> artifactIndex.add(created.artifactId());
+            case MetadataEvent.ArtifactDeleted deleted -> artifactIndex.remove(deleted.artifactId());
+            default -> { }
+        }
+
+        return true;
+    }
+
+    // Events recorded while handling a message share a single fsync, e.g. the thousands of a bulk delete or an expiry tick
+    private boolean syncJournal()
+    {
+        if (journal == null)
+        {
+            return true;
+        }
+
+        try
+        {
+            journal.sync();
+
+            if (journal.isSnapshotDue())
+            {
+                journal.snapshot(metadata.copy()).whenComplete((result, failure) -> {
+                    if (failure != null)
+                    {
+                        log.error(failure, "Cannot write metadata snapshot");
+                    }
+                });
+            }
+
+            return true;
+        }
+        catch (IOException e)
+        {
+            log.error(e, "Cannot sync metadata journal");
+            return false;
+        }
+    }
+
+    private void notRecorded(List<String> artifactIds)
+    {
+        getSender().tell(new ArtifactsNotRecordedInVault(artifactIds), getSelf());
+    }
+
+    private void addWarehouse(int id)
+    {
+        warehouses.put(id, getContext().watch(getContext().actorOf(WarehouseActor.props(id, getSelf(), settings.warehouseStorage()), WarehouseActor.actorName(id))));
+        warehouseSizes.put(id, 0);
+    }
+
+    private void updateWarehouseSizes(NumberOfStoredShards message)
+    {
+        int warehouseId = message.warehouseId();
+        int numberOfShards = message.numberOfStoredShards();
+
+        if (!warehouses.containsKey(warehouseId))
+        {
+            return;
+        }
+
+        if (suspectedWarehouses.remove(warehouseId))
+        {
+            log.info("Warehouse [{}] responds again", warehouseId);
+        }
+
+        warehouseSizes.put(warehouseId, numberOfShards);
+
+        if (message.freeBytes() < shardSizing.maxShardSize() + ShardStore.SHARD_OVERHEAD)
+        {
+            fullWarehouses.add(warehouseId);
+        }
+        else
+        {
+            fullWarehouses.remove(warehouseId);
+        }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Updated warehouse [{}] size to: {}", warehouseId, numberOfShards);
+        }
+    }
+
+    private void childTerminated(Terminated message)
+    {
+        ActorRef child = message.getActor();
+        Optional<Integer> failedWarehouse = warehouseId(child);
+
+        if (failedWarehouse.isEmpty())
+        {
+            // Failed artifact manager, a new one is created from the metadata on the next request
+            artifactManagers.values().remove(child);
+            versionManagers.values().forEach(managers -> managers.values().remove(child));
+            versionManagers.values().removeIf(Map::isEmpty);
+            writeFinished(child);
+            pendingVersions.values().removeIf(pending -> pending.manager().equals(child));
+            dropReadRepairs(child);
+            return;
+        }
+
+        int warehouseId = failedWarehouse.get();
+        warehouses.remove(warehouseId);
+        warehouseSizes.remove(warehouseId);
+        suspectedWarehouses.remove(warehouseId);
+        fullWarehouses.remove(warehouseId);
+
+        int lostReplicas = 0;
+
+        for (ArtifactMetadata artifact : metadata.artifacts())
+        {
+            boolean affected = false;
+
+            for (var entry : artifact.placement().entrySet())
+            {
+                int[] replicas = entry.getValue();
+
+                if (contains(replicas, warehouseId))
+                {
+                    pendingRepairs.add(new ReplicaRepair(new ShardReplica(artifact.artifactId(), entry.getKey(), warehouseId), liveReplicas(replicas), 0));
+                    affected = true;
+                    ++lostReplicas;
+                }
+            }
+
+            ActorRef artifactManager = artifactManagers.get(artifact.artifactId());
+
+            if (affected && artifactManager != null)
+            {
+                artifactManager.tell(new WarehouseUnavailable(child), getSelf());
+            }
+        }
+
+        log.warning("Warehouse [{}] is unavailable. Restoring {} replicas", warehouseId, lostReplicas);
+
+        dispatchRepairs();
+    }
+
+    private void dispatchRepairs()
+    {
+        List<ReplicaRepair> deferred = new ArrayList<>();
+
+        while (repairsInFlight() < settings.maxConcurrentRepairs() && !pendingRepairs.isEmpty())
+        {
+            ReplicaRepair repair = pendingRepairs.poll();
+            ShardReplica replica = repair.replica();
+            ArtifactMetadata artifact = metadata.artifact(replica.artifactId());
+
+            // Artifact deleted or replica already moved
+            if (artifact == null || !artifact.containsShard(replica.shardId()) || !contains(artifact.replicas(replica.shardId()), replica.warehouseId()))
+            {
+                continue;
+            }
+
+            Optional<Integer> target = leastLoadedWarehouse(artifact.replicas(replica.shardId()));
+
+            // Waits for another warehouse to be added
+            if (target.isEmpty())
+            {
+                deferred.add(repair);
+                continue;
+            }
+
+            int targetWarehouseId = target.get();
+            inFlightRepairs.put(replica, repair);
+            warehouseSizes.merge(targetWarehouseId, 1, Integer::sum);
+
+            artifactManager(replica.artifactId()).tell(new RestoreReplica(replica.shardId(), replica.warehouseId(), targetWarehouseId,
+                    warehouses.get(targetWarehouseId)), getSelf());
+        }
+
+        pendingRepairs.addAll(deferred);
+
+        long now = System.nanoTime();
+        Iterator<Map.Entry<ArtifactShard, ActorRef>> readRepairs = pendingReadRepairs.entrySet().iterator();
+
+        // Tokens are taken only for repairs which have a free slot
+        while (repairsInFlight() < settings.maxConcurrentRepairs() && readRepairs.hasNext() && readRepairRate.tryAcquire(now))
+        {
+            Map.Entry<ArtifactShard, ActorRef> repair = readRepairs.next();
+            readRepairs.remove();
+
+            inFlightReadRepairs.put(repair.getKey(), repair.getValue());
+            repair.getValue().tell(new StartReadRepair(repair.getKey().shardId()), getSelf());
+        }
+
+        if (pendingRepairs.isEmpty() && inFlightRepairs.isEmpty() && pendingReadRepairs.isEmpty() && inFlightReadRepairs.isEmpty())
+        {
+            getTimers().cancel(REPAIR_TIMER);
+        }
+        else if (!getTimers().isTimerActive(REPAIR_TIMER))
+        {
+            getTimers().startTimerWithFixedDelay(REPAIR_TIMER, new RepairReplicas(), Duration.ofSeconds(1));
+        }
+    }
+
+    private int repairsInFlight()
+    {
+        return inFlightRepairs.size() + inFlightReadRepairs.size();
+    }
+
+    // Repairs already queued by another manager of the artifact, or over the limit, are answered right away, so the manager can ask again later
+    private void readRepairRequested(ReadRepairRequested message)
+    {
+        ArtifactShard shard = new ArtifactShard(message.artifactId(), message.shardId());
+
+        if (pendingReadRepairs.containsKey(shard) || inFlightReadRepairs.containsKey(shard) || pendingReadRepairs.size() >= maxQueuedReadRepairs)
+        {
+            getSender().tell(new ReplicasRepaired(message.artifactId(), message.shardId(), 0), getSelf());
+            return;
+        }
+
+        pendingReadRepairs.put(shard, getSender());
+        dispatchRepairs();
+    }
+
+    private void replicasRepaired(ReplicasRepaired message)
+    {
+        if (inFlightReadRepairs.remove(new ArtifactShard(message.artifactId(), message.shardId()), getSender()))
+        {
+            dispatchRepairs();
+        }
+    }
+
+    private void dropReadRepairs(ActorRef artifactManager)
+    {
+        pendingReadRepairs.values().removeIf(artifactManager::equals);
+
+        if (inFlightReadRepairs.values().removeIf(artifactManager::equals))
+        {
+            dispatchRepairs();
+        }
+    }
+
+    private void replicaRestored(ReplicaRestored message)
+    {
+        ShardReplica replica = new ShardReplica(message.artifactId(), message.shardId(), message.failedWarehouseId());
+
+        if (inFlightRepairs.remove(replica) != null)
+        {
+            record(new MetadataEvent.ReplicaMoved(message.artifactId(), message.shardId(), message.failedWarehouseId(), message.targetWarehouseId()));
+            syncJournal();
+        }
+
+        dispatchRepairs();
+    }
+
+    private void replicaRestoreFailed(ReplicaRestoreFailed message)
+    {
+        ShardReplica replica = new ShardReplica(message.artifactId(), message.shardId(), message.failedWarehouseId());
+        ReplicaRepair repair = inFlightRepairs.remove(replica);
+
+        if (repair == null)
+        {
+            return;
+        }
+
+        // Retried on the next tick of the repair timer
+        if (repair.attempts() + 1 < MAX_REPAIR_ATTEMPTS)
+        {
+            pendingRepairs.add(new ReplicaRepair(replica, repair.liveReplicas(), repair.attempts() + 1));
+        }
+        else
+        {
+            log.error("Cannot restore shard [{}] of artifact [{}] lost with warehouse [{}]", replica.shardId(), replica.artifactId(),
+                    replica.warehouseId());
+        }
+    }
+
+    private void shardNotAcknowledged(ShardNotAcknowledged message)
+    {
+        ArtifactMetadata artifact = metadata.artifact(message.artifactId());
+        Optional<Integer> owner = warehouseId(message.warehouse());
+
+        // Failed warehouses are handled by re-replication
+        if (artifact == null || owner.isEmpty())
+        {
+            return;
+        }
+
+        if (suspectedWarehouses.add(owner.get()))
+        {
+            log.warning("Warehouse [{}] doesn't acknowledge writes", owner.get());
+        }
+
+        Optional<Integer> substitute = leastLoadedWarehouse(replicasOf(artifact, message.shardId()));
+
+        if (substitute.isEmpty())
+        {
+            log.warning("No substitute for warehouse [{}] to hand off shard [{}] of artifact [{}]", owner.get(), message.shardId(),
+                    message.artifactId());
+            return;
+        }
+
+        getSender().tell(new HandOffShard(message.shardId(), owner.get(), message.warehouse(), warehouses.get(substitute.get())), getSelf());
+    }
+
+    private void shardRejectedOverQuota(ShardRejectedOverQuota message)
+    {
+        ArtifactMetadata artifact = metadata.artifact(message.artifactId());
+        Optional<Integer> full = warehouseId(message.warehouse());
+
+        if (artifact == null || full.isEmpty())
+        {
+            return;
+        }
+
+        if (fullWarehouses.add(full.get()))
+        {
+            log.warning("Warehouse [{}] is over its quota", full.get());
+        }
+
+        int shardId = message.shardId();
+        int[] replicas = replicasOf(artifact, shardId);
+        Optional<Integer> target = leastLoadedWarehouse(replicas);
+
+        if (target.isEmpty())
+        {
+            log.warning("No warehouse with free space for shard [{}] of artifact [{}]", shardId, message.artifactId());
+            return;
+        }
+
+        int targetWarehouseId = target.get();
+        PendingVersion pending = pendingVersions.get(message.artifactId());
+
+        // Shards of a version being written are recorded with the version
+        if (pending != null && pending.newShards().containsKey(shardId))
+        {
+            Map<Integer, int[]> newShards = new HashMap<>(pending.newShards());
+            newShards.put(shardId, Arrays.stream(replicas).map(id -> id == full.get() ? targetWarehouseId : id).toArray());
+            pendingVersions.put(message.artifactId(), new PendingVersion(pending.version(), Map.copyOf(newShards), pending.manager()));
+        }
+        else
+        {
+            record(new MetadataEvent.ReplicaMoved(message.artifactId(), shardId, full.get(), targetWarehouseId));
+            syncJournal();
+        }
+
+        warehouseSizes.merge(targetWarehouseId, 1, Integer::sum);
+        getSender().tell(new RelocateShard(shardId, message.warehouse(), targetWarehouseId, warehouses.get(targetWarehouseId)), getSelf());
+    }
+
+    // Replicas of a shard of the artifact or of the version being written
+    private int[] replicasOf(ArtifactMetadata artifact, int shardId)
+    {
+        if (artifact.containsShard(shardId))
+        {
+            return artifact.replicas(shardId);
+        }
+
+        PendingVersion pending = pendingVersions.get(artifact.artifactId());
+        return pending != null ? pending.newShards().getOrDefault(shardId, new int[0]) : new int[0];
+    }
+
+    // Responsive warehouse with the fewest shards and free space which doesn't hold any of the given replicas
+    private Optional<Integer> leastLoadedWarehouse(int[] replicas)
+    {
+        return warehouseSizes.entrySet().stream()
+                .filter(entry -> !contains(replicas, entry.getKey()) && !suspectedWarehouses.contains(entry.getKey())
+                        && !fullWarehouses.contains(entry.getKey()))
+                .min(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey);
+    }
+
+    private Optional<Integer> warehouseId(ActorRef warehouse)
+    {
+        return warehouses.entrySet().stream()
+                .filter(entry -> entry.getValue().equals(warehouse))
+                .map(Map.Entry::getKey)
+                .findFirst();
+    }
+
+    private int liveReplicas(int[] replicas)
+    {
+        return (int) Arrays.stream(replicas).filter(warehouses::containsKey).count();
+    }
+
+    private static boolean contains(int[] warehouseIds, int warehouseId)
+    {
+        return Arrays.stream(warehouseIds).anyMatch(id -> id == warehouseId);
+    }
+
+    private record ShardReplica(String artifactId, int shardId, int warehouseId)
+    {
+    }
+
+    private record ArtifactShard(String artifactId, int shardId)
+    {
+    }
+
+    private record ReplicaRepair(ShardReplica replica, int liveReplicas, int attempts)
+    {
+    }
+
+    private record PendingVersion(ArtifactVersion version, Map<Integer, int[]> newShards, ActorRef manager)
+    {
     }
 }
@@ -0,0 +1,84 @@
+package org.example.actor;
+
+import com.google.common.base.Preconditions;
+import org.example.admission.AdmissionSettings;
+import org.example.message.ReadMode;
+import org.example.storage.StorageSettings;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+public record VaultSettings(Path metadataDirectory, int snapshotInterval, int maxConcurrentRepairs, StorageSettings warehouseStorage,
+                            int retainedVersions, AdmissionSettings admission, ReadMode readMode, Duration writeTimeout,
+                            Duration versionGracePeriod)
+{
+    public VaultSettings
+    {
+        Preconditions.checkArgument(snapshotInterval >= 1, "Snapshot interval must be greater or equal 1");
+        Preconditions.checkArgument(maxConcurrentRepairs >= 1, "Concurrent repairs number must be greater or equal 1");
+        Preconditions.checkArgument(retainedVersions >= 1, "Retained versions number must be greater or equal 1");
+        Preconditions.checkArgument(writeTimeout.isPositive(), "Write timeout must be positive");
+        Preconditions.checkArgument(!versionGracePeriod.isNegative(), "Version grace period must not be negative");
+    }
+
+    public static VaultSettings defaults()
+    {
+        return new VaultSettings(null, 100_000, 16, StorageSettings.inMemory(), 2, AdmissionSettings.unlimited(), ReadMode.FAN_OUT,
+                Duration.ofSeconds(5), Duration.ofSeconds(10));
+    }
+
+    public VaultSettings withMetadataDirectory(Path metadataDirectory)
+    {
+        return new VaultSettings(metadataDirectory, snapshotInterval, maxConcurrentRepairs, warehouseStorage, retainedVersions, admission, readMode,
+                writeTimeout, versionGracePeriod);
+    }
+
+    public VaultSettings withSnapshotInterval(int snapshotInterval)
+    {
+        return new VaultSettings(metadataDirectory, snapshotInterval, maxConcurrentRepairs, warehouseStorage, retainedVersions, admission, readMode,
+                writeTimeout, versionGracePeriod);
+    }
+
+    public VaultSettings withMaxConcurrentRepairs(int maxConcurrentRepairs)
+    {
+        return new VaultSettings(metadataDirectory, snapshotInterval, maxConcurrentRepairs, warehouseStorage, retainedVersions, admission, readMode,
+                writeTimeout, versionGracePeriod);
+    }
+
+    public VaultSettings withWarehouseStorage(StorageSettings warehouseStorage)
+    {
+        return new VaultSettings(metadataDirectory, snapshotInterval, maxConcurrentRepairs, warehouseStorage, retainedVersions, admission, readMode,
+                writeTimeout, versionGracePeriod);
+    }
+
+    public VaultSettings withRetainedVersions(int retainedVersions)
+    {
+        return new VaultSettings(metadataDirectory, snapshotInterval, maxConcurrentRepairs, warehouseStorage, retainedVersions, admission, readMode,
+                writeTimeout, versionGracePeriod);
+    }
+
+    public VaultSettings withAdmission(AdmissionSettings admission)
+    {
+        return new VaultSettings(metadataDirectory, snapshotInterval, maxConcurrentRepairs, warehouseStorage, retainedVersions, admission, readMode,
+                writeTimeout, versionGracePeriod);
+    }
+
+    public VaultSettings withReadMode(ReadMode readMode)
+    {
+        return new VaultSettings(metadataDirectory, snapshotInterval, maxConcurrentRepairs, warehouseStorage, retainedVersions, admission, readMode,
+                writeTimeout, versionGracePeriod);
+    }
+
+    public VaultSettings withWriteTimeout(Duration writeTimeout)
+    {
+        return new VaultSettings(metadataDirectory, snapshotInterval, maxConcurrentRepairs, warehouseStorage, retainedVersions, admission, readMode,
+                writeTimeout, versionGracePeriod);
+    }
+
+    // Replaced versions keep being read by the reads started before the update for this long, then their shards are deleted
+    public VaultSettings withVersionGracePeriod(Duration versionGracePeriod)
+    {
+        return new VaultSettings(metadataDirectory, snapshotInterval, maxConcurrentRepairs, warehouseStorage, retainedVersions, admission, readMode,
+                writeTimeout, versionGracePeriod);
+    }
+}
@@ -1,36 +1,115 @@
 package org.example.actor;
 
-import akka.actor.AbstractActor;
+import akka.actor.AbstractActorWithTimers;
 import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.actor.Terminated;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
+import akka.pattern.Patterns;
 import org.example.message.warehouse.*;
+import org.example.storage.LocalShardReads;
+import org.example.storage.ShardStore;
+import org.example.storage.StorageIo;
+import org.example.storage.StorageSettings;
+import org.example.tracing.TraceContext;
+import org.example.tracing.Tracer;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Predicate;
 
-public class WarehouseActor extends AbstractActor
+public class WarehouseActor extends AbstractActorWithTimers
 {
+    public static final String MAILBOX = "shard-vault.warehouse-mailbox";
+    private static final String NAME_PREFIX = "Warehouse-";
+    private static final String REPLAY_TIMER = "ReplayHints";
+    private static final int REPLAY_BATCH = 64;
+    private static final String SWEEP_TIMER = "SweepTombstones";
+    private static final int SWEEP_BATCH = 4096;
+
     private final int warehouseId;
-    private final Map<String, Map<Integer, List<Byte>>> warehouse = new HashMap<>();
     private final ActorRef vault;
+    private final StorageSettings storage;
+    private ShardStore warehouse;
+
+    // Shards written here on behalf of unresponsive warehouses, replayed to them until they acknowledge
+    private final Map<ActorRef, Map<HintKey, List<Byte>>> hints = new HashMap<>();
+    private long hintBytes = 0;
 
+    // Name of the warehouse in traces
+    private final String component;
+    private final Tracer tracer = Tracer.get(getContext().getSystem());
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
 
     public static Props props(int warehouseId, ActorRef vault)
     {
-        return Props.create(WarehouseActor.class, () -> new WarehouseActor(warehouseId, vault));
+        return props(warehouseId, vault, StorageSettings.inMemory());
+    }
+
+    // Bounded mailbox, an overloaded warehouse rejects writes and reads instead of growing without limit
+    public static Props props(int warehouseId, ActorRef vault, StorageSettings storage)
+    {
+        return Props.create(WarehouseActor.class, () -> new WarehouseActor(warehouseId, vault, storage)).withMailbox(MAILBOX);
+    }
+
+    public static String actorName(int warehouseId)
+    {
+        return NAME_PREFIX + warehouseId;
+    }
+
+    // Id of a warehouse named by actorName, -1 for another actor
+    static int warehouseIdOf(ActorRef warehouse)
+    {
+        String name = warehouse.path().name();
+
+        if (!name.startsWith(NAME_PREFIX))
+        {
+            return -1;
+        }
+
+        try
+        {
+            return Integer.parseInt(name.substring(NAME_PREFIX.length()));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
     }
 
-    public WarehouseActor(int warehouseId, ActorRef vault)
+    public WarehouseActor(int warehouseId, ActorRef vault, StorageSettings storage)
     {
         this.warehouseId = warehouseId;
+        this.component = "warehouse-" + warehouseId;
         this.vault = vault;
-        log.info("Created warehouse [" + warehouseId + "]");
+        this.storage = storage;
+        log.info("Created warehouse [{}]", warehouseId);
+    }
+
+    @Override
+    public void preStart() throws IOException
+    {
+        if (storage.isTiered())
+        {
+            // Spill files are read and written on virtual threads, outside the warehouse's mailbox
+            warehouse = ShardStore.tiered(storage.spillDirectory().resolve("warehouse-" + warehouseId), storage.memoryBudget(),
+                    StorageIo.get(getContext().getSystem()));
+        }
+        else
+        {
+            warehouse = ShardStore.inMemory();
+        }
+
+        LocalShardReads.get(getContext().getSystem()).register(getSelf(), warehouse.readView());
+    }
+
+    @Override
+    public void postStop() throws IOException
+    {
+        LocalShardReads.get(getContext().getSystem()).unregister(getSelf());
+        warehouse.close();
     }
 
     @Override
@@ -39,8 +118,18 @@ public class WarehouseActor extends AbstractActor
         return receiveBuilder()
                 .match(AddShardToWarehouse.class, this::addShard)
                 .match(DeleteShardFromWarehouse.class, this::deleteShard)
-                .match(GetShardFromWarehouse.class, this::getShard)
+                .match(DeleteArtifactsFromWarehouse.class, this::deleteArtifacts)
+                .match(SweepTombstones.class, this::sweepTombstones)
+                .match(GetShardFromWarehouse.class, message -> tracer.traced("warehouse get", component, message.trace(),
+                        trace -> getShard(message, trace)))
+                .match(ShardLoadedFromDisk.class, this::shardLoaded)
+                .match(ShardLoadFailed.class, this::shardLoadFailed)
                 .match(GetStatusOfWarehouse.class, this::getStatus)
+                .match(AddHintToWarehouse.class, this::addHint)
+                .match(ReplayHints.class, this::replayHints)
+                .match(ShardStoredInWarehouse.class, this::hintDelivered)
+                .match(ShardRejectedByWarehouse.class, this::hintRejected)
+                .match(Terminated.class, this::ownerTerminated)
                 .build();
     }
 
@@ -50,14 +139,20 @@ public class WarehouseActor extends AbstractActor
         int shardId = message.shardId();
         List<Byte> data = message.data();
 
-        if (!warehouse.containsKey(artifactId))
+        if (!fitsQuota(warehouse.growth(artifactId, shardId, data.size())))
         {
-            warehouse.put(artifactId, new HashMap<>());
-            log.info("Created a map for storing shards of [" + artifactId + "]");
+            reject(artifactId, shardId);
+            return;
         }
 
-        warehouse.get(artifactId).put(shardId, data);
-        log.info("Stored shard [" + shardId + "] of artifact [" + artifactId + "]");
+        warehouse.put(artifactId, shardId, data);
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Stored shard [{}] of artifact [{}]", shardId, artifactId);
+        }
+
+        getSender().tell(new ShardStoredInWarehouse(warehouseId, artifactId, shardId), getSelf());
         sendNumberOfStoredShards();
     }
 
@@ -66,91 +161,363 @@ public class WarehouseActor extends AbstractActor
         String artifactId = message.artifactId();
         int shardId = message.shardId();
 
-        if (warehouse.containsKey(artifactId))
-        {
-            var shards = warehouse.get(artifactId);
+        // A deleted shard must not be resurrected by a late hint replay
+        boolean hinted = removeHints(artifactId, shardId);
 
-            if (shards.containsKey(shardId))
+        if (warehouse.containsArtifact(artifactId))
+        {
+            if (warehouse.remove(artifactId, shardId))
             {
-                warehouse.get(artifactId).remove(shardId);
-                log.info("Deleted shard [" + shardId + "] of artifact [" + artifactId + "]");
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Deleted shard [{}] of artifact [{}]", shardId, artifactId);
+                }
 
-                if (warehouse.get(artifactId).isEmpty())
+                if (!warehouse.containsArtifact(artifactId))
                 {
-                    warehouse.remove(artifactId);
-                    log.info("Removed a map for storing shards of [" + artifactId + "]");
+                    if (log.isDebugEnabled())
+                    {
+                        log.debug("Removed a map for storing shards of [{}]", artifactId);
+                    }
+
                     sendNumberOfStoredShards();
                 }
             }
-            else
+            else if (!hinted)
             {
                 getSender().tell(new ShardNotFoundInWarehouse(artifactId, shardId), getSelf());
-                log.warning("Warehouse [" + warehouseId + "] doesn't store shard [" + shardId + "] of artifact [" + artifactId + "]");
+                log.warning("Warehouse [{}] doesn't store shard [{}] of artifact [{}]", warehouseId, shardId, artifactId);
             }
 
         }
-        else
+        else if (!hinted)
         {
             getSender().tell(new ArtifactNotFoundInWarehouse(artifactId), getSelf());
-            log.warning("Warehouse [" + warehouseId + "] doesn't store artifact [" + artifactId + "]");
+            log.warning("Warehouse [{}] doesn't store artifact [{}]", warehouseId, artifactId);
         }
     }
 
-    private void getShard(GetShardFromWarehouse message)
+    // Artifacts are tombstoned at once, their storage is reclaimed by sweeps interleaved with other messages
+    private void deleteArtifacts(DeleteArtifactsFromWarehouse message)
+    {
+        int deletedShards = 0;
+
+        for (String artifactId : message.artifactIds())
+        {
+            deletedShards += warehouse.tombstone(artifactId);
+        }
+
+        removeHints(message.artifactIds());
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Deleted {} shards of {} artifacts", deletedShards, message.artifactIds().size());
+        }
+
+        if (warehouse.hasTombstones() && !getTimers().isTimerActive(SWEEP_TIMER))
+        {
+            getTimers().startTimerWithFixedDelay(SWEEP_TIMER, new SweepTombstones(), Duration.ofMillis(10));
+        }
+
+        sendNumberOfStoredShards();
+    }
+
+    private void sweepTombstones(SweepTombstones message)
+    {
+        warehouse.sweep(SWEEP_BATCH);
+
+        if (!warehouse.hasTombstones())
+        {
+            getTimers().cancel(SWEEP_TIMER);
+            sendNumberOfStoredShards();
+        }
+    }
+
+    private void getShard(GetShardFromWarehouse message, TraceContext trace)
     {
         String artifactId = message.artifactId();
         int shardId = message.shardId();
 
-        if (warehouse.containsKey(artifactId))
+        if (warehouse.containsArtifact(artifactId))
         {
-            var shards = warehouse.get(artifactId);
-
-            if (shards.containsKey(shardId))
+            if (warehouse.contains(artifactId, shardId))
             {
-                ShardResponseFromWarehouse shard = new ShardResponseFromWarehouse(artifactId, shardId, warehouse.get(artifactId).get(shardId));
-                getSender().tell(shard, getSelf());
-                log.info("Got shard [" + shardId + "] of artifact [" + artifactId + "]");
+                List<Byte> data = warehouse.get(artifactId, shardId);
+
+                if (data != null)
+                {
+                    ShardResponseFromWarehouse shard = new ShardResponseFromWarehouse(artifactId, shardId, data, trace);
+                    getSender().tell(shard, getSelf());
+
+                    if (log.isDebugEnabled())
+                    {
+                        log.debug("Got shard [{}] of artifact [{}]", shardId, artifactId);
+                    }
+                }
+                else
+                {
+                    loadShard(artifactId, shardId, getSender(), trace);
+                }
             }
             else
             {
                 getSender().tell(new ShardNotFoundInWarehouse(artifactId, shardId), getSelf());
-                log.warning("Warehouse [" + warehouseId + "] doesn't store shard [" + shardId + "] of artifact [" + artifactId + "]");
+                log.warning("Warehouse [{}] doesn't store shard [{}] of artifact [{}]", warehouseId, shardId, artifactId);
             }
 
         }
         else
         {
             getSender().tell(new ArtifactNotFoundInWarehouse(artifactId), getSelf());
-            log.warning("Warehouse [" + warehouseId + "] doesn't store artifact [" + artifactId + "]");
+            log.warning("Warehouse [{}] doesn't store artifact [{}]", warehouseId, artifactId);
+        }
+    }
+
+    private void loadShard(String artifactId, int shardId, ActorRef replyTo, TraceContext trace)
+    {
+        // The mailbox keeps being processed while the spilled shard is read
+        long version = warehouse.version(artifactId, shardId);
+
+        Patterns.pipe(warehouse.load(artifactId, shardId).handle((data, failure) -> failure == null
+                ? new ShardLoadedFromDisk(artifactId, shardId, version, data, replyTo, trace)
+                : new ShardLoadFailed(artifactId, shardId, version, replyTo, failure)), getContext().getDispatcher()).to(getSelf());
+    }
+
+    private void shardLoaded(ShardLoadedFromDisk message)
+    {
+        String artifactId = message.artifactId();
+        int shardId = message.shardId();
+
+        // Reply continues the span of the request, which ended once the read was started
+        tracer.recordTransit("warehouse disk read", component, message.trace(), Tracer.now());
+        message.replyTo().tell(new ShardResponseFromWarehouse(artifactId, shardId, message.data(),
+                tracer.child(message.trace(), message.trace().parentSpanId())), getSelf());
+        warehouse.admit(artifactId, shardId, message.version(), message.data());
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Got shard [{}] of artifact [{}] from disk", shardId, artifactId);
+        }
+    }
+
+    private void shardLoadFailed(ShardLoadFailed message)
+    {
+        String artifactId = message.artifactId();
+        int shardId = message.shardId();
+
+        // Shard overwritten or deleted during the read, answered from its current state
+        if (warehouse.contains(artifactId, shardId) && warehouse.version(artifactId, shardId) != message.version())
+        {
+            getSelf().tell(new GetShardFromWarehouse(artifactId, shardId), message.replyTo());
+            return;
         }
+
+        if (warehouse.contains(artifactId, shardId))
+        {
+            log.error(message.cause(), "Cannot read shard [{}] of artifact [{}] from disk", shardId, artifactId);
+        }
+
+        message.replyTo().tell(new ShardNotFoundInWarehouse(artifactId, shardId), getSelf());
     }
 
     private void getStatus(GetStatusOfWarehouse message)
     {
-        Multimap<String, Integer> shards = ArrayListMultimap.create();
+        getSender().tell(new StatusResponseOfWarehouse(warehouseId, warehouse.shards()), getSelf());
+    }
+
+    private void sendNumberOfStoredShards()
+    {
+        long storedBytes = storedBytes();
+        vault.tell(new NumberOfStoredShards(warehouseId, warehouse.numberOfShards(), storedBytes, Math.max(0, storage.quota() - storedBytes)), getSelf());
+    }
+
+    private long storedBytes()
+    {
+        return warehouse.storedBytes() + hintBytes;
+    }
+
+    private boolean fitsQuota(long growth)
+    {
+        return growth <= 0 || storedBytes() + growth <= storage.quota();
+    }
+
+    private void reject(String artifactId, int shardId)
+    {
+        getSender().tell(new ShardRejectedByWarehouse(warehouseId, artifactId, shardId, storedBytes(), storage.quota()), getSelf());
+        log.warning("Rejected shard [{}] of artifact [{}], {} of {} bytes stored", shardId, artifactId, storedBytes(), storage.quota());
+    }
+
+    private void addHint(AddHintToWarehouse message)
+    {
+        ActorRef owner = message.owner();
+        HintKey key = new HintKey(message.artifactId(), message.shardId());
+        List<Byte> previous = hints.getOrDefault(owner, Map.of()).get(key);
+
+        if (!fitsQuota(hintSize(message.data()) - (previous == null ? 0 : hintSize(previous))))
+        {
+            reject(message.artifactId(), message.shardId());
+            return;
+        }
 
-        for (var entry : warehouse.entrySet())
+        if (!hints.containsKey(owner))
         {
-            String artifactId = entry.getKey();
+            getContext().watch(owner);
+        }
 
-            for (int shard : entry.getValue().keySet())
+        hints.computeIfAbsent(owner, ref -> new HashMap<>()).put(key, message.data());
+        hintBytes += hintSize(message.data()) - (previous == null ? 0 : hintSize(previous));
+        getSender().tell(new ShardStoredInWarehouse(warehouseId, message.artifactId(), message.shardId()), getSelf());
+
+        log.info("Stored hint for shard [{}] of artifact [{}] owned by warehouse [{}]", message.shardId(), message.artifactId(),
+                message.ownerWarehouseId());
+
+        if (!getTimers().isTimerActive(REPLAY_TIMER))
+        {
+            getTimers().startTimerWithFixedDelay(REPLAY_TIMER, new ReplayHints(), Duration.ofSeconds(1));
+        }
+    }
+
+    private void replayHints(ReplayHints message)
+    {
+        // Bounded batches, so a recovering warehouse isn't flooded; unacknowledged hints are sent again on the next tick
+        for (var entry : hints.entrySet())
+        {
+            ActorRef owner = entry.getKey();
+            Iterator<Map.Entry<HintKey, List<Byte>>> pending = entry.getValue().entrySet().iterator();
+
+            for (int i = 0; i < REPLAY_BATCH && pending.hasNext(); ++i)
             {
-                shards.put(artifactId, shard);
+                Map.Entry<HintKey, List<Byte>> hint = pending.next();
+                owner.tell(new AddShardToWarehouse(hint.getKey().artifactId(), hint.getKey().shardId(), hint.getValue()), getSelf());
             }
         }
+    }
 
-        getSender().tell(new StatusResponseOfWarehouse(warehouseId, shards), getSelf());
+    private void hintDelivered(ShardStoredInWarehouse message)
+    {
+        ActorRef owner = getSender();
+        if (removeHint(owner, new HintKey(message.artifactId(), message.shardId())))
+        {
+            log.info("Handed off shard [{}] of artifact [{}] to warehouse [{}]", message.shardId(), message.artifactId(),
+                    message.warehouseId());
+        }
     }
 
-    private void sendNumberOfStoredShards()
+    private void hintRejected(ShardRejectedByWarehouse message)
     {
-        int counter = 0;
+        // The owner's mailbox is full, the hint is kept and replayed on the next tick
+        if (message.isOverloaded())
+        {
+            return;
+        }
 
-        for (var singleArtifact : warehouse.values())
+        // The owner is full, its replica is missing until it is repaired from the others
+        if (removeHint(getSender(), new HintKey(message.artifactId(), message.shardId())))
         {
-            counter += singleArtifact.size();
+            log.warning("Dropped hint for shard [{}] of artifact [{}], warehouse [{}] is over its quota", message.shardId(), message.artifactId(),
+                    message.warehouseId());
         }
+    }
+
+    private boolean removeHint(ActorRef owner, HintKey key)
+    {
+        Map<HintKey, List<Byte>> ownerHints = hints.get(owner);
+        List<Byte> removed = ownerHints == null ? null : ownerHints.remove(key);
+
+        if (removed == null)
+        {
+            return false;
+        }
+
+        hintBytes -= hintSize(removed);
 
-        vault.tell(new NumberOfStoredShards(warehouseId, counter), getSelf());
+        if (ownerHints.isEmpty())
+        {
+            hints.remove(owner);
+            getContext().unwatch(owner);
+            stopReplayIfDone();
+        }
+
+        return true;
+    }
+
+    private void ownerTerminated(Terminated message)
+    {
+        // Lost replicas of a failed warehouse are restored by the vault from the regular replicas
+        Map<HintKey, List<Byte>> dropped = hints.remove(message.getActor());
+
+        if (dropped != null)
+        {
+            dropped.values().forEach(data -> hintBytes -= hintSize(data));
+            log.warning("Dropped {} hints for terminated warehouse {}", dropped.size(), message.getActor().path());
+            stopReplayIfDone();
+        }
+    }
+
+    private boolean removeHints(String artifactId, int shardId)
+    {
+        HintKey key = new HintKey(artifactId, shardId);
+        return removeHints(hint -> hint.equals(key));
+    }
+
+    private void removeHints(Collection<String> artifactIds)
+    {
+        if (!hints.isEmpty())
+        {
+            Set<String> deleted = new HashSet<>(artifactIds);
+            removeHints(hint -> deleted.contains(hint.artifactId()));
+        }
+    }
+
+    private boolean removeHints(Predicate<HintKey> filter)
+    {
+        boolean removed = false;
+
+        Iterator<Map.Entry<ActorRef, Map<HintKey, List<Byte>>>> owners = hints.entrySet().iterator();
+
+        while (owners.hasNext())
+        {
+            Map.Entry<ActorRef, Map<HintKey, List<Byte>>> owner = owners.next();
+            Iterator<Map.Entry<HintKey, List<Byte>>> ownerHints = owner.getValue().entrySet().iterator();
+
+            while (ownerHints.hasNext())
+            {
+                Map.Entry<HintKey, List<Byte>> hint = ownerHints.next();
+
+                if (filter.test(hint.getKey()))
+                {
+                    hintBytes -= hintSize(hint.getValue());
+                    ownerHints.remove();
+                    removed = true;
+                }
+            }
+
+            if (owner.getValue().isEmpty())
+            {
+                getContext().unwatch(owner.getKey());
+                owners.remove();
+            }
+        }
+
+        stopReplayIfDone();
+
+        return removed;
+    }
+
+    private static long hintSize(List<Byte> data)
+    {
+        return ShardStore.SHARD_OVERHEAD + data.size();
+    }
+
+    private void stopReplayIfDone()
+    {
+        if (hints.isEmpty())
+        {
+            getTimers().cancel(REPLAY_TIMER);
+        }
+    }
+
+    private record HintKey(String artifactId, int shardId)
+    {
     }
 }
@@ -0,0 +1,121 @@
+package org.example.actor;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import com.google.common.base.Preconditions;
+import com.typesafe.config.Config;
+import org.example.message.warehouse.AddHintToWarehouse;
+import org.example.message.warehouse.AddShardToWarehouse;
+import org.example.message.warehouse.GetShardFromWarehouse;
+import org.example.message.warehouse.ShardNotFoundInWarehouse;
+import org.example.message.warehouse.ShardRejectedByWarehouse;
+import scala.Option;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Mailbox of a warehouse bounding only the shards being written and read. Those over the capacity are answered right away on behalf of
+// the warehouse, writes as rejected and reads as not found, so their senders hand them off or ask another replica instead of timing out.
+// Deletes, acknowledgements and timer ticks are always enqueued, in order with the rest, as dropping them loses work nobody retries.
+public class WarehouseMailbox implements MailboxType, ProducesMessageQueue<WarehouseMailbox.WarehouseMessageQueue>
+{
+    private final int capacity;
+
+    public WarehouseMailbox(ActorSystem.Settings settings, Config config)
+    {
+        this(config.getInt("mailbox-capacity"));
+    }
+
+    public WarehouseMailbox(int capacity)
+    {
+        Preconditions.checkArgument(capacity >= 1, "Mailbox capacity must be greater or equal 1");
+        this.capacity = capacity;
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system)
+    {
+        return new WarehouseMessageQueue(capacity);
+    }
+
+    public static boolean isBounded(Object message)
+    {
+        return message instanceof AddShardToWarehouse || message instanceof AddHintToWarehouse || message instanceof GetShardFromWarehouse;
+    }
+
+    public static class WarehouseMessageQueue implements MessageQueue
+    {
+        private final int capacity;
+
+        private final Queue<Envelope> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger bounded = new AtomicInteger();
+
+        public WarehouseMessageQueue(int capacity)
+        {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle)
+        {
+            if (isBounded(handle.message()) && bounded.incrementAndGet() > capacity)
+            {
+                bounded.decrementAndGet();
+                handle.sender().tell(rejection(WarehouseActor.warehouseIdOf(receiver), handle.message()), receiver);
+                return;
+            }
+
+            queue.add(handle);
+        }
+
+        private static Object rejection(int warehouseId, Object message)
+        {
+            return switch (message)
+            {
+                case AddShardToWarehouse add -> ShardRejectedByWarehouse.overloaded(warehouseId, add.artifactId(), add.shardId());
+                case AddHintToWarehouse hint -> ShardRejectedByWarehouse.overloaded(warehouseId, hint.artifactId(), hint.shardId());
+                case GetShardFromWarehouse get -> new ShardNotFoundInWarehouse(get.artifactId(), get.shardId());
+                default -> throw new IllegalArgumentException("Unbounded message " + message);
+            };
+        }
+
+        @Override
+        public Envelope dequeue()
+        {
+            Envelope handle = queue.poll();
+
+            if (handle != null && isBounded(handle.message()))
+            {
+                bounded.decrementAndGet();
+            }
+
+            return handle;
+        }
+
+        @Override
+        public int numberOfMessages()
+        {
+            return queue.size();
+        }
+
+        @Override
+        public boolean hasMessages()
+        {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters)
+        {
+            for (Envelope handle = dequeue(); handle != null; handle = dequeue())
+            {
+                deadLetters.enqueue(owner, handle);
+            }
+        }
+    }
+}
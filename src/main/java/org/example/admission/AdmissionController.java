@@ -0,0 +1,129 @@
+package org.example.admission;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Work admitted by the vault, released once the write is acknowledged or failed and once the read finished.
+// Clients are told apart by their keys, e.g. ids carried in the requests; work without a key (null) is only bounded by the
+// in-flight limits. Not thread safe, owned by the vault actor.
+public class AdmissionController<K>
+{
+    private static final int MAX_BUCKETS = 10_000;
+
+    private final AdmissionSettings settings;
+
+    // Buckets of the clients seen last, the least recently seen one is evicted in constant time once there are too many.
+    // An evicted client starts over with a full bucket.
+    private final Map<K, TokenBucket> buckets = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, TokenBucket> eldest)
+        {
+            return size() > MAX_BUCKETS;
+        }
+    };
+
+    private int writesInFlight = 0;
+    private int readsInFlight = 0;
+    private long bytesInFlight = 0;
+
+    public AdmissionController(AdmissionSettings settings)
+    {
+        this.settings = settings;
+    }
+
+    public Optional<Rejection> admitWrite(K client, long bytes, long nowNanos)
+    {
+        if (writesInFlight >= settings.maxInFlightWrites())
+        {
+            return Optional.of(new Rejection(Overload.WRITES_IN_FLIGHT, settings.retryAfter()));
+        }
+
+        // A write larger than the limit is admitted alone
+        if (bytesInFlight > 0 && bytesInFlight + bytes > settings.maxBytesInFlight())
+        {
+            return Optional.of(new Rejection(Overload.BYTES_IN_FLIGHT, settings.retryAfter()));
+        }
+
+        Optional<Rejection> rejection = acquireToken(client, nowNanos);
+
+        if (rejection.isEmpty())
+        {
+            ++writesInFlight;
+            bytesInFlight += bytes;
+        }
+
+        return rejection;
+    }
+
+    public Optional<Rejection> admitRead(K client, long nowNanos)
+    {
+        if (readsInFlight >= settings.maxInFlightReads())
+        {
+            return Optional.of(new Rejection(Overload.READS_IN_FLIGHT, settings.retryAfter()));
+        }
+
+        Optional<Rejection> rejection = acquireToken(client, nowNanos);
+
+        if (rejection.isEmpty())
+        {
+            ++readsInFlight;
+        }
+
+        return rejection;
+    }
+
+    public void writeFinished(long bytes)
+    {
+        writesInFlight = Math.max(0, writesInFlight - 1);
+        bytesInFlight = Math.max(0, bytesInFlight - bytes);
+    }
+
+    public void readsFinished(int reads)
+    {
+        readsInFlight = Math.max(0, readsInFlight - reads);
+    }
+
+    public int writesInFlight()
+    {
+        return writesInFlight;
+    }
+
+    public int readsInFlight()
+    {
+        return readsInFlight;
+    }
+
+    public long bytesInFlight()
+    {
+        return bytesInFlight;
+    }
+
+    public int trackedClients()
+    {
+        return buckets.size();
+    }
+
+    private Optional<Rejection> acquireToken(K client, long nowNanos)
+    {
+        if (!settings.limitsClients() || client == null)
+        {
+            return Optional.empty();
+        }
+
+        TokenBucket bucket = buckets.computeIfAbsent(client, key -> new TokenBucket(settings.clientRate(), settings.clientBurst(), nowNanos));
+
+        if (bucket.tryAcquire(nowNanos))
+        {
+            return Optional.empty();
+        }
+
+        return Optional.of(new Rejection(Overload.CLIENT_RATE, Duration.ofNanos(bucket.nanosUntilAvailable(nowNanos))));
+    }
+
+    public record Rejection(Overload reason, Duration retryAfter)
+    {
+    }
+}
@@ -0,0 +1,31 @@
+package org.example.admission;
+
+import com.google.common.base.Preconditions;
+
+import java.time.Duration;
+
+// Limits of the work accepted by the vault. Each client gets a token bucket refilled at clientRate requests per second up to clientBurst.
+public record AdmissionSettings(int maxInFlightWrites, int maxInFlightReads, long maxBytesInFlight, double clientRate, int clientBurst,
+                                Duration retryAfter)
+{
+    public AdmissionSettings
+    {
+        Preconditions.checkArgument(maxInFlightWrites >= 1, "In-flight writes number must be greater or equal 1");
+        Preconditions.checkArgument(maxInFlightReads >= 1, "In-flight reads number must be greater or equal 1");
+        Preconditions.checkArgument(maxBytesInFlight >= 1, "In-flight bytes number must be greater or equal 1");
+        Preconditions.checkArgument(clientRate > 0, "Client rate must be greater than 0");
+        Preconditions.checkArgument(clientBurst >= 1, "Client burst must be greater or equal 1");
+        Preconditions.checkNotNull(retryAfter, "Retry delay is required");
+    }
+
+    public static AdmissionSettings unlimited()
+    {
+        return new AdmissionSettings(Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, Double.POSITIVE_INFINITY, Integer.MAX_VALUE,
+                Duration.ofMillis(100));
+    }
+
+    public boolean limitsClients()
+    {
+        return clientRate != Double.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,9 @@
+package org.example.admission;
+
+public enum Overload
+{
+    WRITES_IN_FLIGHT,
+    READS_IN_FLIGHT,
+    BYTES_IN_FLIGHT,
+    CLIENT_RATE
+}
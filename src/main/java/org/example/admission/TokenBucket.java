@@ -0,0 +1,59 @@
+package org.example.admission;
+
+import com.google.common.base.Preconditions;
+
+// Refilled continuously at the rate, holds at most burst tokens
+public class TokenBucket
+{
+    private final double tokensPerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double tokensPerSecond, int burst, long nowNanos)
+    {
+        Preconditions.checkArgument(tokensPerSecond > 0, "Rate must be greater than 0");
+        Preconditions.checkArgument(burst >= 1, "Burst must be greater or equal 1");
+
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000.0;
+        this.capacity = burst;
+        this.tokens = burst;
+        this.lastRefill = nowNanos;
+    }
+
+    public boolean tryAcquire(long nowNanos)
+    {
+        refill(nowNanos);
+
+        if (tokens < 1)
+        {
+            return false;
+        }
+
+        tokens -= 1;
+        return true;
+    }
+
+    public long nanosUntilAvailable(long nowNanos)
+    {
+        refill(nowNanos);
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    // Full bucket behaves like a new one, so it can be dropped
+    public boolean isFull(long nowNanos)
+    {
+        refill(nowNanos);
+        return tokens >= capacity;
+    }
+
+    private void refill(long nowNanos)
+    {
+        if (nowNanos > lastRefill)
+        {
+            tokens = Math.min(capacity, tokens + (nowNanos - lastRefill) * tokensPerNano);
+            lastRefill = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package org.example.buffer;
+
+import com.google.common.base.Preconditions;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.*;
+
+// Read-only view over consecutive segments, e.g. the shards of an artifact, built without copying their bytes.
+// Random access finds the segment by a binary search over segment offsets, sequential access walks the segments.
+// Segments must not be modified while the view is in use.
+public final class CompositeByteList extends AbstractList<Byte> implements RandomAccess
+{
+    public static final CompositeByteList EMPTY = new CompositeByteList(List.of(), new int[]{0});
+
+    private final List<List<Byte>> segments;
+    // Offset of every segment and the total size at the end
+    private final int[] offsets;
+
+    private CompositeByteList(List<List<Byte>> segments, int[] offsets)
+    {
+        this.segments = segments;
+        this.offsets = offsets;
+    }
+
+    public static CompositeByteList of(List<? extends List<Byte>> segments)
+    {
+        List<List<Byte>> nonEmpty = new ArrayList<>(segments.size());
+        long size = 0;
+
+        for (List<Byte> segment : segments)
+        {
+            if (segment instanceof CompositeByteList composite)
+            {
+                nonEmpty.addAll(composite.segments);
+            }
+            else if (!segment.isEmpty())
+            {
+                nonEmpty.add(segment);
+            }
+
+            size += segment.size();
+        }
+
+        Preconditions.checkArgument(size <= Integer.MAX_VALUE, "Composite list cannot exceed %s bytes", Integer.MAX_VALUE);
+
+        if (nonEmpty.isEmpty())
+        {
+            return EMPTY;
+        }
+
+        int[] offsets = new int[nonEmpty.size() + 1];
+
+        for (int index = 0; index < nonEmpty.size(); ++index)
+        {
+            offsets[index + 1] = offsets[index] + nonEmpty.get(index).size();
+        }
+
+        return new CompositeByteList(List.copyOf(nonEmpty), offsets);
+    }
+
+    // The list itself when it's already a composite, otherwise a view with a single segment
+    public static CompositeByteList wrap(List<Byte> data)
+    {
+        return data instanceof CompositeByteList composite ? composite : of(List.of(data));
+    }
+
+    public int numberOfSegments()
+    {
+        return segments.size();
+    }
+
+    @Override
+    public int size()
+    {
+        return offsets[segments.size()];
+    }
+
+    @Override
+    public Byte get(int index)
+    {
+        Objects.checkIndex(index, size());
+        int segment = segmentOf(index);
+
+        return segments.get(segment).get(index - offsets[segment]);
+    }
+
+    // Slices the boundary segments, the segments in between are shared
+    @Override
+    public CompositeByteList subList(int fromIndex, int toIndex)
+    {
+        Objects.checkFromToIndex(fromIndex, toIndex, size());
+
+        if (fromIndex == toIndex)
+        {
+            return EMPTY;
+        }
+
+        if (fromIndex == 0 && toIndex == size())
+        {
+            return this;
+        }
+
+        int first = segmentOf(fromIndex);
+        int last = segmentOf(toIndex - 1);
+        List<List<Byte>> slices = new ArrayList<>(last - first + 1);
+
+        for (int segment = first; segment <= last; ++segment)
+        {
+            int from = Math.max(fromIndex, offsets[segment]) - offsets[segment];
+            int to = Math.min(toIndex, offsets[segment + 1]) - offsets[segment];
+            List<Byte> data = segments.get(segment);
+
+            slices.add(from == 0 && to == data.size() ? data : data.subList(from, to));
+        }
+
+        return of(slices);
+    }
+
+    @Override
+    public Iterator<Byte> iterator()
+    {
+        return new Iterator<>()
+        {
+            private int segment = 0;
+            private Iterator<Byte> current = segments.isEmpty() ? Collections.emptyIterator() : segments.getFirst().iterator();
+
+            @Override
+            public boolean hasNext()
+            {
+                while (!current.hasNext() && segment + 1 < segments.size())
+                {
+                    current = segments.get(++segment).iterator();
+                }
+
+                return current.hasNext();
+            }
+
+            @Override
+            public Byte next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+
+                return current.next();
+            }
+        };
+    }
+
+    // Copies up to length bytes starting at position into the array and returns the number of bytes copied
+    public int copyTo(int position, byte[] target, int targetOffset, int length)
+    {
+        Objects.checkFromIndexSize(targetOffset, length, target.length);
+        int end = Math.min(size(), position + length);
+
+        if (position >= end)
+        {
+            return 0;
+        }
+
+        int copied = 0;
+
+        for (int segment = segmentOf(position); position + copied < end; ++segment)
+        {
+            List<Byte> data = segments.get(segment);
+            int from = position + copied - offsets[segment];
+            int to = Math.min(data.size(), end - offsets[segment]);
+
+            for (int index = from; index < to; ++index)
+            {
+                target[targetOffset + copied++] = data.get(index);
+            }
+        }
+
+        return copied;
+    }
+
+    public InputStream asInputStream()
+    {
+        return new InputStream()
+        {
+            private int position = 0;
+            private int mark = 0;
+
+            @Override
+            public int read()
+            {
+                return position < size() ? get(position++) & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length)
+            {
+                if (length == 0)
+                {
+                    return 0;
+                }
+
+                int copied = copyTo(position, buffer, offset, length);
+                position += copied;
+
+                return copied == 0 ? -1 : copied;
+            }
+
+            @Override
+            public long skip(long n)
+            {
+                int skipped = (int) Math.max(0, Math.min(n, size() - position));
+                position += skipped;
+
+                return skipped;
+            }
+
+            @Override
+            public int available()
+            {
+                return size() - position;
+            }
+
+            @Override
+            public boolean markSupported()
+            {
+                return true;
+            }
+
+            @Override
+            public void mark(int readLimit)
+            {
+                mark = position;
+            }
+
+            @Override
+            public void reset()
+            {
+                position = mark;
+            }
+        };
+    }
+
+    public ReadableByteChannel asChannel()
+    {
+        return new ReadableByteChannel()
+        {
+            private final byte[] chunk = new byte[8192];
+            private int position = 0;
+            private boolean open = true;
+
+            @Override
+            public int read(ByteBuffer target) throws ClosedChannelException
+            {
+                if (!open)
+                {
+                    throw new ClosedChannelException();
+                }
+
+                if (position >= size())
+                {
+                    return -1;
+                }
+
+                int read = 0;
+
+                while (target.hasRemaining() && position < size())
+                {
+                    int copied = copyTo(position, chunk, 0, Math.min(chunk.length, target.remaining()));
+                    target.put(chunk, 0, copied);
+                    position += copied;
+                    read += copied;
+                }
+
+                return read;
+            }
+
+            @Override
+            public boolean isOpen()
+            {
+                return open;
+            }
+
+            @Override
+            public void close()
+            {
+                open = false;
+            }
+        };
+    }
+
+    private int segmentOf(int index)
+    {
+        int found = Arrays.binarySearch(offsets, 0, segments.size(), index);
+
+        // An index inside a segment lands between two offsets
+        return found >= 0 ? found : -found - 2;
+    }
+}
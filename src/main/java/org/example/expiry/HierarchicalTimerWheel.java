@@ -0,0 +1,148 @@
+package org.example.expiry;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// Hierarchical hashed timer wheel. Level L has 2^bits slots covering 2^(bits * L) ticks each, timers are cascaded
+// to lower levels when their slot comes up, so scheduling and expiring costs O(1) per timer regardless of their number.
+// Timers beyond the range of the top level wrap around and are re-inserted until they are due. Not thread safe.
+public class HierarchicalTimerWheel<T>
+{
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final List<List<Deque<Timer<T>>>> levels = new ArrayList<>();
+    private final List<Timer<T>> overdue = new ArrayList<>();
+
+    private long currentTick;
+    private int size = 0;
+
+    public HierarchicalTimerWheel(long tickMillis, int bits, int numberOfLevels, long nowMillis)
+    {
+        Preconditions.checkArgument(tickMillis >= 1, "Tick must be greater or equal 1 ms");
+        Preconditions.checkArgument(bits >= 1 && bits * numberOfLevels < 63, "Invalid wheel size");
+        Preconditions.checkArgument(numberOfLevels >= 1, "Number of levels must be greater or equal 1");
+
+        this.tickMillis = tickMillis;
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.currentTick = nowMillis / tickMillis;
+
+        for (int level = 0; level < numberOfLevels; ++level)
+        {
+            List<Deque<Timer<T>>> slots = new ArrayList<>(1 << bits);
+
+            for (int slot = 0; slot <= mask; ++slot)
+            {
+                slots.add(new ArrayDeque<>());
+            }
+
+            levels.add(slots);
+        }
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void schedule(T item, long deadlineMillis)
+    {
+        // Rounded up, so a timer never fires before its deadline
+        insert(new Timer<>(item, Math.ceilDiv(deadlineMillis, tickMillis)));
+        ++size;
+    }
+
+    // Items whose deadline has passed by the given time
+    public List<T> advance(long nowMillis)
+    {
+        List<T> expired = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+
+        expireOverdue(expired);
+
+        while (currentTick < targetTick)
+        {
+            if (size == 0)
+            {
+                currentTick = targetTick;
+                break;
+            }
+
+            ++currentTick;
+            cascade(1);
+
+            Deque<Timer<T>> slot = levels.getFirst().get((int) (currentTick & mask));
+            List<Timer<T>> timers = new ArrayList<>(slot);
+            slot.clear();
+
+            for (Timer<T> timer : timers)
+            {
+                insert(timer);
+            }
+
+            expireOverdue(expired);
+        }
+
+        return expired;
+    }
+
+    private void cascade(int level)
+    {
+        // Slot of the level comes up when all lower bits of the current tick are zero
+        if (level >= levels.size() || (currentTick & ((1L << (bits * level)) - 1)) != 0)
+        {
+            return;
+        }
+
+        cascade(level + 1);
+
+        Deque<Timer<T>> slot = levels.get(level).get((int) ((currentTick >>> (bits * level)) & mask));
+        List<Timer<T>> timers = new ArrayList<>(slot);
+        slot.clear();
+
+        for (Timer<T> timer : timers)
+        {
+            insert(timer);
+        }
+    }
+
+    private void insert(Timer<T> timer)
+    {
+        long delta = timer.deadlineTick - currentTick;
+
+        if (delta <= 0)
+        {
+            overdue.add(timer);
+            return;
+        }
+
+        int level = 0;
+
+        while (level < levels.size() - 1 && delta >= 1L << (bits * (level + 1)))
+        {
+            ++level;
+        }
+
+        levels.get(level).get((int) ((timer.deadlineTick >>> (bits * level)) & mask)).add(timer);
+    }
+
+    private void expireOverdue(List<T> expired)
+    {
+        for (Timer<T> timer : overdue)
+        {
+            expired.add(timer.item);
+        }
+
+        size -= overdue.size();
+        overdue.clear();
+    }
+
+    private record Timer<T>(T item, long deadlineTick)
+    {
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.http;
+
+// Bytes [start, end) of an artifact requested by a Range header
+record ByteRange(int start, int end)
+{
+    // Single range of the header or null when it isn't one, the whole artifact is sent then. Multiple ranges aren't supported.
+    static ByteRange parse(String header, int size)
+    {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0)
+        {
+            return null;
+        }
+
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+
+        if (dash < 0)
+        {
+            return null;
+        }
+
+        try
+        {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            // Suffix of the given length
+            if (first.isEmpty())
+            {
+                long suffix = Long.parseLong(last);
+                return suffix < 0 ? null : new ByteRange((int) Math.max(0, size - suffix), size);
+            }
+
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+
+            if (start < 0 || end < start)
+            {
+                return null;
+            }
+
+            // Range starting beyond the artifact is empty
+            return new ByteRange((int) Math.min(start, size), (int) (Math.min(end, size - 1L) + 1));
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    boolean isSatisfiable()
+    {
+        return start < end;
+    }
+
+    int length()
+    {
+        return end - start;
+    }
+}
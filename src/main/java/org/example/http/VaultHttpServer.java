@@ -0,0 +1,378 @@
+package org.example.http;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.pattern.Patterns;
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Bytes;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.Config;
+import org.example.buffer.CompositeByteList;
+import org.example.message.ConsistencyLevel;
+import org.example.message.collector.ArtifactRangeResponseFromCollector;
+import org.example.message.vault.*;
+import org.example.tracing.TraceContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Artifacts of a vault over HTTP/1.1 at /artifacts/<id>, configured by shard-vault.http:
+// PUT stores the request body, GET reads the artifact or a single byte range of it, HEAD its size and version, DELETE removes it.
+// Uploads up to shard-vault.http.max-upload-size are staged in memory in chunks and written as a single version, larger ones get 413.
+// Downloads are range reads of a chunk each, all from the same version.
+// The consistency of vault requests is set by the consistency query parameter, e.g. ?consistency=ONE, and defaults to QUORUM.
+// Clients are rate limited by the vault per remote address.
+public class VaultHttpServer implements AutoCloseable
+{
+    public static final String PATH = "/artifacts/";
+
+    private final ActorRef vault;
+    private final int chunkSize;
+    private final int maxUploadSize;
+    private final Duration requestTimeout;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LoggingAdapter log;
+
+    public static VaultHttpServer start(ActorSystem system, ActorRef vault, InetSocketAddress address) throws IOException
+    {
+        Config config = system.settings().config().getConfig("shard-vault.http");
+
+        return new VaultHttpServer(system, vault, address, config.getMemorySize("chunk-size").toBytes(), config.getMemorySize("max-upload-size").toBytes(),
+                config.getDuration("request-timeout"), config.getInt("backlog"));
+    }
+
+    public VaultHttpServer(ActorSystem system, ActorRef vault, InetSocketAddress address, long chunkSize, long maxUploadSize, Duration requestTimeout,
+                           int backlog) throws IOException
+    {
+        Preconditions.checkArgument(chunkSize > 0 && chunkSize <= Integer.MAX_VALUE, "Chunk size must be between 1 and %s", Integer.MAX_VALUE);
+        Preconditions.checkArgument(maxUploadSize > 0 && maxUploadSize <= Integer.MAX_VALUE, "Max upload size must be between 1 and %s",
+                Integer.MAX_VALUE);
+
+        this.vault = vault;
+        this.chunkSize = (int) chunkSize;
+        this.maxUploadSize = (int) maxUploadSize;
+        this.requestTimeout = requestTimeout;
+        this.log = Logging.getLogger(system, VaultHttpServer.class);
+
+        // Handlers block while waiting for the vault, a virtual thread per exchange keeps that cheap
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(address, backlog);
+        this.server.setExecutor(executor);
+        this.server.createContext(PATH, this::handle);
+        this.server.start();
+
+        log.info("Serving artifacts at http://{}:{}{}", server.getAddress().getHostString(), server.getAddress().getPort(), PATH);
+    }
+
+    public InetSocketAddress address()
+    {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange)
+    {
+        try (exchange)
+        {
+            String artifactId = exchange.getRequestURI().getPath().substring(PATH.length());
+            ConsistencyLevel consistency = consistency(exchange.getRequestURI().getRawQuery());
+
+            if (artifactId.isEmpty() || consistency == null)
+            {
+                respond(exchange, artifactId.isEmpty() ? 404 : 400);
+                return;
+            }
+
+            switch (exchange.getRequestMethod())
+            {
+                case "PUT" -> put(exchange, artifactId, consistency);
+                case "GET" -> get(exchange, artifactId, consistency, true);
+                case "HEAD" -> get(exchange, artifactId, consistency, false);
+                case "DELETE" -> delete(exchange, artifactId);
+                default ->
+                {
+                    exchange.getResponseHeaders().set("Allow", "GET, HEAD, PUT, DELETE");
+                    respond(exchange, 405);
+                }
+            }
+        }
+        catch (TimeoutException e)
+        {
+            log.warning("Request {} {} timed out", exchange.getRequestMethod(), exchange.getRequestURI());
+            respondIfPossible(exchange, 504);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            respondIfPossible(exchange, 503);
+        }
+        // Client went away or a download was cut short, the connection is closed
+        catch (IOException e)
+        {
+            if (log.isDebugEnabled())
+            {
+                log.debug("Request {} {} failed: {}", exchange.getRequestMethod(), exchange.getRequestURI(), e.getMessage());
+            }
+        }
+    }
+
+    // The body is staged in chunks and written as one version, so readers never see a partial upload and a failed one leaves the artifact as it was.
+    // Staging holds the whole body in memory, so it is capped: a larger declared length is refused before reading, a longer chunked body once over.
+    private void put(HttpExchange exchange, String artifactId, ConsistencyLevel consistency) throws IOException, TimeoutException, InterruptedException
+    {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+
+        if (contentLength != null && Long.parseLong(contentLength) > maxUploadSize)
+        {
+            respond(exchange, 413);
+            return;
+        }
+
+        InputStream body = exchange.getRequestBody();
+        List<List<Byte>> chunks = new ArrayList<>();
+        long size = 0;
+
+        for (byte[] chunk = body.readNBytes(chunkSize); chunk.length > 0; chunk = body.readNBytes(chunkSize))
+        {
+            size += chunk.length;
+
+            if (size > maxUploadSize)
+            {
+                respond(exchange, 413);
+                return;
+            }
+
+            chunks.add(Bytes.asList(chunk));
+        }
+
+        String clientId = clientId(exchange);
+        CompositeByteList data = CompositeByteList.of(chunks);
+
+        Object response = ask(new AddArtifactToVault(artifactId, data, consistency, null, TraceContext.untraced(), clientId));
+        boolean created = !(response instanceof ArtifactAlreadyExistsInVault);
+
+        if (!created)
+        {
+            response = ask(new UpdateArtifactInVault(artifactId, data, consistency, TraceContext.untraced(), clientId));
+        }
+
+        if (response instanceof ArtifactAddedToVault added)
+        {
+            exchange.getResponseHeaders().set("ETag", etag(added.version()));
+            respond(exchange, created ? 201 : 204);
+            return;
+        }
+
+        failed(exchange, response);
+    }
+
+    private void get(HttpExchange exchange, String artifactId, ConsistencyLevel consistency, boolean sendBody)
+            throws IOException, TimeoutException, InterruptedException
+    {
+        Object response = ask(new GetArtifactInfoFromVault(artifactId));
+
+        if (!(response instanceof ArtifactInfoFromVault info))
+        {
+            failed(exchange, response);
+            return;
+        }
+
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", etag(info.version()));
+        headers.set("Accept-Ranges", "bytes");
+        headers.set("Content-Type", "application/octet-stream");
+
+        String rangeHeader = exchange.getRequestHeaders().getFirst("Range");
+        ByteRange range = rangeHeader == null ? null : ByteRange.parse(rangeHeader, info.size());
+        int status = 200;
+
+        if (range == null)
+        {
+            range = new ByteRange(0, info.size());
+        }
+        else if (range.isSatisfiable())
+        {
+            headers.set("Content-Range", "bytes " + range.start() + "-" + (range.end() - 1) + "/" + info.size());
+            status = 206;
+        }
+        else
+        {
+            headers.set("Content-Range", "bytes */" + info.size());
+            respond(exchange, 416);
+            return;
+        }
+
+        if (!sendBody || range.length() == 0)
+        {
+            headers.set("Content-Length", Integer.toString(range.length()));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        // Every chunk is read from the version in the ETag, which is served while the vault retains it. Headers wait for the first chunk,
+        // so a version no longer retained gets 412.
+        String clientId = clientId(exchange);
+        int offset = range.start();
+        Object chunk = ask(new GetArtifactRangeFromVault(artifactId, offset, Math.min(chunkSize, range.end() - offset), consistency, info.version(),
+                TraceContext.untraced(), clientId));
+
+        if (!(chunk instanceof ArtifactRangeResponseFromCollector))
+        {
+            failed(exchange, chunk);
+            return;
+        }
+
+        exchange.sendResponseHeaders(status, range.length());
+
+        try (OutputStream body = exchange.getResponseBody())
+        {
+            while (true)
+            {
+                // Headers are sent already, the client sees a body shorter than announced
+                if (!(chunk instanceof ArtifactRangeResponseFromCollector data) || data.data().isEmpty())
+                {
+                    throw new IOException("Cannot read [" + offset + ":" + range.end() + "] of artifact [" + artifactId + "]: " + chunk);
+                }
+
+                data.asInputStream().transferTo(body);
+                offset += data.data().size();
+
+                if (offset >= range.end())
+                {
+                    break;
+                }
+
+                chunk = ask(new GetArtifactRangeFromVault(artifactId, offset, Math.min(chunkSize, range.end() - offset), consistency, info.version(),
+                        TraceContext.untraced(), clientId));
+            }
+        }
+    }
+
+    private void delete(HttpExchange exchange, String artifactId) throws IOException, TimeoutException, InterruptedException
+    {
+        Object response = ask(new DeleteArtifactFromVault(artifactId));
+
+        if (response instanceof ArtifactDeletedFromVault)
+        {
+            respond(exchange, 204);
+        }
+        else
+        {
+            failed(exchange, response);
+        }
+    }
+
+    private void failed(HttpExchange exchange, Object response) throws IOException
+    {
+        int status = switch (response)
+        {
+            case ArtifactNotFoundInVault ignored -> 404;
+            case ArtifactAlreadyExistsInVault ignored -> 409;
+            case ArtifactWriteInProgress ignored -> 409;
+            case ArtifactVersionChanged ignored -> 412;
+            case InvalidArtifactRange ignored -> 416;
+            case ArtifactRequestRejected rejected ->
+            {
+                exchange.getResponseHeaders().set("Retry-After", Long.toString(Math.max(1, (rejected.retryAfter().toMillis() + 999) / 1000)));
+                yield 503;
+            }
+            // Not enough warehouses, writes not acknowledged or reads without a quorum
+            default -> 503;
+        };
+
+        if (status == 503 && !(response instanceof ArtifactRequestRejected))
+        {
+            log.warning("Request {} {} failed: {}", exchange.getRequestMethod(), exchange.getRequestURI(), response);
+        }
+
+        respond(exchange, status);
+    }
+
+    private Object ask(Object message) throws TimeoutException, InterruptedException
+    {
+        try
+        {
+            return Patterns.ask(vault, message, requestTimeout).toCompletableFuture().get(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e)
+        {
+            throw new TimeoutException(e.getCause().getMessage());
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status) throws IOException
+    {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static void respondIfPossible(HttpExchange exchange, int status)
+    {
+        if (exchange.getResponseCode() == -1)
+        {
+            try
+            {
+                respond(exchange, status);
+            }
+            catch (IOException ignored)
+            {
+            }
+        }
+    }
+
+    private static String clientId(HttpExchange exchange)
+    {
+        return exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    private static String etag(int version)
+    {
+        return "\"" + version + "\"";
+    }
+
+    private static ConsistencyLevel consistency(String query)
+    {
+        if (query == null)
+        {
+            return ConsistencyLevel.QUORUM;
+        }
+
+        for (String parameter : query.split("&"))
+        {
+            if (parameter.startsWith("consistency="))
+            {
+                try
+                {
+                    return ConsistencyLevel.valueOf(parameter.substring("consistency=".length()).toUpperCase());
+                }
+                catch (IllegalArgumentException e)
+                {
+                    return null;
+                }
+            }
+        }
+
+        return ConsistencyLevel.QUORUM;
+    }
+}
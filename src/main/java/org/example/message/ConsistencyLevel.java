@@ -0,0 +1,18 @@
+package org.example.message;
+
+public enum ConsistencyLevel
+{
+    ONE,
+    QUORUM,
+    ALL;
+
+    public int requiredReplicas(int replicaCount)
+    {
+        return switch (this)
+        {
+            case ONE -> 1;
+            case QUORUM -> replicaCount / 2 + 1;
+            case ALL -> replicaCount;
+        };
+    }
+}
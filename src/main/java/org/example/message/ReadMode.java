@@ -0,0 +1,10 @@
+package org.example.message;
+
+public enum ReadMode
+{
+    // Every replica of every shard is asked at once, divergent replicas are always detected
+    FAN_OUT,
+    // Only as many replicas as the consistency level requires are asked, the fastest first. Another replica is asked when
+    // a shard isn't resolved within the hedge delay, or its replicas disagree or miss it.
+    HEDGED
+}
@@ -0,0 +1,21 @@
+package org.example.message.collector;
+
+import org.example.buffer.CompositeByteList;
+
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+// Data of a collected artifact is a view over the shards received, not a copy
+public record ArtifactRangeResponseFromCollector(String artifactId, int offset, List<Byte> data)
+{
+    public InputStream asInputStream()
+    {
+        return CompositeByteList.wrap(data).asInputStream();
+    }
+
+    public ReadableByteChannel asChannel()
+    {
+        return CompositeByteList.wrap(data).asChannel();
+    }
+}
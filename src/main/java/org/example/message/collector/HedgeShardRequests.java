@@ -0,0 +1,5 @@
+package org.example.message.collector;
+
+public record HedgeShardRequests()
+{
+}
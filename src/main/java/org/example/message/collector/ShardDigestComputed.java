@@ -0,0 +1,10 @@
+package org.example.message.collector;
+
+import akka.actor.ActorRef;
+import com.google.common.hash.HashCode;
+
+import java.util.List;
+
+public record ShardDigestComputed(int shardId, ActorRef warehouse, HashCode digest, List<Byte> data)
+{
+}
@@ -1,5 +1,13 @@
 package org.example.message.manager;
 
-public record GetArtifactFromManager()
+import org.example.message.ConsistencyLevel;
+import org.example.message.ReadMode;
+import org.example.tracing.TraceContext;
+
+public record GetArtifactFromManager(ConsistencyLevel readConsistency, ReadMode readMode, TraceContext trace)
 {
+    public GetArtifactFromManager(ConsistencyLevel readConsistency)
+    {
+        this(readConsistency, ReadMode.FAN_OUT, TraceContext.NONE);
+    }
 }
@@ -0,0 +1,13 @@
+package org.example.message.manager;
+
+import org.example.message.ConsistencyLevel;
+import org.example.message.ReadMode;
+import org.example.tracing.TraceContext;
+
+public record GetArtifactRangeFromManager(int offset, int length, ConsistencyLevel readConsistency, ReadMode readMode, TraceContext trace)
+{
+    public GetArtifactRangeFromManager(int offset, int length, ConsistencyLevel readConsistency)
+    {
+        this(offset, length, readConsistency, ReadMode.FAN_OUT, TraceContext.NONE);
+    }
+}
@@ -1,7 +1,11 @@
 package org.example.message.manager;
 
+import akka.actor.ActorRef;
+
 import java.util.List;
+import java.util.Set;
 
-public record InconsistencyFound(int shardId, List<Byte> correctData)
+// Replicas which returned another version of the shard than the one read
+public record InconsistencyFound(int shardId, List<Byte> correctData, Set<ActorRef> divergentReplicas)
 {
 }
@@ -0,0 +1,8 @@
+package org.example.message.manager;
+
+import akka.actor.ActorRef;
+
+// Replica placed on another warehouse because the assigned one is over its quota
+public record RelocateShard(int shardId, ActorRef from, int targetWarehouseId, ActorRef target)
+{
+}
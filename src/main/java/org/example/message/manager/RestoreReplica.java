@@ -0,0 +1,7 @@
+package org.example.message.manager;
+
+import akka.actor.ActorRef;
+
+public record RestoreReplica(int shardId, int failedWarehouseId, int targetWarehouseId, ActorRef target)
+{
+}
@@ -0,0 +1,5 @@
+package org.example.message.manager;
+
+public record StartReadRepair(int shardId)
+{
+}
@@ -0,0 +1,8 @@
+package org.example.message.manager;
+
+import org.example.metadata.ArtifactVersion;
+
+// Version as written by the manager, with the digests of its shards and the ids of the shards shared with the previous version
+public record VersionWritten(String artifactId, ArtifactVersion version)
+{
+}
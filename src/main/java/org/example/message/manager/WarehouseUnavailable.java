@@ -0,0 +1,7 @@
+package org.example.message.manager;
+
+import akka.actor.ActorRef;
+
+public record WarehouseUnavailable(ActorRef warehouse)
+{
+}
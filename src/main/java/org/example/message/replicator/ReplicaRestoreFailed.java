@@ -0,0 +1,5 @@
+package org.example.message.replicator;
+
+public record ReplicaRestoreFailed(String artifactId, int shardId, int failedWarehouseId)
+{
+}
@@ -0,0 +1,7 @@
+package org.example.message.replicator;
+
+import akka.actor.ActorRef;
+
+public record ReplicaRestored(String artifactId, int shardId, int failedWarehouseId, int targetWarehouseId, ActorRef target)
+{
+}
@@ -0,0 +1,5 @@
+package org.example.message.replicator;
+
+public record ReplicasRepaired(String artifactId, int shardId, int repairedReplicas)
+{
+}
@@ -1,7 +1,31 @@
 package org.example.message.vault;
 
+import org.example.message.ConsistencyLevel;
+import org.example.tracing.TraceContext;
+
+import java.time.Duration;
 import java.util.List;
 
-public record AddArtifactToVault(String artifactId, List<Byte> data)
+// Artifact without a time to live (null) is kept until it is deleted
+public record AddArtifactToVault(String artifactId, List<Byte> data, ConsistencyLevel writeConsistency, Duration timeToLive, TraceContext trace, String clientId)
 {
+    public AddArtifactToVault(String artifactId, List<Byte> data)
+    {
+        this(artifactId, data, ConsistencyLevel.QUORUM);
+    }
+
+    public AddArtifactToVault(String artifactId, List<Byte> data, ConsistencyLevel writeConsistency)
+    {
+        this(artifactId, data, writeConsistency, null);
+    }
+
+    public AddArtifactToVault(String artifactId, List<Byte> data, ConsistencyLevel writeConsistency, Duration timeToLive)
+    {
+        this(artifactId, data, writeConsistency, timeToLive, TraceContext.untraced());
+    }
+
+    public AddArtifactToVault(String artifactId, List<Byte> data, ConsistencyLevel writeConsistency, Duration timeToLive, TraceContext trace)
+    {
+        this(artifactId, data, writeConsistency, timeToLive, trace, null);
+    }
 }
@@ -0,0 +1,25 @@
+package org.example.message.vault;
+
+import org.example.message.ConsistencyLevel;
+import org.example.tracing.TraceContext;
+
+import java.util.List;
+
+// Writes a new version of an existing artifact with the data appended, only its tail shard is rewritten
+public record AppendToArtifactInVault(String artifactId, List<Byte> data, ConsistencyLevel writeConsistency, TraceContext trace, String clientId)
+{
+    public AppendToArtifactInVault(String artifactId, List<Byte> data)
+    {
+        this(artifactId, data, ConsistencyLevel.QUORUM);
+    }
+
+    public AppendToArtifactInVault(String artifactId, List<Byte> data, ConsistencyLevel writeConsistency)
+    {
+        this(artifactId, data, writeConsistency, TraceContext.untraced());
+    }
+
+    public AppendToArtifactInVault(String artifactId, List<Byte> data, ConsistencyLevel writeConsistency, TraceContext trace)
+    {
+        this(artifactId, data, writeConsistency, trace, null);
+    }
+}
@@ -0,0 +1,5 @@
+package org.example.message.vault;
+
+public record ArtifactInfoFromVault(String artifactId, int version, int size)
+{
+}
@@ -0,0 +1,9 @@
+package org.example.message.vault;
+
+import java.util.List;
+
+// Artifacts of a page in the order of String.compareTo and the number of all artifacts with the prefix.
+// Next cursor is null on the last page.
+public record ArtifactListFromVault(String prefix, List<String> artifactIds, int count, String nextCursor)
+{
+}
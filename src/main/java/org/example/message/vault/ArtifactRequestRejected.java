@@ -0,0 +1,10 @@
+package org.example.message.vault;
+
+import org.example.admission.Overload;
+
+import java.time.Duration;
+
+// Vault is overloaded, the request may be sent again after the delay
+public record ArtifactRequestRejected(String artifactId, Overload reason, Duration retryAfter)
+{
+}
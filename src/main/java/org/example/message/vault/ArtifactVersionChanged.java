@@ -0,0 +1,6 @@
+package org.example.message.vault;
+
+// Read pinned to a version of the artifact which is no longer the latest one
+public record ArtifactVersionChanged(String artifactId, int version, int latestVersion)
+{
+}
@@ -0,0 +1,8 @@
+package org.example.message.vault;
+
+import java.util.List;
+
+// Artifacts which were in the vault, the others requested are skipped
+public record ArtifactsDeletedFromVault(List<String> artifactIds)
+{
+}
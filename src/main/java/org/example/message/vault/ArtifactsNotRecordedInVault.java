@@ -0,0 +1,8 @@
+package org.example.message.vault;
+
+import java.util.List;
+
+// Metadata journal could not be written, the change of the artifacts is not acknowledged and may be lost by a restart of the vault
+public record ArtifactsNotRecordedInVault(List<String> artifactIds)
+{
+}
@@ -0,0 +1,7 @@
+package org.example.message.vault;
+
+import java.util.List;
+
+public record DeleteArtifactsFromVault(List<String> artifactIds)
+{
+}
@@ -1,5 +1,22 @@
 package org.example.message.vault;
 
-public record GetArtifactFromVault(String artifactId)
+import org.example.message.ConsistencyLevel;
+import org.example.tracing.TraceContext;
+
+public record GetArtifactFromVault(String artifactId, ConsistencyLevel readConsistency, TraceContext trace, String clientId)
 {
+    public GetArtifactFromVault(String artifactId)
+    {
+        this(artifactId, ConsistencyLevel.ALL);
+    }
+
+    public GetArtifactFromVault(String artifactId, ConsistencyLevel readConsistency)
+    {
+        this(artifactId, readConsistency, TraceContext.untraced());
+    }
+
+    public GetArtifactFromVault(String artifactId, ConsistencyLevel readConsistency, TraceContext trace)
+    {
+        this(artifactId, readConsistency, trace, null);
+    }
 }
@@ -0,0 +1,6 @@
+package org.example.message.vault;
+
+// Size and version of the latest acknowledged version of an artifact, without reading its shards
+public record GetArtifactInfoFromVault(String artifactId)
+{
+}
@@ -0,0 +1,24 @@
+package org.example.message.vault;
+
+import org.example.message.ConsistencyLevel;
+import org.example.tracing.TraceContext;
+
+// Read of a version other than the latest one (0 reads any) is answered with ArtifactVersionChanged, so ranges of one version can be combined
+public record GetArtifactRangeFromVault(String artifactId, int offset, int length, ConsistencyLevel readConsistency, int version, TraceContext trace,
+                                        String clientId)
+{
+    public GetArtifactRangeFromVault(String artifactId, int offset, int length)
+    {
+        this(artifactId, offset, length, ConsistencyLevel.ALL);
+    }
+
+    public GetArtifactRangeFromVault(String artifactId, int offset, int length, ConsistencyLevel readConsistency)
+    {
+        this(artifactId, offset, length, readConsistency, TraceContext.untraced());
+    }
+
+    public GetArtifactRangeFromVault(String artifactId, int offset, int length, ConsistencyLevel readConsistency, TraceContext trace)
+    {
+        this(artifactId, offset, length, readConsistency, 0, trace, null);
+    }
+}
@@ -0,0 +1,5 @@
+package org.example.message.vault;
+
+public record InvalidArtifactRange(String artifactId, int offset, int length, int artifactSize)
+{
+}
@@ -0,0 +1,12 @@
+package org.example.message.vault;
+
+// Page of the artifacts with the prefix which sort after the cursor, the first page when the cursor is null
+public record ListArtifactsInVault(String prefix, String cursor, int limit)
+{
+    public static final int DEFAULT_LIMIT = 1000;
+
+    public ListArtifactsInVault(String prefix)
+    {
+        this(prefix, null, DEFAULT_LIMIT);
+    }
+}
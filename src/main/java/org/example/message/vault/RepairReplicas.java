@@ -0,0 +1,5 @@
+package org.example.message.vault;
+
+public record RepairReplicas()
+{
+}
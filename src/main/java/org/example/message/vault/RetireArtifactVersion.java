@@ -0,0 +1,10 @@
+package org.example.message.vault;
+
+import akka.actor.ActorRef;
+
+import java.util.Map;
+
+// Shards no longer referenced by any retained version, keyed by shard id with the warehouses holding them
+public record RetireArtifactVersion(String artifactId, int version, ActorRef manager, Map<Integer, int[]> shards)
+{
+}
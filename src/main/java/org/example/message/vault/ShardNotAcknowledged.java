@@ -0,0 +1,7 @@
+package org.example.message.vault;
+
+import akka.actor.ActorRef;
+
+public record ShardNotAcknowledged(String artifactId, int shardId, ActorRef warehouse)
+{
+}
@@ -0,0 +1,7 @@
+package org.example.message.vault;
+
+import akka.actor.ActorRef;
+
+public record ShardRejectedOverQuota(String artifactId, int shardId, ActorRef warehouse)
+{
+}
@@ -0,0 +1,25 @@
+package org.example.message.vault;
+
+import org.example.message.ConsistencyLevel;
+import org.example.tracing.TraceContext;
+
+import java.util.List;
+
+// Writes a new version of an existing artifact, the time to live of the artifact is kept
+public record UpdateArtifactInVault(String artifactId, List<Byte> data, ConsistencyLevel writeConsistency, TraceContext trace, String clientId)
+{
+    public UpdateArtifactInVault(String artifactId, List<Byte> data)
+    {
+        this(artifactId, data, ConsistencyLevel.QUORUM);
+    }
+
+    public UpdateArtifactInVault(String artifactId, List<Byte> data, ConsistencyLevel writeConsistency)
+    {
+        this(artifactId, data, writeConsistency, TraceContext.untraced());
+    }
+
+    public UpdateArtifactInVault(String artifactId, List<Byte> data, ConsistencyLevel writeConsistency, TraceContext trace)
+    {
+        this(artifactId, data, writeConsistency, trace, null);
+    }
+}
@@ -0,0 +1,9 @@
+package org.example.message.warehouse;
+
+import akka.actor.ActorRef;
+
+import java.util.List;
+
+public record AddHintToWarehouse(String artifactId, int shardId, List<Byte> data, int ownerWarehouseId, ActorRef owner)
+{
+}
@@ -0,0 +1,7 @@
+package org.example.message.warehouse;
+
+import java.util.List;
+
+public record DeleteArtifactsFromWarehouse(List<String> artifactIds)
+{
+}
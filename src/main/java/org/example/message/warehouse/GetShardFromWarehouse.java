@@ -1,5 +1,11 @@
 package org.example.message.warehouse;
 
-public record GetShardFromWarehouse(String artifactId, Integer shardId)
+import org.example.tracing.TraceContext;
+
+public record GetShardFromWarehouse(String artifactId, Integer shardId, TraceContext trace)
 {
+    public GetShardFromWarehouse(String artifactId, Integer shardId)
+    {
+        this(artifactId, shardId, TraceContext.NONE);
+    }
 }
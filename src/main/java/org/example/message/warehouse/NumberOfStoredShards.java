@@ -1,5 +1,6 @@
 package org.example.message.warehouse;
 
-public record NumberOfStoredShards(int warehouseId, int numberOfStoredShards)
+// Stored bytes include the estimated index overhead, free bytes are left within the quota
+public record NumberOfStoredShards(int warehouseId, int numberOfStoredShards, long storedBytes, long freeBytes)
 {
 }
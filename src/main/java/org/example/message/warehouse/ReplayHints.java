@@ -0,0 +1,5 @@
+package org.example.message.warehouse;
+
+public record ReplayHints()
+{
+}
@@ -0,0 +1,7 @@
+package org.example.message.warehouse;
+
+import akka.actor.ActorRef;
+
+public record ShardLoadFailed(String artifactId, int shardId, long version, ActorRef replyTo, Throwable cause)
+{
+}
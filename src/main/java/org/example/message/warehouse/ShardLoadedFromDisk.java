@@ -0,0 +1,10 @@
+package org.example.message.warehouse;
+
+import akka.actor.ActorRef;
+import org.example.tracing.TraceContext;
+
+import java.util.List;
+
+public record ShardLoadedFromDisk(String artifactId, int shardId, long version, List<Byte> data, ActorRef replyTo, TraceContext trace)
+{
+}
@@ -0,0 +1,17 @@
+package org.example.message.warehouse;
+
+// Storing the shard would exceed the quota of the warehouse, or the shard didn't fit in its mailbox and may be sent again later
+public record ShardRejectedByWarehouse(int warehouseId, String artifactId, int shardId, long storedBytes, long quota)
+{
+    private static final long OVERLOADED = -1;
+
+    public static ShardRejectedByWarehouse overloaded(int warehouseId, String artifactId, int shardId)
+    {
+        return new ShardRejectedByWarehouse(warehouseId, artifactId, shardId, 0, OVERLOADED);
+    }
+
+    public boolean isOverloaded()
+    {
+        return quota == OVERLOADED;
+    }
+}
@@ -1,7 +1,13 @@
 package org.example.message.warehouse;
 
+import org.example.tracing.TraceContext;
+
 import java.util.List;
 
-public record ShardResponseFromWarehouse(String artifactId, Integer shardId, List<Byte> data)
+public record ShardResponseFromWarehouse(String artifactId, Integer shardId, List<Byte> data, TraceContext trace)
 {
+    public ShardResponseFromWarehouse(String artifactId, Integer shardId, List<Byte> data)
+    {
+        this(artifactId, shardId, data, TraceContext.NONE);
+    }
 }
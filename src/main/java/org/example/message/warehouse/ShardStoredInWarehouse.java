@@ -0,0 +1,5 @@
+package org.example.message.warehouse;
+
+public record ShardStoredInWarehouse(int warehouseId, String artifactId, int shardId)
+{
+}
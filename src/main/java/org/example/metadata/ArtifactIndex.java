@@ -0,0 +1,365 @@
+package org.example.metadata;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Artifact ids in the order of String.compareTo, kept in a radix tree whose nodes count the ids below them.
+// Counting the ids with a prefix takes time proportional to the prefix, a page of a listing to the prefix and the ids returned.
+// Not thread safe.
+public class ArtifactIndex
+{
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root = new Node("");
+
+    public int size()
+    {
+        return root.count;
+    }
+
+    public boolean add(String artifactId)
+    {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int position = 0;
+
+        while (position < artifactId.length())
+        {
+            path.add(node);
+            int index = childIndex(node, artifactId.charAt(position));
+
+            if (index < 0)
+            {
+                Node leaf = new Node(artifactId.substring(position));
+                leaf.terminal = true;
+                leaf.count = 1;
+                node.insertChild(-index - 1, leaf);
+
+                path.forEach(ancestor -> ++ancestor.count);
+                return true;
+            }
+
+            Node child = node.children[index];
+            int common = commonPrefixLength(child.label, artifactId, position);
+
+            // Edge continues past the id or diverges from it, the id branches off in the middle of the edge
+            if (common < child.label.length())
+            {
+                child = split(node, index, common);
+            }
+
+            node = child;
+            position += common;
+        }
+
+        if (node.terminal)
+        {
+            return false;
+        }
+
+        node.terminal = true;
+        ++node.count;
+        path.forEach(ancestor -> ++ancestor.count);
+
+        return true;
+    }
+
+    public boolean remove(String artifactId)
+    {
+        List<Node> path = new ArrayList<>();
+        Node node = find(artifactId, path);
+
+        if (node == null || !node.terminal)
+        {
+            return false;
+        }
+
+        node.terminal = false;
+        --node.count;
+        path.forEach(ancestor -> --ancestor.count);
+
+        // Highest node left without ids is cut off, the remaining nodes are merged with their only child
+        path.add(node);
+
+        for (int depth = 1; depth < path.size(); ++depth)
+        {
+            if (path.get(depth).count == 0)
+            {
+                Node parent = path.get(depth - 1);
+                parent.removeChild(path.get(depth));
+                mergeWithOnlyChild(parent);
+                return true;
+            }
+        }
+
+        mergeWithOnlyChild(node);
+        return true;
+    }
+
+    public boolean contains(String artifactId)
+    {
+        Node node = find(artifactId, new ArrayList<>());
+        return node != null && node.terminal;
+    }
+
+    public int count(String prefix)
+    {
+        Node node = root;
+        int position = 0;
+
+        while (position < prefix.length())
+        {
+            int index = childIndex(node, prefix.charAt(position));
+
+            if (index < 0)
+            {
+                return 0;
+            }
+
+            Node child = node.children[index];
+            int common = commonPrefixLength(child.label, prefix, position);
+
+            // Prefix ends within the edge, every id below the child has it
+            if (position + common == prefix.length())
+            {
+                return child.count;
+            }
+
+            if (common < child.label.length())
+            {
+                return 0;
+            }
+
+            node = child;
+            position += common;
+        }
+
+        return node.count;
+    }
+
+    // Up to limit ids with the prefix which sort after the cursor, or from the first one when the cursor is null
+    public List<String> list(String prefix, String after, int limit)
+    {
+        Preconditions.checkArgument(limit >= 0, "Limit must be greater or equal 0");
+
+        List<String> artifactIds = new ArrayList<>(Math.min(limit, count(prefix)));
+        StringBuilder key = new StringBuilder();
+        Node node = root;
+        int position = 0;
+
+        while (position < prefix.length())
+        {
+            int index = childIndex(node, prefix.charAt(position));
+
+            if (index < 0)
+            {
+                return artifactIds;
+            }
+
+            Node child = node.children[index];
+            int common = commonPrefixLength(child.label, prefix, position);
+
+            if (position + common < prefix.length() && common < child.label.length())
+            {
+                return artifactIds;
+            }
+
+            key.append(child.label);
+            node = child;
+            position += common;
+        }
+
+        collect(node, key, after, limit, artifactIds);
+        return artifactIds;
+    }
+
+    // Ids below the node in order, key is the path to the node. Subtrees entirely before the cursor are skipped without being visited.
+    private static void collect(Node node, StringBuilder key, String after, int limit, List<String> artifactIds)
+    {
+        if (after != null && !startsWith(after, key))
+        {
+            if (CharSequence.compare(key, after) < 0)
+            {
+                return;
+            }
+
+            // Every id below sorts after the cursor
+            after = null;
+        }
+
+        // Key is the cursor or a prefix of it otherwise
+        if (node.terminal && after == null && artifactIds.size() < limit)
+        {
+            artifactIds.add(key.toString());
+        }
+
+        int first = 0;
+
+        if (after != null && after.length() > key.length())
+        {
+            first = childIndex(node, after.charAt(key.length()));
+            first = first < 0 ? -first - 1 : first;
+        }
+
+        for (int index = first; index < node.children.length && artifactIds.size() < limit; ++index)
+        {
+            Node child = node.children[index];
+            int length = key.length();
+
+            key.append(child.label);
+            collect(child, key, after, limit, artifactIds);
+            key.setLength(length);
+        }
+    }
+
+    private Node find(String artifactId, List<Node> path)
+    {
+        Node node = root;
+        int position = 0;
+
+        while (position < artifactId.length())
+        {
+            int index = childIndex(node, artifactId.charAt(position));
+
+            if (index < 0)
+            {
+                return null;
+            }
+
+            Node child = node.children[index];
+
+            if (!artifactId.startsWith(child.label, position))
+            {
+                return null;
+            }
+
+            path.add(node);
+            node = child;
+            position += child.label.length();
+        }
+
+        return node;
+    }
+
+    // Edge of the child is cut after length characters, the new node takes its place
+    private static Node split(Node parent, int index, int length)
+    {
+        Node child = parent.children[index];
+        Node split = new Node(child.label.substring(0, length));
+
+        child.label = child.label.substring(length);
+        split.children = new Node[]{child};
+        split.count = child.count;
+        parent.children[index] = split;
+
+        return split;
+    }
+
+    private void mergeWithOnlyChild(Node node)
+    {
+        if (node == root || node.terminal || node.children.length != 1)
+        {
+            return;
+        }
+
+        Node child = node.children[0];
+        node.label = node.label + child.label;
+        node.terminal = child.terminal;
+        node.children = child.children;
+    }
+
+    // Index of the child whose edge starts with the character, or -(insertion point) - 1 as in Arrays.binarySearch
+    private static int childIndex(Node node, char first)
+    {
+        int low = 0;
+        int high = node.children.length - 1;
+
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            char character = node.children[middle].label.charAt(0);
+
+            if (character < first)
+            {
+                low = middle + 1;
+            }
+            else if (character > first)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return middle;
+            }
+        }
+
+        return -low - 1;
+    }
+
+    private static int commonPrefixLength(String label, String artifactId, int position)
+    {
+        int length = Math.min(label.length(), artifactId.length() - position);
+        int common = 0;
+
+        while (common < length && label.charAt(common) == artifactId.charAt(position + common))
+        {
+            ++common;
+        }
+
+        return common;
+    }
+
+    private static boolean startsWith(String value, CharSequence prefix)
+    {
+        if (prefix.length() > value.length())
+        {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); ++i)
+        {
+            if (value.charAt(i) != prefix.charAt(i))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static final class Node
+    {
+        // Characters of the edge from the parent, empty only for the root
+        private String label;
+        private boolean terminal = false;
+        private Node[] children = NO_CHILDREN;
+        // Ids ending at this node or below it
+        private int count = 0;
+
+        private Node(String label)
+        {
+            this.label = label;
+        }
+
+        private void insertChild(int index, Node child)
+        {
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, index);
+            grown[index] = child;
+            System.arraycopy(children, index, grown, index + 1, children.length - index);
+            children = grown;
+        }
+
+        private void removeChild(Node child)
+        {
+            int index = Arrays.asList(children).indexOf(child);
+            Node[] shrunk = new Node[children.length - 1];
+            System.arraycopy(children, 0, shrunk, 0, index);
+            System.arraycopy(children, index + 1, shrunk, index, children.length - index - 1);
+            children = shrunk;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.metadata;
+
+import com.google.common.hash.HashCode;
+import org.example.sharding.ShardLayout;
+
+import java.util.*;
+
+// Immutable, so snapshots can share instances with the live state.
+// Shards are never overwritten, ids are unique within the artifact and unchanged shards are shared between versions.
+public record ArtifactMetadata(String artifactId, List<ArtifactVersion> versions, Map<Integer, int[]> placement, int nextShardId, long expiresAt)
+{
+    public ArtifactVersion latest()
+    {
+        return versions.getLast();
+    }
+
+    public ShardLayout layout()
+    {
+        return latest().layout();
+    }
+
+    public boolean expires()
+    {
+        return expiresAt > 0;
+    }
+
+    public boolean containsShard(int shardId)
+    {
+        return placement.containsKey(shardId);
+    }
+
+    public int[] replicas(int shardId)
+    {
+        return placement.get(shardId).clone();
+    }
+
+    public ArtifactMetadata withReplicaMoved(int shardId, int fromWarehouse, int toWarehouse)
+    {
+        if (!containsShard(shardId))
+        {
+            return this;
+        }
+
+        int[] moved = Arrays.stream(placement.get(shardId)).map(id -> id == fromWarehouse ? toWarehouse : id).distinct().toArray();
+        return withReplicas(shardId, moved);
+    }
+
+    public ArtifactMetadata withReplicas(int shardId, int[] warehouseIds)
+    {
+        if (!containsShard(shardId))
+        {
+            return this;
+        }
+
+        Map<Integer, int[]> repaired = new HashMap<>(placement);
+        repaired.put(shardId, warehouseIds.clone());
+
+        return new ArtifactMetadata(artifactId, versions, Map.copyOf(repaired), nextShardId, expiresAt);
+    }
+
+    public ArtifactMetadata withDigests(int version, HashCode[] digests)
+    {
+        List<ArtifactVersion> updated = versions.stream()
+                .map(kept -> kept.version() == version ? new ArtifactVersion(version, kept.layout(), kept.shardIds(), digests.clone()) : kept)
+                .toList();
+
+        return new ArtifactMetadata(artifactId, updated, placement, nextShardId, expiresAt);
+    }
+
+    // Shards referenced only by versions beyond the retention are dropped
+    public ArtifactMetadata withVersion(ArtifactVersion version, Map<Integer, int[]> newShards, int retainedVersions)
+    {
+        List<ArtifactVersion> retained = new ArrayList<>(versions);
+        retained.add(version);
+        retained = List.copyOf(retained.subList(Math.max(0, retained.size() - retainedVersions), retained.size()));
+
+        Map<Integer, int[]> allShards = new HashMap<>(placement);
+        allShards.putAll(newShards);
+
+        Map<Integer, int[]> referenced = new HashMap<>();
+
+        for (ArtifactVersion kept : retained)
+        {
+            for (int shardId : kept.shardIds())
+            {
+                referenced.put(shardId, allShards.get(shardId));
+            }
+        }
+
+        int next = Math.max(nextShardId, newShards.keySet().stream().mapToInt(id -> id + 1).max().orElse(0));
+
+        return new ArtifactMetadata(artifactId, retained, Map.copyOf(referenced), next, expiresAt);
+    }
+}
@@ -0,0 +1,17 @@
+package org.example.metadata;
+
+import com.google.common.hash.HashCode;
+import org.example.sharding.ShardLayout;
+
+// Logical shard i of the version is stored as the shard shardIds[i] of the artifact. Digests are empty if untracked, null for unknown shards.
+public record ArtifactVersion(int version, ShardLayout layout, int[] shardIds, HashCode[] digests)
+{
+    // Shard whose range and content are the same in both versions
+    public boolean sameShard(int index, ArtifactVersion other, int otherIndex)
+    {
+        return index < digests.length && otherIndex < other.digests.length && digests[index] != null
+                && layout.start(index) == other.layout.start(otherIndex)
+                && layout.length(index) == other.layout.length(otherIndex)
+                && digests[index].equals(other.digests[otherIndex]);
+    }
+}
@@ -0,0 +1,235 @@
+package org.example.metadata;
+
+import com.google.common.hash.HashCode;
+import org.example.sharding.ShardLayout;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class MetadataCodec
+{
+    private static final byte WAREHOUSE_ADDED = 1;
+    private static final byte ARTIFACT_CREATED = 2;
+    private static final byte ARTIFACT_DELETED = 3;
+    private static final byte REPLICA_MOVED = 4;
+    private static final byte VERSION_ADDED = 6;
+    private static final byte DIGESTS_ADDED = 7;
+
+    private MetadataCodec()
+    {
+    }
+
+    static void writeEvent(DataOutput output, MetadataEvent event) throws IOException
+    {
+        switch (event)
+        {
+            case MetadataEvent.WarehouseAdded added ->
+            {
+                output.writeByte(WAREHOUSE_ADDED);
+                output.writeInt(added.warehouseId());
+                output.writeBoolean(added.remote());
+            }
+            case MetadataEvent.ArtifactCreated created ->
+            {
+                output.writeByte(ARTIFACT_CREATED);
+                output.writeUTF(created.artifactId());
+                writeInts(output, created.layout().toOffsets());
+
+                for (int[] replicas : created.placement())
+                {
+                    writeInts(output, replicas);
+                }
+
+                writeDigests(output, created.digests());
+                output.writeLong(created.expiresAt());
+            }
+            case MetadataEvent.VersionAdded added ->
+            {
+                output.writeByte(VERSION_ADDED);
+                output.writeUTF(added.artifactId());
+                writeVersion(output, added.version());
+                writePlacement(output, added.newShards());
+                output.writeInt(added.retainedVersions());
+            }
+            case MetadataEvent.ArtifactDeleted deleted ->
+            {
+                output.writeByte(ARTIFACT_DELETED);
+                output.writeUTF(deleted.artifactId());
+            }
+            case MetadataEvent.ReplicaMoved moved ->
+            {
+                output.writeByte(REPLICA_MOVED);
+                output.writeUTF(moved.artifactId());
+                output.writeInt(moved.shardId());
+                output.writeInt(moved.fromWarehouse());
+                output.writeInt(moved.toWarehouse());
+            }
+            case MetadataEvent.DigestsAdded added ->
+            {
+                output.writeByte(DIGESTS_ADDED);
+                output.writeUTF(added.artifactId());
+                output.writeInt(added.version());
+                writeDigests(output, added.digests());
+            }
+        }
+    }
+
+    static MetadataEvent readEvent(DataInput input) throws IOException
+    {
+        byte type = input.readByte();
+
+        return switch (type)
+        {
+            case WAREHOUSE_ADDED -> new MetadataEvent.WarehouseAdded(input.readInt(), input.readBoolean());
+            case ARTIFACT_CREATED ->
+            {
+                String artifactId = input.readUTF();
+                ShardLayout layout = ShardLayout.fromOffsets(readInts(input));
+                int[][] placement = new int[layout.numberOfShards()][];
+
+                for (int shardId = 0; shardId < placement.length; ++shardId)
+                {
+                    placement[shardId] = readInts(input);
+                }
+
+                yield new MetadataEvent.ArtifactCreated(artifactId, layout, placement, readDigests(input), input.readLong());
+            }
+            case VERSION_ADDED -> new MetadataEvent.VersionAdded(input.readUTF(), readVersion(input), readPlacement(input), input.readInt());
+            case ARTIFACT_DELETED -> new MetadataEvent.ArtifactDeleted(input.readUTF());
+            case REPLICA_MOVED -> new MetadataEvent.ReplicaMoved(input.readUTF(), input.readInt(), input.readInt(), input.readInt());
+            case DIGESTS_ADDED -> new MetadataEvent.DigestsAdded(input.readUTF(), input.readInt(), readDigests(input));
+            default -> throw new IOException("Unknown metadata event type " + type);
+        };
+    }
+
+    static void writeArtifact(DataOutput output, ArtifactMetadata artifact) throws IOException
+    {
+        output.writeUTF(artifact.artifactId());
+        output.writeInt(artifact.nextShardId());
+        output.writeLong(artifact.expiresAt());
+        writePlacement(output, artifact.placement());
+        output.writeInt(artifact.versions().size());
+
+        for (ArtifactVersion version : artifact.versions())
+        {
+            writeVersion(output, version);
+        }
+    }
+
+    static ArtifactMetadata readArtifact(DataInput input) throws IOException
+    {
+        String artifactId = input.readUTF();
+        int nextShardId = input.readInt();
+        long expiresAt = input.readLong();
+        Map<Integer, int[]> placement = readPlacement(input);
+        int numberOfVersions = input.readInt();
+        List<ArtifactVersion> versions = new ArrayList<>(numberOfVersions);
+
+        for (int i = 0; i < numberOfVersions; ++i)
+        {
+            versions.add(readVersion(input));
+        }
+
+        return new ArtifactMetadata(artifactId, List.copyOf(versions), placement, nextShardId, expiresAt);
+    }
+
+    private static void writeVersion(DataOutput output, ArtifactVersion version) throws IOException
+    {
+        output.writeInt(version.version());
+        writeInts(output, version.layout().toOffsets());
+        writeInts(output, version.shardIds());
+        writeDigests(output, version.digests());
+    }
+
+    private static ArtifactVersion readVersion(DataInput input) throws IOException
+    {
+        return new ArtifactVersion(input.readInt(), ShardLayout.fromOffsets(readInts(input)), readInts(input), readDigests(input));
+    }
+
+    private static void writePlacement(DataOutput output, Map<Integer, int[]> placement) throws IOException
+    {
+        output.writeInt(placement.size());
+
+        for (var entry : placement.entrySet())
+        {
+            output.writeInt(entry.getKey());
+            writeInts(output, entry.getValue());
+        }
+    }
+
+    private static Map<Integer, int[]> readPlacement(DataInput input) throws IOException
+    {
+        int size = input.readInt();
+        Map<Integer, int[]> placement = HashMap.newHashMap(size);
+
+        for (int i = 0; i < size; ++i)
+        {
+            placement.put(input.readInt(), readInts(input));
+        }
+
+        return Map.copyOf(placement);
+    }
+
+    private static void writeDigests(DataOutput output, HashCode[] digests) throws IOException
+    {
+        output.writeInt(digests.length);
+
+        // Length 0 for a digest which isn't known
+        for (HashCode digest : digests)
+        {
+            if (digest == null)
+            {
+                output.writeByte(0);
+                continue;
+            }
+
+            output.writeByte(digest.bits() / Byte.SIZE);
+            output.write(digest.asBytes());
+        }
+    }
+
+    private static HashCode[] readDigests(DataInput input) throws IOException
+    {
+        HashCode[] digests = new HashCode[input.readInt()];
+
+        for (int i = 0; i < digests.length; ++i)
+        {
+            byte[] bytes = new byte[input.readUnsignedByte()];
+
+            if (bytes.length > 0)
+            {
+                input.readFully(bytes);
+                digests[i] = HashCode.fromBytes(bytes);
+            }
+        }
+
+        return digests;
+    }
+
+    private static void writeInts(DataOutput output, int[] values) throws IOException
+    {
+        output.writeInt(values.length);
+
+        for (int value : values)
+        {
+            output.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInput input) throws IOException
+    {
+        int[] values = new int[input.readInt()];
+
+        for (int i = 0; i < values.length; ++i)
+        {
+            values[i] = input.readInt();
+        }
+
+        return values;
+    }
+}
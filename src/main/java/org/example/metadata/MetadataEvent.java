@@ -0,0 +1,52 @@
+package org.example.metadata;
+
+import com.google.common.hash.HashCode;
+import org.example.sharding.ShardLayout;
+
+import java.util.Map;
+
+public sealed interface MetadataEvent
+{
+    record WarehouseAdded(int warehouseId, boolean remote) implements MetadataEvent
+    {
+    }
+
+    // First version of the artifact stored as shards 0..n-1. Expiry time in epoch milliseconds, 0 if the artifact doesn't expire.
+    record ArtifactCreated(String artifactId, ShardLayout layout, int[][] placement, HashCode[] digests, long expiresAt) implements MetadataEvent
+    {
+        public ArtifactCreated(String artifactId, ShardLayout layout, int[][] placement)
+        {
+            this(artifactId, layout, placement, new HashCode[0], 0);
+        }
+    }
+
+    record VersionAdded(String artifactId, ArtifactVersion version, Map<Integer, int[]> newShards, int retainedVersions) implements MetadataEvent
+    {
+    }
+
+    record ArtifactDeleted(String artifactId) implements MetadataEvent
+    {
+    }
+
+    record ReplicaMoved(String artifactId, int shardId, int fromWarehouse, int toWarehouse) implements MetadataEvent
+    {
+    }
+
+    // Digests of the first version, computed by its manager while writing it
+    record DigestsAdded(String artifactId, int version, HashCode[] digests) implements MetadataEvent
+    {
+    }
+
+    static String artifactIdOf(MetadataEvent event)
+    {
+        return switch (event)
+        {
+            case WarehouseAdded ignored -> null;
+            case ArtifactCreated created -> created.artifactId();
+            case ArtifactDeleted deleted -> deleted.artifactId();
+            case VersionAdded added -> added.artifactId();
+            case ReplicaMoved moved -> moved.artifactId();
+            case DigestsAdded added -> added.artifactId();
+        };
+    }
+}
@@ -0,0 +1,471 @@
+package org.example.metadata;
+
+import com.google.common.base.Preconditions;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only log of metadata events split into segments, compacted by periodic snapshots.
+// Segment journal-<n>.log starts with event n, snapshot-<n> contains the state after event n.
+public class MetadataJournal implements Closeable
+{
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String WAREHOUSES_FILE = "warehouses";
+    private static final String PART_PREFIX = "part-";
+
+    private final Path directory;
+    private final int snapshotInterval;
+    private final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metadata-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long sequenceNumber = 0;
+    private int eventsSinceSnapshot = 0;
+    private boolean unsynced = false;
+    private FileOutputStream segmentFile;
+    private DataOutputStream segment;
+
+    public MetadataJournal(Path directory, int snapshotInterval)
+    {
+        Preconditions.checkArgument(snapshotInterval >= 1, "Snapshot interval must be greater or equal 1");
+
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public VaultMetadata recover() throws IOException
+    {
+        Preconditions.checkState(segment == null, "Journal is already recovered");
+        Files.createDirectories(directory);
+
+        long snapshotSequenceNumber = latestSnapshot();
+        List<Map<String, ArtifactMetadata>> partitions;
+        List<MetadataEvent> warehouseEvents = new ArrayList<>();
+
+        if (snapshotSequenceNumber > 0)
+        {
+            Path snapshot = directory.resolve(SNAPSHOT_PREFIX + snapshotSequenceNumber);
+            warehouseEvents.addAll(readWarehouses(snapshot.resolve(WAREHOUSES_FILE)));
+            partitions = readPartitions(snapshot);
+        }
+        else
+        {
+            partitions = IntStream.range(0, Runtime.getRuntime().availableProcessors())
+                    .<Map<String, ArtifactMetadata>>mapToObj(partition -> new HashMap<>())
+                    .toList();
+        }
+
+        sequenceNumber = snapshotSequenceNumber;
+        List<List<MetadataEvent>> tail = IntStream.range(0, partitions.size())
+                .<List<MetadataEvent>>mapToObj(partition -> new ArrayList<>())
+                .toList();
+
+        boolean gap = false;
+
+        for (Path segmentPath : segments())
+        {
+            // Segment written after a torn record by a previous recovery starts right after the last valid event.
+            // Later ones follow lost events and can't be replayed on top of them.
+            if (gap || sequenceNumberOf(segmentPath, SEGMENT_PREFIX) > sequenceNumber + 1)
+            {
+                gap = true;
+                Files.delete(segmentPath);
+                continue;
+            }
+
+            long validLength = readSegment(segmentPath, snapshotSequenceNumber, warehouseEvents, tail);
+
+            // Torn record is cut off, so the next recovery doesn't stop at it again
+            if (validLength < Files.size(segmentPath))
+            {
+                try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.WRITE))
+                {
+                    channel.truncate(validLength);
+                    channel.force(true);
+                }
+            }
+        }
+
+        // Events of a single artifact fall into a single partition, so partitions can be replayed independently
+        IntStream.range(0, partitions.size()).parallel().forEach(partition -> {
+            for (MetadataEvent event : tail.get(partition))
+            {
+                VaultMetadata.applyToArtifacts(partitions.get(partition), event);
+            }
+        });
+
+        Map<String, ArtifactMetadata> artifacts = HashMap.newHashMap(partitions.stream().mapToInt(Map::size).sum());
+        partitions.forEach(artifacts::putAll);
+
+        openSegment(sequenceNumber + 1);
+        eventsSinceSnapshot = (int) Math.min(Integer.MAX_VALUE, sequenceNumber - snapshotSequenceNumber);
+
+        VaultMetadata metadata = new VaultMetadata(artifacts, new TreeSet<>(), new HashSet<>());
+        warehouseEvents.forEach(metadata::apply);
+
+        return metadata;
+    }
+
+    // Event is buffered, it is durable once sync returns
+    public void append(MetadataEvent event) throws IOException
+    {
+        Preconditions.checkState(segment != null, "Journal must be recovered before appending");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeLong(sequenceNumber + 1);
+        MetadataCodec.writeEvent(payload, event);
+
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes.toByteArray());
+
+        segment.writeInt(bytes.size());
+        segment.writeInt((int) checksum.getValue());
+        bytes.writeTo(segment);
+
+        ++sequenceNumber;
+        ++eventsSinceSnapshot;
+        unsynced = true;
+    }
+
+    // Events appended since the last sync are written with a single fsync, e.g. all events of a bulk delete
+    public void sync() throws IOException
+    {
+        if (!unsynced)
+        {
+            return;
+        }
+
+        segment.flush();
+        segmentFile.getFD().sync();
+        unsynced = false;
+    }
+
+    public boolean isSnapshotDue()
+    {
+        return eventsSinceSnapshot >= snapshotInterval;
+    }
+
+    // The metadata must not be modified afterwards, pass a copy of the live state
+    public CompletableFuture<Void> snapshot(VaultMetadata metadata) throws IOException
+    {
+        long snapshotSequenceNumber = sequenceNumber;
+
+        sync();
+        segment.close();
+        openSegment(snapshotSequenceNumber + 1);
+        eventsSinceSnapshot = 0;
+
+        return CompletableFuture.runAsync(() -> {
+            try
+            {
+                writeSnapshot(metadata, snapshotSequenceNumber);
+                removeObsoleteFiles(snapshotSequenceNumber);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }, snapshotExecutor);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        snapshotExecutor.shutdown();
+
+        try
+        {
+            snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (segment != null)
+        {
+            sync();
+            segment.close();
+        }
+    }
+
+    private void openSegment(long firstSequenceNumber) throws IOException
+    {
+        Path path = directory.resolve(SEGMENT_PREFIX + firstSequenceNumber + SEGMENT_SUFFIX);
+        segmentFile = new FileOutputStream(path.toFile());
+        segment = new DataOutputStream(new BufferedOutputStream(segmentFile));
+    }
+
+    // Length of the valid records of the segment, shorter than the file if a torn record ends it
+    private long readSegment(Path path, long snapshotSequenceNumber, List<MetadataEvent> warehouseEvents, List<List<MetadataEvent>> tail) throws IOException
+    {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+        {
+            long validLength = 0;
+
+            while (true)
+            {
+                int length;
+
+                try
+                {
+                    length = input.readInt();
+                }
+                catch (EOFException e)
+                {
+                    return validLength;
+                }
+
+                byte[] bytes;
+                int expectedChecksum;
+
+                try
+                {
+                    expectedChecksum = input.readInt();
+
+                    if (length < Long.BYTES + 1)
+                    {
+                        return validLength;
+                    }
+
+                    bytes = input.readNBytes(length);
+                }
+                catch (EOFException e)
+                {
+                    return validLength;
+                }
+
+                CRC32 checksum = new CRC32();
+                checksum.update(bytes);
+
+                if (bytes.length != length || (int) checksum.getValue() != expectedChecksum)
+                {
+                    return validLength;
+                }
+
+                validLength += 2 * Integer.BYTES + length;
+
+                DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes));
+                long eventSequenceNumber = payload.readLong();
+                MetadataEvent event = MetadataCodec.readEvent(payload);
+
+                if (eventSequenceNumber <= snapshotSequenceNumber)
+                {
+                    continue;
+                }
+
+                sequenceNumber = eventSequenceNumber;
+
+                if (event instanceof MetadataEvent.WarehouseAdded)
+                {
+                    warehouseEvents.add(event);
+                }
+                else
+                {
+                    tail.get(partitionOf(MetadataEvent.artifactIdOf(event), tail.size())).add(event);
+                }
+            }
+        }
+    }
+
+    private void writeSnapshot(VaultMetadata metadata, long snapshotSequenceNumber) throws IOException
+    {
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + snapshotSequenceNumber + TEMPORARY_SUFFIX);
+        Files.createDirectories(temporary);
+
+        int numberOfPartitions = Runtime.getRuntime().availableProcessors();
+        List<List<ArtifactMetadata>> partitions = IntStream.range(0, numberOfPartitions)
+                .<List<ArtifactMetadata>>mapToObj(partition -> new ArrayList<>())
+                .toList();
+
+        for (ArtifactMetadata artifact : metadata.artifacts())
+        {
+            partitions.get(partitionOf(artifact.artifactId(), numberOfPartitions)).add(artifact);
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary.resolve(WAREHOUSES_FILE).toFile()))))
+        {
+            output.writeInt(metadata.warehouses().size());
+
+            for (int warehouseId : metadata.warehouses())
+            {
+                output.writeInt(warehouseId);
+                output.writeBoolean(metadata.isRemoteWarehouse(warehouseId));
+            }
+        }
+
+        IntStream.range(0, numberOfPartitions).parallel().forEach(partition -> {
+            try (FileOutputStream file = new FileOutputStream(temporary.resolve(PART_PREFIX + partition).toFile());
+                 DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file)))
+            {
+                output.writeInt(partitions.get(partition).size());
+
+                for (ArtifactMetadata artifact : partitions.get(partition))
+                {
+                    MetadataCodec.writeArtifact(output, artifact);
+                }
+
+                output.flush();
+                file.getFD().sync();
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        Files.move(temporary, directory.resolve(SNAPSHOT_PREFIX + snapshotSequenceNumber), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<Map<String, ArtifactMetadata>> readPartitions(Path snapshot) throws IOException
+    {
+        List<Path> parts;
+
+        try (Stream<Path> files = Files.list(snapshot))
+        {
+            parts = files.filter(path -> path.getFileName().toString().startsWith(PART_PREFIX))
+                    .sorted(Comparator.comparingInt(path -> Integer.parseInt(path.getFileName().toString().substring(PART_PREFIX.length()))))
+                    .toList();
+        }
+
+        List<CompletableFuture<Map<String, ArtifactMetadata>>> futures = parts.stream()
+                .map(part -> CompletableFuture.supplyAsync(() -> readPartition(part)))
+                .toList();
+
+        try
+        {
+            return futures.stream().map(CompletableFuture::join).toList();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof UncheckedIOException io)
+            {
+                throw io.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    private static Map<String, ArtifactMetadata> readPartition(Path part)
+    {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(part))))
+        {
+            int size = input.readInt();
+            Map<String, ArtifactMetadata> artifacts = HashMap.newHashMap(size);
+
+            for (int i = 0; i < size; ++i)
+            {
+                ArtifactMetadata artifact = MetadataCodec.readArtifact(input);
+                artifacts.put(artifact.artifactId(), artifact);
+            }
+
+            return artifacts;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<MetadataEvent> readWarehouses(Path path) throws IOException
+    {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+        {
+            int size = input.readInt();
+            List<MetadataEvent> warehouses = new ArrayList<>(size);
+
+            for (int i = 0; i < size; ++i)
+            {
+                warehouses.add(new MetadataEvent.WarehouseAdded(input.readInt(), input.readBoolean()));
+            }
+
+            return warehouses;
+        }
+    }
+
+    private void removeObsoleteFiles(long snapshotSequenceNumber) throws IOException
+    {
+        for (Path segmentPath : segments())
+        {
+            if (sequenceNumberOf(segmentPath, SEGMENT_PREFIX) <= snapshotSequenceNumber)
+            {
+                Files.deleteIfExists(segmentPath);
+            }
+        }
+
+        for (long obsolete : snapshots())
+        {
+            if (obsolete < snapshotSequenceNumber)
+            {
+                Path snapshot = directory.resolve(SNAPSHOT_PREFIX + obsolete);
+
+                try (Stream<Path> files = Files.list(snapshot))
+                {
+                    for (Path file : files.toList())
+                    {
+                        Files.delete(file);
+                    }
+                }
+
+                Files.delete(snapshot);
+            }
+        }
+    }
+
+    private long latestSnapshot() throws IOException
+    {
+        return snapshots().stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+
+    private List<Long> snapshots() throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SNAPSHOT_PREFIX) && !name.endsWith(TEMPORARY_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SNAPSHOT_PREFIX.length())))
+                    .toList();
+        }
+    }
+
+    private List<Path> segments() throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            return files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted(Comparator.comparingLong(path -> sequenceNumberOf(path, SEGMENT_PREFIX)))
+                    .toList();
+        }
+    }
+
+    private static long sequenceNumberOf(Path path, String prefix)
+    {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int partitionOf(String artifactId, int numberOfPartitions)
+    {
+        return Math.floorMod(artifactId.hashCode(), numberOfPartitions);
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.metadata;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+public class VaultMetadata
+{
+    private final Map<String, ArtifactMetadata> artifacts;
+    private final SortedSet<Integer> warehouses;
+    private final Set<Integer> remoteWarehouses;
+
+    public VaultMetadata()
+    {
+        this(new HashMap<>(), new TreeSet<>(), new HashSet<>());
+    }
+
+    VaultMetadata(Map<String, ArtifactMetadata> artifacts, SortedSet<Integer> warehouses, Set<Integer> remoteWarehouses)
+    {
+        this.artifacts = artifacts;
+        this.warehouses = warehouses;
+        this.remoteWarehouses = remoteWarehouses;
+    }
+
+    public void apply(MetadataEvent event)
+    {
+        if (event instanceof MetadataEvent.WarehouseAdded added)
+        {
+            warehouses.add(added.warehouseId());
+
+            if (added.remote())
+            {
+                remoteWarehouses.add(added.warehouseId());
+            }
+        }
+        else
+        {
+            applyToArtifacts(artifacts, event);
+        }
+    }
+
+    static void applyToArtifacts(Map<String, ArtifactMetadata> artifacts, MetadataEvent event)
+    {
+        switch (event)
+        {
+            case MetadataEvent.ArtifactCreated created -> artifacts.put(created.artifactId(), createdArtifact(created));
+            case MetadataEvent.VersionAdded added -> artifacts.computeIfPresent(added.artifactId(),
+                    (id, artifact) -> artifact.withVersion(added.version(), added.newShards(), added.retainedVersions()));
+            case MetadataEvent.ArtifactDeleted deleted -> artifacts.remove(deleted.artifactId());
+            case MetadataEvent.ReplicaMoved moved -> artifacts.computeIfPresent(moved.artifactId(),
+                    (id, artifact) -> artifact.withReplicaMoved(moved.shardId(), moved.fromWarehouse(), moved.toWarehouse()));
+            case MetadataEvent.DigestsAdded added -> artifacts.computeIfPresent(added.artifactId(),
+                    (id, artifact) -> artifact.withDigests(added.version(), added.digests()));
+            case MetadataEvent.WarehouseAdded ignored ->
+            {
+            }
+        }
+    }
+
+    private static ArtifactMetadata createdArtifact(MetadataEvent.ArtifactCreated created)
+    {
+        int numberOfShards = created.placement().length;
+        Map<Integer, int[]> placement = HashMap.newHashMap(numberOfShards);
+
+        for (int shardId = 0; shardId < numberOfShards; ++shardId)
+        {
+            placement.put(shardId, created.placement()[shardId]);
+        }
+
+        ArtifactVersion first = new ArtifactVersion(1, created.layout(), IntStream.range(0, numberOfShards).toArray(), created.digests());
+
+        return new ArtifactMetadata(created.artifactId(), List.of(first), Map.copyOf(placement), numberOfShards, created.expiresAt());
+    }
+
+    public ArtifactMetadata artifact(String artifactId)
+    {
+        return artifacts.get(artifactId);
+    }
+
+    public boolean containsArtifact(String artifactId)
+    {
+        return artifacts.containsKey(artifactId);
+    }
+
+    public Collection<ArtifactMetadata> artifacts()
+    {
+        return Collections.unmodifiableCollection(artifacts.values());
+    }
+
+    public int numberOfArtifacts()
+    {
+        return artifacts.size();
+    }
+
+    public SortedSet<Integer> warehouses()
+    {
+        return Collections.unmodifiableSortedSet(warehouses);
+    }
+
+    public boolean isRemoteWarehouse(int warehouseId)
+    {
+        return remoteWarehouses.contains(warehouseId);
+    }
+
+    // Artifact entries are immutable, so a shallow copy is a consistent point-in-time view
+    public VaultMetadata copy()
+    {
+        return new VaultMetadata(new HashMap<>(artifacts), new TreeSet<>(warehouses), new HashSet<>(remoteWarehouses));
+    }
+}
@@ -0,0 +1,358 @@
+package org.example.remote;
+
+import akka.actor.ActorRef;
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.ByteBufferSerializer;
+import akka.serialization.Serialization;
+import akka.serialization.SerializerWithStringManifest;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.base.Utf8;
+import com.google.common.collect.Multimap;
+import com.google.common.primitives.Bytes;
+import org.example.message.collector.ArtifactRangeResponseFromCollector;
+import org.example.message.collector.ArtifactResponseFromCollector;
+import org.example.message.collector.CannotCompleteQuorum;
+import org.example.message.collector.CannotRecoverArtifact;
+import org.example.message.vault.AttachWarehouseToVault;
+import org.example.message.warehouse.*;
+import org.example.tracing.TraceContext;
+
+import java.io.NotSerializableException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// Binary format of the messages exchanged with remote warehouses, shard data is written as raw bytes
+public class ShardMessageSerializer extends SerializerWithStringManifest implements ByteBufferSerializer
+{
+    private static final String ADD_SHARD = "AS";
+    private static final String GET_SHARD = "GS";
+    private static final String DELETE_SHARD = "DS";
+    private static final String DELETE_ARTIFACTS = "DA";
+    private static final String SHARD_RESPONSE = "SR";
+    private static final String SHARD_STORED = "SS";
+    private static final String SHARD_NOT_FOUND = "SN";
+    private static final String ARTIFACT_NOT_FOUND = "AN";
+    private static final String NUMBER_OF_STORED_SHARDS = "NS";
+    private static final String GET_STATUS = "GW";
+    private static final String STATUS_RESPONSE = "WR";
+    private static final String ARTIFACT_RESPONSE = "AR";
+    private static final String ARTIFACT_RANGE_RESPONSE = "RR";
+    private static final String CANNOT_COMPLETE_QUORUM = "CQ";
+    private static final String CANNOT_RECOVER_ARTIFACT = "CR";
+    private static final String ATTACH_WAREHOUSE = "AW";
+    private static final String ADD_HINT = "AH";
+    private static final String SHARD_REJECTED = "RJ";
+
+    private final ExtendedActorSystem system;
+
+    public ShardMessageSerializer(ExtendedActorSystem system)
+    {
+        this.system = system;
+    }
+
+    @Override
+    public int identifier()
+    {
+        return 583_001;
+    }
+
+    @Override
+    public String manifest(Object message)
+    {
+        return switch (message)
+        {
+            case AddShardToWarehouse ignored -> ADD_SHARD;
+            case GetShardFromWarehouse ignored -> GET_SHARD;
+            case DeleteShardFromWarehouse ignored -> DELETE_SHARD;
+            case DeleteArtifactsFromWarehouse ignored -> DELETE_ARTIFACTS;
+            case ShardResponseFromWarehouse ignored -> SHARD_RESPONSE;
+            case ShardStoredInWarehouse ignored -> SHARD_STORED;
+            case ShardNotFoundInWarehouse ignored -> SHARD_NOT_FOUND;
+            case ArtifactNotFoundInWarehouse ignored -> ARTIFACT_NOT_FOUND;
+            case NumberOfStoredShards ignored -> NUMBER_OF_STORED_SHARDS;
+            case GetStatusOfWarehouse ignored -> GET_STATUS;
+            case StatusResponseOfWarehouse ignored -> STATUS_RESPONSE;
+            case ArtifactResponseFromCollector ignored -> ARTIFACT_RESPONSE;
+            case ArtifactRangeResponseFromCollector ignored -> ARTIFACT_RANGE_RESPONSE;
+            case CannotCompleteQuorum ignored -> CANNOT_COMPLETE_QUORUM;
+            case CannotRecoverArtifact ignored -> CANNOT_RECOVER_ARTIFACT;
+            case AttachWarehouseToVault ignored -> ATTACH_WAREHOUSE;
+            case AddHintToWarehouse ignored -> ADD_HINT;
+            case ShardRejectedByWarehouse ignored -> SHARD_REJECTED;
+            default -> throw new IllegalArgumentException("Cannot serialize message of " + message.getClass());
+        };
+    }
+
+    @Override
+    public byte[] toBinary(Object message)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(sizeOf(message));
+        toBinary(message, buffer);
+
+        return buffer.array();
+    }
+
+    // Used by Artery to write straight into its send buffer
+    @Override
+    public void toBinary(Object message, ByteBuffer buffer)
+    {
+        switch (message)
+        {
+            case AddShardToWarehouse m ->
+            {
+                writeString(buffer, m.artifactId());
+                buffer.putInt(m.shardId());
+                writeBytes(buffer, m.data());
+            }
+            case GetShardFromWarehouse m ->
+            {
+                writeString(buffer, m.artifactId());
+                buffer.putInt(m.shardId());
+                writeTrace(buffer, m.trace());
+            }
+            case DeleteShardFromWarehouse m ->
+            {
+                writeString(buffer, m.artifactId());
+                buffer.putInt(m.shardId());
+            }
+            case ShardResponseFromWarehouse m ->
+            {
+                writeString(buffer, m.artifactId());
+                buffer.putInt(m.shardId());
+                writeBytes(buffer, m.data());
+                writeTrace(buffer, m.trace());
+            }
+            case ShardStoredInWarehouse m ->
+            {
+                buffer.putInt(m.warehouseId());
+                writeString(buffer, m.artifactId());
+                buffer.putInt(m.shardId());
+            }
+            case ShardNotFoundInWarehouse m ->
+            {
+                writeString(buffer, m.artifactId());
+                buffer.putInt(m.shardId());
+            }
+            case ArtifactNotFoundInWarehouse m -> writeString(buffer, m.artifactId());
+            case DeleteArtifactsFromWarehouse m ->
+            {
+                buffer.putInt(m.artifactIds().size());
+                m.artifactIds().forEach(artifactId -> writeString(buffer, artifactId));
+            }
+            case NumberOfStoredShards m ->
+            {
+                buffer.putInt(m.warehouseId());
+                buffer.putInt(m.numberOfStoredShards());
+                buffer.putLong(m.storedBytes());
+                buffer.putLong(m.freeBytes());
+            }
+            case GetStatusOfWarehouse ignored ->
+            {
+            }
+            case StatusResponseOfWarehouse m ->
+            {
+                Map<String, Collection<Integer>> shards = m.shards().asMap();
+                buffer.putInt(m.warehouseId());
+                buffer.putInt(shards.size());
+
+                for (var entry : shards.entrySet())
+                {
+                    writeString(buffer, entry.getKey());
+                    buffer.putInt(entry.getValue().size());
+                    entry.getValue().forEach(buffer::putInt);
+                }
+            }
+            case ArtifactResponseFromCollector m ->
+            {
+                writeString(buffer, m.artifactId());
+                writeBytes(buffer, m.data());
+            }
+            case ArtifactRangeResponseFromCollector m ->
+            {
+                writeString(buffer, m.artifactId());
+                buffer.putInt(m.offset());
+                writeBytes(buffer, m.data());
+            }
+            case CannotCompleteQuorum m -> writeString(buffer, m.artifactId());
+            case CannotRecoverArtifact m -> writeString(buffer, m.artifactId());
+            case AttachWarehouseToVault m ->
+            {
+                buffer.putInt(m.warehouseId());
+                writeString(buffer, Serialization.serializedActorPath(m.warehouse()));
+            }
+            case AddHintToWarehouse m ->
+            {
+                writeString(buffer, m.artifactId());
+                buffer.putInt(m.shardId());
+                writeBytes(buffer, m.data());
+                buffer.putInt(m.ownerWarehouseId());
+                writeString(buffer, Serialization.serializedActorPath(m.owner()));
+            }
+            case ShardRejectedByWarehouse m ->
+            {
+                buffer.putInt(m.warehouseId());
+                writeString(buffer, m.artifactId());
+                buffer.putInt(m.shardId());
+                buffer.putLong(m.storedBytes());
+                buffer.putLong(m.quota());
+            }
+            default -> throw new IllegalArgumentException("Cannot serialize message of " + message.getClass());
+        }
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException
+    {
+        return fromBinary(ByteBuffer.wrap(bytes), manifest);
+    }
+
+    @Override
+    public Object fromBinary(ByteBuffer buffer, String manifest) throws NotSerializableException
+    {
+        return switch (manifest)
+        {
+            case ADD_SHARD -> new AddShardToWarehouse(readString(buffer), buffer.getInt(), readBytes(buffer));
+            case GET_SHARD -> new GetShardFromWarehouse(readString(buffer), buffer.getInt(), readTrace(buffer));
+            case DELETE_SHARD -> new DeleteShardFromWarehouse(readString(buffer), buffer.getInt());
+            case DELETE_ARTIFACTS -> new DeleteArtifactsFromWarehouse(IntStream.range(0, buffer.getInt()).mapToObj(i -> readString(buffer)).toList());
+            case SHARD_RESPONSE -> new ShardResponseFromWarehouse(readString(buffer), buffer.getInt(), readBytes(buffer), readTrace(buffer));
+            case SHARD_STORED -> new ShardStoredInWarehouse(buffer.getInt(), readString(buffer), buffer.getInt());
+            case SHARD_NOT_FOUND -> new ShardNotFoundInWarehouse(readString(buffer), buffer.getInt());
+            case ARTIFACT_NOT_FOUND -> new ArtifactNotFoundInWarehouse(readString(buffer));
+            case NUMBER_OF_STORED_SHARDS -> new NumberOfStoredShards(buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong());
+            case GET_STATUS -> new GetStatusOfWarehouse();
+            case STATUS_RESPONSE -> statusFromBinary(buffer);
+            case ARTIFACT_RESPONSE -> new ArtifactResponseFromCollector(readString(buffer), readBytes(buffer));
+            case ARTIFACT_RANGE_RESPONSE -> new ArtifactRangeResponseFromCollector(readString(buffer), buffer.getInt(), readBytes(buffer));
+            case CANNOT_COMPLETE_QUORUM -> new CannotCompleteQuorum(readString(buffer));
+            case CANNOT_RECOVER_ARTIFACT -> new CannotRecoverArtifact(readString(buffer));
+            case ATTACH_WAREHOUSE -> new AttachWarehouseToVault(buffer.getInt(), resolveActorRef(readString(buffer)));
+            case ADD_HINT -> new AddHintToWarehouse(readString(buffer), buffer.getInt(), readBytes(buffer), buffer.getInt(), resolveActorRef(readString(buffer)));
+            case SHARD_REJECTED -> new ShardRejectedByWarehouse(buffer.getInt(), readString(buffer), buffer.getInt(), buffer.getLong(), buffer.getLong());
+            default -> throw new NotSerializableException("Unknown manifest " + manifest);
+        };
+    }
+
+    private static int sizeOf(Object message)
+    {
+        return switch (message)
+        {
+            case AddShardToWarehouse m -> sizeOf(m.artifactId()) + Integer.BYTES + sizeOf(m.data());
+            case GetShardFromWarehouse m -> sizeOf(m.artifactId()) + Integer.BYTES + sizeOf(m.trace());
+            case DeleteShardFromWarehouse m -> sizeOf(m.artifactId()) + Integer.BYTES;
+            case ShardResponseFromWarehouse m -> sizeOf(m.artifactId()) + Integer.BYTES + sizeOf(m.data()) + sizeOf(m.trace());
+            case ShardStoredInWarehouse m -> Integer.BYTES + sizeOf(m.artifactId()) + Integer.BYTES;
+            case ShardNotFoundInWarehouse m -> sizeOf(m.artifactId()) + Integer.BYTES;
+            case ArtifactNotFoundInWarehouse m -> sizeOf(m.artifactId());
+            case DeleteArtifactsFromWarehouse m -> Integer.BYTES + m.artifactIds().stream().mapToInt(ShardMessageSerializer::sizeOf).sum();
+            case NumberOfStoredShards ignored -> 2 * Integer.BYTES + 2 * Long.BYTES;
+            case GetStatusOfWarehouse ignored -> 0;
+            case StatusResponseOfWarehouse m -> 2 * Integer.BYTES + m.shards().asMap().keySet().stream()
+                    .mapToInt(artifactId -> sizeOf(artifactId) + Integer.BYTES).sum() + Integer.BYTES * m.shards().size();
+            case ArtifactResponseFromCollector m -> sizeOf(m.artifactId()) + sizeOf(m.data());
+            case ArtifactRangeResponseFromCollector m -> sizeOf(m.artifactId()) + Integer.BYTES + sizeOf(m.data());
+            case CannotCompleteQuorum m -> sizeOf(m.artifactId());
+            case CannotRecoverArtifact m -> sizeOf(m.artifactId());
+            case AttachWarehouseToVault m -> Integer.BYTES + sizeOf(Serialization.serializedActorPath(m.warehouse()));
+            case AddHintToWarehouse m -> sizeOf(m.artifactId()) + Integer.BYTES + sizeOf(m.data()) + Integer.BYTES
+                    + sizeOf(Serialization.serializedActorPath(m.owner()));
+            case ShardRejectedByWarehouse m -> Integer.BYTES + sizeOf(m.artifactId()) + Integer.BYTES + 2 * Long.BYTES;
+            default -> throw new IllegalArgumentException("Cannot serialize message of " + message.getClass());
+        };
+    }
+
+    private static int sizeOf(String value)
+    {
+        return Integer.BYTES + Utf8.encodedLength(value);
+    }
+
+    private static int sizeOf(List<Byte> data)
+    {
+        return Integer.BYTES + data.size();
+    }
+
+    // Untraced requests only take the flag
+    private static int sizeOf(TraceContext trace)
+    {
+        return 1 + (trace.isTraced() ? 3 * Long.BYTES : 0);
+    }
+
+    private StatusResponseOfWarehouse statusFromBinary(ByteBuffer buffer)
+    {
+        int warehouseId = buffer.getInt();
+        int numberOfArtifacts = buffer.getInt();
+        Multimap<String, Integer> shards = ArrayListMultimap.create(numberOfArtifacts, 1);
+
+        for (int i = 0; i < numberOfArtifacts; ++i)
+        {
+            String artifactId = readString(buffer);
+            int numberOfShards = buffer.getInt();
+
+            for (int j = 0; j < numberOfShards; ++j)
+            {
+                shards.put(artifactId, buffer.getInt());
+            }
+        }
+
+        return new StatusResponseOfWarehouse(warehouseId, shards);
+    }
+
+    private ActorRef resolveActorRef(String path)
+    {
+        return system.provider().resolveActorRef(path);
+    }
+
+    private static void writeString(ByteBuffer buffer, String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(ByteBuffer buffer, List<Byte> data)
+    {
+        buffer.putInt(data.size());
+
+        for (byte value : data)
+        {
+            buffer.put(value);
+        }
+    }
+
+    private static void writeTrace(ByteBuffer buffer, TraceContext trace)
+    {
+        buffer.put((byte) (trace.isTraced() ? 1 : 0));
+
+        if (trace.isTraced())
+        {
+            buffer.putLong(trace.traceId());
+            buffer.putLong(trace.parentSpanId());
+            buffer.putLong(trace.sentAt());
+        }
+    }
+
+    private static TraceContext readTrace(ByteBuffer buffer)
+    {
+        return buffer.get() == 0 ? TraceContext.NONE : new TraceContext(buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+
+    private static List<Byte> readBytes(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+
+        return Bytes.asList(bytes);
+    }
+}
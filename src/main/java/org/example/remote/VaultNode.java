@@ -0,0 +1,53 @@
+package org.example.remote;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.example.actor.VaultManagerActor;
+import org.example.actor.VaultSettings;
+import org.example.http.VaultHttpServer;
+import org.example.sharding.ShardSizing;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+
+// Usage: VaultNode <port> [local warehouses] [metadata directory]
+// The HTTP front-end is started with -Dshard-vault.http.port=<port>
+public class VaultNode
+{
+    public static final String SYSTEM_NAME = "ShardVault";
+    public static final String VAULT_NAME = "Vault";
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 25520;
+        int localWarehouses = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+
+        VaultSettings settings = VaultSettings.defaults();
+
+        if (args.length > 2)
+        {
+            settings = settings.withMetadataDirectory(Path.of(args[2]));
+        }
+
+        ActorSystem actorSystem = ActorSystem.create(SYSTEM_NAME, config(port));
+        ActorRef vault = actorSystem.actorOf(VaultManagerActor.props(new ShardSizing(64 * 1024, 4 * 1024, 512 * 1024), 3, localWarehouses, settings),
+                VAULT_NAME);
+
+        int httpPort = actorSystem.settings().config().getInt("shard-vault.http.port");
+
+        if (httpPort >= 0)
+        {
+            VaultHttpServer.start(actorSystem, vault, new InetSocketAddress(httpPort));
+        }
+    }
+
+    static Config config(int port)
+    {
+        return ConfigFactory.parseString("akka.remote.artery.canonical.port = " + port)
+                .withFallback(ConfigFactory.parseResources("remote.conf"))
+                .withFallback(ConfigFactory.load());
+    }
+}
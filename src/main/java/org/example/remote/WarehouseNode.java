@@ -0,0 +1,44 @@
+package org.example.remote;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.pattern.Patterns;
+import org.example.actor.WarehouseActor;
+import org.example.message.vault.AttachWarehouseToVault;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+
+// Usage: WarehouseNode <port> <vault host:port> <warehouse id>...
+public class WarehouseNode
+{
+    public static void main(String[] args)
+    {
+        if (args.length < 3)
+        {
+            System.err.println("Usage: WarehouseNode <port> <vault host:port> <warehouse id>...");
+            System.exit(1);
+        }
+
+        int port = Integer.parseInt(args[0]);
+        String vaultPath = "akka://" + VaultNode.SYSTEM_NAME + "@" + args[1] + "/user/" + VaultNode.VAULT_NAME;
+
+        ActorSystem actorSystem = ActorSystem.create("WarehouseNode", VaultNode.config(port));
+
+        actorSystem.actorSelection(vaultPath).resolveOne(Duration.ofSeconds(10)).thenAccept(vault -> {
+            for (int i = 2; i < args.length; ++i)
+            {
+                int warehouseId = Integer.parseInt(args[i]);
+                ActorRef warehouse = actorSystem.actorOf(WarehouseActor.props(warehouseId, vault), WarehouseActor.actorName(warehouseId));
+
+                CompletionStage<Object> attached = Patterns.ask(vault, new AttachWarehouseToVault(warehouseId, warehouse), Duration.ofSeconds(10));
+                attached.whenComplete((response, failure) ->
+                        actorSystem.log().info("Attaching warehouse [" + warehouseId + "]: " + (failure == null ? response : failure)));
+            }
+        }).exceptionally(failure -> {
+            actorSystem.log().error(failure, "Cannot find the vault at " + vaultPath);
+            actorSystem.terminate();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,195 @@
+package org.example.selection;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.ExtensionIdProvider;
+import com.google.common.base.Preconditions;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Response times of warehouses shared by the collectors of an actor system, configured by shard-vault.replica-selection.
+// Replicas are ranked by the moving average of their response time weighted by their outstanding requests, and the hedge delay
+// is a percentile of the recent response times of all warehouses.
+public class ReplicaSelector implements Extension
+{
+    // Below it the percentile isn't meaningful and the maximal delay is used
+    private static final int MIN_SAMPLES = 16;
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    private final double ewmaWeight;
+    private final double hedgePercentile;
+    private final long minHedgeDelay;
+    private final long maxHedgeDelay;
+
+    private final Map<ActorRef, ReplicaStats> replicas = new ConcurrentHashMap<>();
+
+    // Ring buffer of recent response times in microseconds
+    private final long[] samples;
+    private int numberOfSamples = 0;
+    private int nextSample = 0;
+    private int samplesSinceRecompute = 0;
+    private volatile long hedgeDelay;
+
+    public static class Id extends AbstractExtensionId<ReplicaSelector> implements ExtensionIdProvider
+    {
+        public static final Id INSTANCE = new Id();
+
+        @Override
+        public Id lookup()
+        {
+            return INSTANCE;
+        }
+
+        @Override
+        public ReplicaSelector createExtension(ExtendedActorSystem system)
+        {
+            Config config = system.settings().config().getConfig("shard-vault.replica-selection");
+
+            return new ReplicaSelector(config.getDouble("ewma-weight"), config.getDouble("hedge-percentile"),
+                    config.getDuration("min-hedge-delay"), config.getDuration("max-hedge-delay"), config.getInt("samples"));
+        }
+    }
+
+    public static ReplicaSelector get(ActorSystem system)
+    {
+        return Id.INSTANCE.get(system);
+    }
+
+    public ReplicaSelector(double ewmaWeight, double hedgePercentile, Duration minHedgeDelay, Duration maxHedgeDelay, int samples)
+    {
+        Preconditions.checkArgument(ewmaWeight > 0 && ewmaWeight <= 1, "Weight of the moving average must be between 0 and 1");
+        Preconditions.checkArgument(hedgePercentile > 0 && hedgePercentile <= 100, "Hedge percentile must be between 0 and 100");
+        Preconditions.checkArgument(minHedgeDelay.compareTo(maxHedgeDelay) <= 0, "Minimal hedge delay must not exceed the maximal one");
+        Preconditions.checkArgument(samples >= MIN_SAMPLES, "Number of samples must be greater or equal " + MIN_SAMPLES);
+
+        this.ewmaWeight = ewmaWeight;
+        this.hedgePercentile = hedgePercentile;
+        this.minHedgeDelay = minHedgeDelay.toNanos() / 1000;
+        this.maxHedgeDelay = maxHedgeDelay.toNanos() / 1000;
+        this.samples = new long[samples];
+        this.hedgeDelay = this.maxHedgeDelay;
+    }
+
+    // Fastest replicas first, replicas without any response yet are tried first so they get measured. Ties are broken randomly.
+    public List<ActorRef> fastestFirst(Collection<ActorRef> candidates)
+    {
+        List<ActorRef> ranked = new ArrayList<>(candidates);
+        Collections.shuffle(ranked, ThreadLocalRandom.current());
+        ranked.sort(Comparator.comparingDouble(this::score));
+
+        return ranked;
+    }
+
+    public void requestSent(ActorRef warehouse)
+    {
+        stats(warehouse).requestSent();
+    }
+
+    public void responseReceived(ActorRef warehouse, long micros)
+    {
+        stats(warehouse).responseReceived(micros, ewmaWeight);
+        addSample(micros);
+    }
+
+    // Request left without a response when the read finished, its time so far is a lower bound of the response time
+    public void requestAbandoned(ActorRef warehouse, long micros)
+    {
+        stats(warehouse).requestAbandoned(micros, ewmaWeight);
+    }
+
+    public Duration hedgeDelay()
+    {
+        return Duration.ofNanos(hedgeDelay * 1000);
+    }
+
+    public double averageResponseTime(ActorRef warehouse)
+    {
+        ReplicaStats stats = replicas.get(warehouse);
+        return stats == null ? Double.NaN : stats.average();
+    }
+
+    public int outstandingRequests(ActorRef warehouse)
+    {
+        ReplicaStats stats = replicas.get(warehouse);
+        return stats == null ? 0 : stats.outstanding();
+    }
+
+    private double score(ActorRef warehouse)
+    {
+        ReplicaStats stats = replicas.get(warehouse);
+
+        if (stats == null || Double.isNaN(stats.average()))
+        {
+            return 0;
+        }
+
+        return stats.average() * (1 + stats.outstanding());
+    }
+
+    private ReplicaStats stats(ActorRef warehouse)
+    {
+        return replicas.computeIfAbsent(warehouse, ref -> new ReplicaStats());
+    }
+
+    private synchronized void addSample(long micros)
+    {
+        samples[nextSample] = micros;
+        nextSample = (nextSample + 1) % samples.length;
+        numberOfSamples = Math.min(numberOfSamples + 1, samples.length);
+
+        if (numberOfSamples >= MIN_SAMPLES && ++samplesSinceRecompute >= Math.min(RECOMPUTE_INTERVAL, numberOfSamples))
+        {
+            samplesSinceRecompute = 0;
+
+            long[] sorted = Arrays.copyOf(samples, numberOfSamples);
+            Arrays.sort(sorted);
+            long percentile = sorted[(int) Math.min(sorted.length - 1, Math.ceil(hedgePercentile / 100 * sorted.length) - 1)];
+
+            hedgeDelay = Math.max(minHedgeDelay, Math.min(maxHedgeDelay, percentile));
+        }
+    }
+
+    private static class ReplicaStats
+    {
+        private double average = Double.NaN;
+        private int outstanding = 0;
+
+        synchronized void requestSent()
+        {
+            ++outstanding;
+        }
+
+        synchronized void responseReceived(long micros, double weight)
+        {
+            outstanding = Math.max(0, outstanding - 1);
+            average = Double.isNaN(average) ? micros : average + weight * (micros - average);
+        }
+
+        synchronized void requestAbandoned(long micros, double weight)
+        {
+            outstanding = Math.max(0, outstanding - 1);
+
+            if (Double.isNaN(average) || micros > average)
+            {
+                average = Double.isNaN(average) ? micros : average + weight * (micros - average);
+            }
+        }
+
+        synchronized double average()
+        {
+            return average;
+        }
+
+        synchronized int outstanding()
+        {
+            return outstanding;
+        }
+    }
+}
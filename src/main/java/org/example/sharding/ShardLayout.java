@@ -0,0 +1,113 @@
+package org.example.sharding;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+public final class ShardLayout
+{
+    // offsets[i] is the first byte of shard i, offsets[numberOfShards] is the artifact size
+    private final int[] offsets;
+
+    private ShardLayout(int[] offsets)
+    {
+        this.offsets = offsets;
+    }
+
+    public static ShardLayout of(int size, int numberOfShards)
+    {
+        Preconditions.checkArgument(size >= 0, "Size must be non-negative");
+        Preconditions.checkArgument(numberOfShards >= 1, "Number of shards must be greater or equal 1");
+
+        int[] offsets = new int[numberOfShards + 1];
+        int baseSize = size / numberOfShards;
+        int remainder = size % numberOfShards;
+
+        for (int shardId = 0; shardId < numberOfShards; ++shardId)
+        {
+            offsets[shardId + 1] = offsets[shardId] + baseSize + (shardId < remainder ? 1 : 0);
+        }
+
+        return new ShardLayout(offsets);
+    }
+
+    public static ShardLayout fromOffsets(int[] offsets)
+    {
+        Preconditions.checkArgument(offsets.length >= 2 && offsets[0] == 0, "Offsets must start at 0 and describe at least one shard");
+
+        for (int i = 1; i < offsets.length; ++i)
+        {
+            Preconditions.checkArgument(offsets[i - 1] <= offsets[i], "Offsets must be sorted");
+        }
+
+        return new ShardLayout(offsets.clone());
+    }
+
+    public int[] toOffsets()
+    {
+        return offsets.clone();
+    }
+
+    public int numberOfShards()
+    {
+        return offsets.length - 1;
+    }
+
+    public int size()
+    {
+        return offsets[offsets.length - 1];
+    }
+
+    public int start(int shardId)
+    {
+        return offsets[shardId];
+    }
+
+    public int end(int shardId)
+    {
+        return offsets[shardId + 1];
+    }
+
+    public int length(int shardId)
+    {
+        return end(shardId) - start(shardId);
+    }
+
+    public int shardAt(int offset)
+    {
+        Preconditions.checkElementIndex(offset, size(), "Offset");
+
+        int index = Arrays.binarySearch(offsets, offset);
+
+        if (index < 0)
+        {
+            return -index - 2;
+        }
+
+        // Skip empty shards starting at the same offset
+        while (offsets[index + 1] == offset)
+        {
+            ++index;
+        }
+
+        return index;
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        return other instanceof ShardLayout layout && Arrays.equals(offsets, layout.offsets);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(offsets);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ShardLayout" + Arrays.toString(offsets);
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.sharding;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+public record ShardSizing(int targetShardSize, int minShardSize, int maxShardSize)
+{
+    public ShardSizing
+    {
+        Preconditions.checkArgument(minShardSize >= 1, "Minimal shard size must be greater or equal 1");
+        Preconditions.checkArgument(minShardSize <= targetShardSize, "Target shard size must be greater or equal minimal shard size");
+        Preconditions.checkArgument(targetShardSize <= maxShardSize, "Target shard size must be lesser or equal maximal shard size");
+    }
+
+    public int numberOfShards(int size)
+    {
+        int numberOfShards = Math.ceilDiv(size, targetShardSize);
+
+        // Don't split small artifacts into shards below the minimal size
+        numberOfShards = Math.min(numberOfShards, size / minShardSize);
+
+        // Maximal size wins over minimal size, it protects message size limits
+        numberOfShards = Math.max(numberOfShards, Math.ceilDiv(size, maxShardSize));
+
+        return Math.max(numberOfShards, 1);
+    }
+
+    public ShardLayout layoutFor(int size)
+    {
+        return ShardLayout.of(size, numberOfShards(size));
+    }
+
+    // Shards before the tail are kept. A partial tail shard is filled up to the target size, followed by new shards.
+    public ShardLayout layoutForAppend(ShardLayout layout, int appended)
+    {
+        Preconditions.checkArgument(appended >= 0, "Appended size must be non-negative");
+        Preconditions.checkArgument((long) layout.size() + appended <= Integer.MAX_VALUE, "Artifact size exceeds the maximum");
+
+        int[] offsets = layout.toOffsets();
+        int tail = layout.numberOfShards() - 1;
+        int size = layout.size() + appended;
+
+        if (appended == 0)
+        {
+            return layout;
+        }
+
+        // A full tail shard stays as it is
+        int keptOffsets = layout.length(tail) >= targetShardSize ? offsets.length : offsets.length - 1;
+        int[] appendedOffsets = Arrays.copyOf(offsets, keptOffsets + Math.ceilDiv(size - offsets[keptOffsets - 1], targetShardSize));
+
+        for (int i = keptOffsets; i < appendedOffsets.length; ++i)
+        {
+            appendedOffsets[i] = Math.min(appendedOffsets[i - 1] + targetShardSize, size);
+        }
+
+        return ShardLayout.fromOffsets(appendedOffsets);
+    }
+}
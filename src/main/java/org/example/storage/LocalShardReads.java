@@ -0,0 +1,68 @@
+package org.example.storage;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.ExtensionIdProvider;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Read views of the warehouses running in this actor system, so collectors read in-memory shards of local replicas
+// without a round trip through the warehouse mailbox, where reads would queue behind writes.
+// Enabled by shard-vault.direct-local-reads.
+public class LocalShardReads implements Extension
+{
+    private final boolean enabled;
+    private final Map<ActorRef, ShardStore.ReadView> warehouses = new ConcurrentHashMap<>();
+
+    public static class Id extends AbstractExtensionId<LocalShardReads> implements ExtensionIdProvider
+    {
+        public static final Id INSTANCE = new Id();
+
+        @Override
+        public Id lookup()
+        {
+            return INSTANCE;
+        }
+
+        @Override
+        public LocalShardReads createExtension(ExtendedActorSystem system)
+        {
+            return new LocalShardReads(system.settings().config().getBoolean("shard-vault.direct-local-reads"));
+        }
+    }
+
+    public static LocalShardReads get(ActorSystem system)
+    {
+        return Id.INSTANCE.get(system);
+    }
+
+    public LocalShardReads(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public void register(ActorRef warehouse, ShardStore.ReadView view)
+    {
+        if (enabled)
+        {
+            warehouses.put(warehouse, view);
+        }
+    }
+
+    public void unregister(ActorRef warehouse)
+    {
+        warehouses.remove(warehouse);
+    }
+
+    // Null unless the warehouse is local and has the shard in memory, it has to be asked then
+    public List<Byte> get(ActorRef warehouse, String artifactId, int shardId)
+    {
+        ShardStore.ReadView view = warehouses.get(warehouse);
+        return view == null ? null : view.get(artifactId, shardId);
+    }
+}
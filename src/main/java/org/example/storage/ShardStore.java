@@ -0,0 +1,588 @@
+package org.example.storage;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.primitives.Bytes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Shards of a single warehouse. Recently and frequently accessed shards are kept in memory within the budget (in data bytes),
+// colder ones are spilled to files. Not thread safe, only the file I/O runs on the given executor.
+// In-memory shards are also published to a concurrent index, which other threads read through the ReadView.
+public class ShardStore implements AutoCloseable
+{
+    private static final int MIN_AGING_PERIOD = 1024;
+
+    // Estimated heap taken by the index of a shard (entry, map node, boxed key and its published copy)
+    // and of an artifact (map, node, id characters)
+    public static final int SHARD_OVERHEAD = 160;
+    public static final int ARTIFACT_OVERHEAD = 128;
+
+    private final Path directory;
+    private final long memoryBudget;
+    private final Executor ioExecutor;
+
+    private final Map<String, Map<Integer, Entry>> artifacts = new HashMap<>();
+    // Eviction order of in-memory shards: least frequently, then least recently accessed first
+    private final TreeSet<Entry> hot = new TreeSet<>(Comparator.comparingInt((Entry entry) -> entry.frequency)
+            .thenComparingLong(entry -> entry.lastAccess)
+            .thenComparingLong(entry -> entry.version));
+    private final Deque<Entry> spilling = new ArrayDeque<>();
+    // Shards of deleted artifacts, no longer visible but still holding memory and files until swept
+    private final Deque<Entry> tombstones = new ArrayDeque<>();
+
+    // Data of in-memory shards for lock-free reads, replaced as a whole when a shard is written or leaves memory
+    private final ConcurrentMap<ShardKey, PublishedShard> published = new ConcurrentHashMap<>();
+    private final ReadView readView = new ReadView(published);
+
+    private long memoryUsed = 0;
+    private long storedBytes = 0;
+    private int numberOfShards = 0;
+    private long clock = 0;
+    private long accessesSinceAging = 0;
+    private long nextVersion = 0;
+
+    private ShardStore(Path directory, long memoryBudget, Executor ioExecutor)
+    {
+        this.directory = directory;
+        this.memoryBudget = memoryBudget;
+        this.ioExecutor = ioExecutor;
+    }
+
+    public static ShardStore inMemory()
+    {
+        return new ShardStore(null, Long.MAX_VALUE, Runnable::run);
+    }
+
+    // Spill files left by a previous run are removed, the warehouse starts empty
+    public static ShardStore tiered(Path directory, long memoryBudget, Executor ioExecutor) throws IOException
+    {
+        Files.createDirectories(directory);
+        deleteFiles(directory);
+
+        return new ShardStore(directory, memoryBudget, ioExecutor);
+    }
+
+    public ReadView readView()
+    {
+        return readView;
+    }
+
+    public boolean containsArtifact(String artifactId)
+    {
+        return artifacts.containsKey(artifactId);
+    }
+
+    public boolean contains(String artifactId, int shardId)
+    {
+        return entry(artifactId, shardId) != null;
+    }
+
+    public int numberOfShards()
+    {
+        return numberOfShards;
+    }
+
+    public long memoryUsed()
+    {
+        return memoryUsed;
+    }
+
+    // Data of every shard, in memory or spilled, and the estimated index overhead
+    public long storedBytes()
+    {
+        return storedBytes;
+    }
+
+    // Change of the stored bytes if the shard was put
+    public long growth(String artifactId, int shardId, int size)
+    {
+        Map<Integer, Entry> shards = artifacts.get(artifactId);
+
+        if (shards == null)
+        {
+            return artifactOverhead(artifactId) + SHARD_OVERHEAD + size;
+        }
+
+        Entry previous = shards.get(shardId);
+        return previous == null ? SHARD_OVERHEAD + size : (long) size - previous.size;
+    }
+
+    public Multimap<String, Integer> shards()
+    {
+        Multimap<String, Integer> shards = ArrayListMultimap.create();
+
+        for (var artifact : artifacts.entrySet())
+        {
+            shards.putAll(artifact.getKey(), artifact.getValue().keySet());
+        }
+
+        return shards;
+    }
+
+    public void put(String artifactId, int shardId, List<Byte> data)
+    {
+        drainSpills();
+
+        storedBytes += growth(artifactId, shardId, data.size());
+
+        Entry previous = artifacts.computeIfAbsent(artifactId, id -> new HashMap<>()).get(shardId);
+        Entry entry = new Entry(new ShardKey(artifactId, shardId), data, nextVersion++);
+
+        if (previous != null)
+        {
+            // Popularity of a shard survives its overwrite
+            entry.frequency = previous.frequency;
+            discard(previous);
+        }
+        else
+        {
+            ++numberOfShards;
+        }
+
+        artifacts.get(artifactId).put(shardId, entry);
+        touch(entry);
+        memoryUsed += entry.size;
+        hot.add(entry);
+        publish(entry);
+
+        evictOverBudget();
+    }
+
+    public boolean remove(String artifactId, int shardId)
+    {
+        drainSpills();
+
+        Map<Integer, Entry> shards = artifacts.get(artifactId);
+        Entry entry = shards == null ? null : shards.remove(shardId);
+
+        if (entry == null)
+        {
+            return false;
+        }
+
+        if (shards.isEmpty())
+        {
+            artifacts.remove(artifactId);
+            storedBytes -= artifactOverhead(artifactId);
+        }
+
+        --numberOfShards;
+        storedBytes -= SHARD_OVERHEAD + entry.size;
+        discard(entry);
+
+        return true;
+    }
+
+    public int removeArtifact(String artifactId)
+    {
+        drainSpills();
+
+        Map<Integer, Entry> shards = artifacts.remove(artifactId);
+
+        if (shards == null)
+        {
+            return 0;
+        }
+
+        numberOfShards -= shards.size();
+        storedBytes -= artifactOverhead(artifactId);
+
+        for (Entry entry : shards.values())
+        {
+            storedBytes -= SHARD_OVERHEAD + entry.size;
+            discard(entry);
+        }
+
+        return shards.size();
+    }
+
+    // Artifact disappears right away at a cost independent of the size of its shards, which are reclaimed by sweep
+    public int tombstone(String artifactId)
+    {
+        Map<Integer, Entry> shards = artifacts.remove(artifactId);
+
+        if (shards == null)
+        {
+            return 0;
+        }
+
+        numberOfShards -= shards.size();
+        storedBytes -= artifactOverhead(artifactId);
+
+        for (Entry entry : shards.values())
+        {
+            entry.discarded = true;
+            unpublish(entry);
+            tombstones.add(entry);
+        }
+
+        return shards.size();
+    }
+
+    public boolean hasTombstones()
+    {
+        return !tombstones.isEmpty();
+    }
+
+    // Reclaims the memory and files of up to maxShards tombstoned shards, returns the number reclaimed
+    public int sweep(int maxShards)
+    {
+        drainSpills();
+
+        int swept = 0;
+
+        while (swept < maxShards && !tombstones.isEmpty())
+        {
+            Entry entry = tombstones.poll();
+
+            storedBytes -= SHARD_OVERHEAD + entry.size;
+            release(entry);
+            ++swept;
+        }
+
+        return swept;
+    }
+
+    // Data of an in-memory shard or null if the shard has to be loaded from its file
+    public List<Byte> get(String artifactId, int shardId)
+    {
+        drainSpills();
+
+        Entry entry = entry(artifactId, shardId);
+
+        if (entry == null)
+        {
+            return null;
+        }
+
+        boolean inMemory = hot.remove(entry);
+        touch(entry);
+
+        if (inMemory)
+        {
+            hot.add(entry);
+        }
+
+        return entry.data;
+    }
+
+    public long version(String artifactId, int shardId)
+    {
+        return entry(artifactId, shardId).version;
+    }
+
+    public CompletableFuture<List<Byte>> load(String artifactId, int shardId)
+    {
+        Path file = entry(artifactId, shardId).file;
+
+        return CompletableFuture.supplyAsync(() -> {
+            try
+            {
+                return Bytes.asList(Files.readAllBytes(file));
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }, ioExecutor);
+    }
+
+    // Loaded shard goes back to memory if there is room or it is accessed more often than the coldest in-memory shard
+    public void admit(String artifactId, int shardId, long version, List<Byte> data)
+    {
+        drainSpills();
+
+        Entry entry = entry(artifactId, shardId);
+
+        if (entry == null || entry.version != version || entry.data != null)
+        {
+            return;
+        }
+
+        if (memoryUsed + entry.size > memoryBudget && (hot.isEmpty() || hot.first().frequency >= entry.frequency))
+        {
+            return;
+        }
+
+        entry.data = data;
+        memoryUsed += entry.size;
+        hot.add(entry);
+        publish(entry);
+
+        evictOverBudget();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (directory != null)
+        {
+            for (Entry entry : spilling)
+            {
+                entry.spill.exceptionally(failure -> null).join();
+            }
+
+            deleteFiles(directory);
+        }
+    }
+
+    private static long artifactOverhead(String artifactId)
+    {
+        return ARTIFACT_OVERHEAD + 2L * artifactId.length();
+    }
+
+    private Entry entry(String artifactId, int shardId)
+    {
+        Map<Integer, Entry> shards = artifacts.get(artifactId);
+        return shards == null ? null : shards.get(shardId);
+    }
+
+    private void touch(Entry entry)
+    {
+        entry.lastAccess = clock++;
+        entry.frequency = Math.min(entry.frequency + 1 + directReads(entry), Integer.MAX_VALUE - 1);
+
+        // Halving the counters lets shards which were popular long ago cool down
+        if (++accessesSinceAging >= Math.max(MIN_AGING_PERIOD, 10L * numberOfShards))
+        {
+            accessesSinceAging = 0;
+
+            List<Entry> inMemory = new ArrayList<>(hot);
+            hot.clear();
+
+            for (var shards : artifacts.values())
+            {
+                for (Entry shard : shards.values())
+                {
+                    shard.frequency = (int) Math.min((shard.frequency + (long) directReads(shard)) / 2, Integer.MAX_VALUE - 1);
+                }
+            }
+
+            hot.addAll(inMemory);
+        }
+    }
+
+    private void evictOverBudget()
+    {
+        int secondChances = hot.size();
+
+        while (memoryUsed > memoryBudget && !hot.isEmpty())
+        {
+            Entry victim = hot.pollFirst();
+
+            // Tombstoned shard isn't worth writing, its memory is reclaimed before the sweep reaches it
+            if (victim.discarded)
+            {
+                memoryUsed -= victim.size;
+                continue;
+            }
+
+            int reads = directReads(victim);
+
+            // Shard read directly since its last access is ranked again with those reads
+            if (reads > 0 && secondChances-- > 0)
+            {
+                victim.frequency = (int) Math.min((long) victim.frequency + reads, Integer.MAX_VALUE - 1);
+                hot.add(victim);
+                continue;
+            }
+
+            memoryUsed -= victim.size;
+            unpublish(victim);
+
+            // Loaded shards still have their file, data is immutable
+            if (victim.file != null)
+            {
+                victim.data = null;
+                continue;
+            }
+
+            Path file = directory.resolve("shard-" + victim.version);
+            byte[] bytes = Bytes.toArray(victim.data);
+
+            victim.file = file;
+            victim.spill = CompletableFuture.runAsync(() -> {
+                try
+                {
+                    Files.write(file, bytes);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }, ioExecutor);
+
+            // Served from memory until the file is written
+            spilling.add(victim);
+        }
+    }
+
+    private void drainSpills()
+    {
+        Iterator<Entry> iterator = spilling.iterator();
+
+        while (iterator.hasNext())
+        {
+            Entry entry = iterator.next();
+
+            if (!entry.spill.isDone())
+            {
+                continue;
+            }
+
+            iterator.remove();
+
+            if (entry.spill.isCompletedExceptionally() && !entry.discarded)
+            {
+                // Cannot spill, the shard stays in memory over the budget
+                entry.file = null;
+                memoryUsed += entry.size;
+                hot.add(entry);
+                publish(entry);
+            }
+            else
+            {
+                entry.data = null;
+            }
+        }
+    }
+
+    private void discard(Entry entry)
+    {
+        entry.discarded = true;
+        unpublish(entry);
+        release(entry);
+    }
+
+    private void release(Entry entry)
+    {
+        if (hot.remove(entry))
+        {
+            memoryUsed -= entry.size;
+        }
+
+        if (entry.file != null)
+        {
+            Path file = entry.file;
+            CompletableFuture<Void> written = entry.spill == null ? CompletableFuture.completedFuture(null) : entry.spill;
+
+            written.handleAsync((result, failure) -> {
+                try
+                {
+                    return Files.deleteIfExists(file);
+                }
+                catch (IOException e)
+                {
+                    return false;
+                }
+            }, ioExecutor);
+        }
+    }
+
+    private void publish(Entry entry)
+    {
+        entry.published = new PublishedShard(entry.data);
+        published.put(entry.key, entry.published);
+    }
+
+    private void unpublish(Entry entry)
+    {
+        if (entry.published != null)
+        {
+            published.remove(entry.key, entry.published);
+            entry.published = null;
+        }
+    }
+
+    // Reads through the view since the last call
+    private static int directReads(Entry entry)
+    {
+        return entry.published == null ? 0 : entry.published.reads.getAndSet(0);
+    }
+
+    private static void deleteFiles(Path directory) throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            for (Path file : files.toList())
+            {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // Shards of the store which are in memory, safe to read from any thread. Shards which are spilled or not stored are null.
+    public static final class ReadView
+    {
+        private final ConcurrentMap<ShardKey, PublishedShard> published;
+
+        private ReadView(ConcurrentMap<ShardKey, PublishedShard> published)
+        {
+            this.published = published;
+        }
+
+        public List<Byte> get(String artifactId, int shardId)
+        {
+            PublishedShard shard = published.get(new ShardKey(artifactId, shardId));
+
+            if (shard == null)
+            {
+                return null;
+            }
+
+            shard.reads.incrementAndGet();
+            return shard.data;
+        }
+    }
+
+    private record ShardKey(String artifactId, int shardId)
+    {
+    }
+
+    // Data is immutable, reads are counted so the store keeps directly read shards in memory. Compared by identity.
+    private static final class PublishedShard
+    {
+        private final List<Byte> data;
+        private final AtomicInteger reads = new AtomicInteger();
+
+        private PublishedShard(List<Byte> data)
+        {
+            this.data = data;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final ShardKey key;
+        private final int size;
+        private final long version;
+
+        private List<Byte> data;
+        private Path file;
+        private CompletableFuture<Void> spill;
+        private boolean discarded = false;
+
+        private int frequency = 0;
+        private long lastAccess = 0;
+        private PublishedShard published;
+
+        private Entry(ShardKey key, List<Byte> data, long version)
+        {
+            this.key = key;
+            this.size = data.size();
+            this.data = data;
+            this.version = version;
+        }
+    }
+}
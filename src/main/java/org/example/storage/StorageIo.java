@@ -0,0 +1,75 @@
+package org.example.storage;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.ExtensionIdProvider;
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Executor of the file I/O of the warehouses of an actor system, configured by shard-vault.storage-io.
+// Every operation runs on its own virtual thread, so blocking reads and writes take neither dispatcher threads nor a large pool.
+// Operations beyond the limit wait for a permit, which keeps the number of open files bounded.
+public class StorageIo implements Extension, Executor
+{
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+
+    public static class Id extends AbstractExtensionId<StorageIo> implements ExtensionIdProvider
+    {
+        public static final Id INSTANCE = new Id();
+
+        @Override
+        public Id lookup()
+        {
+            return INSTANCE;
+        }
+
+        @Override
+        public StorageIo createExtension(ExtendedActorSystem system)
+        {
+            StorageIo io = new StorageIo(system.settings().config().getInt("shard-vault.storage-io.max-concurrent-operations"));
+            system.registerOnTermination(io.executor::shutdown);
+
+            return io;
+        }
+    }
+
+    public static StorageIo get(ActorSystem system)
+    {
+        return Id.INSTANCE.get(system);
+    }
+
+    public StorageIo(int maxConcurrentOperations)
+    {
+        Preconditions.checkArgument(maxConcurrentOperations > 0, "Maximal number of concurrent operations must be positive");
+        this.permits = new Semaphore(maxConcurrentOperations);
+    }
+
+    @Override
+    public void execute(Runnable operation)
+    {
+        executor.execute(() -> {
+            permits.acquireUninterruptibly();
+
+            try
+            {
+                operation.run();
+            }
+            finally
+            {
+                permits.release();
+            }
+        });
+    }
+
+    public int availablePermits()
+    {
+        return permits.availablePermits();
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.storage;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.file.Path;
+
+// Without a spill directory every shard is kept in memory. Quota limits the stored bytes of a warehouse, in memory and spilled.
+public record StorageSettings(Path spillDirectory, long memoryBudget, long quota)
+{
+    public StorageSettings
+    {
+        Preconditions.checkArgument(memoryBudget >= 0, "Memory budget must be greater or equal 0");
+        Preconditions.checkArgument(quota >= 0, "Quota must be greater or equal 0");
+    }
+
+    public static StorageSettings inMemory()
+    {
+        return new StorageSettings(null, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    public static StorageSettings tiered(Path spillDirectory, long memoryBudget)
+    {
+        Preconditions.checkNotNull(spillDirectory, "Spill directory is required");
+        return new StorageSettings(spillDirectory, memoryBudget, Long.MAX_VALUE);
+    }
+
+    public StorageSettings withQuota(long quota)
+    {
+        return new StorageSettings(spillDirectory, memoryBudget, quota);
+    }
+
+    public boolean isTiered()
+    {
+        return spillDirectory != null;
+    }
+}
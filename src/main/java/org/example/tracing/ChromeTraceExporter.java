@@ -0,0 +1,146 @@
+package org.example.tracing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Writes spans to a file in the Chrome trace event format (JSON array of complete events), readable by Perfetto or chrome://tracing.
+// Spans are written by a background thread, they are dropped rather than blocking actors when the buffer is full.
+class ChromeTraceExporter implements AutoCloseable
+{
+    private final BlockingQueue<Span> buffer;
+    private final BufferedWriter writer;
+    private final Thread thread;
+    private final AtomicLong droppedSpans = new AtomicLong();
+    private volatile boolean closed = false;
+
+    // Every component is shown as a separate thread of the trace
+    private final Map<String, Integer> threads = new HashMap<>();
+    private boolean first = true;
+
+    ChromeTraceExporter(Path file, int bufferSize) throws IOException
+    {
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        this.writer.write("[");
+
+        this.thread = new Thread(this::run, "trace-exporter");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void export(Span span)
+    {
+        if (!buffer.offer(span))
+        {
+            droppedSpans.incrementAndGet();
+        }
+    }
+
+    private void run()
+    {
+        List<Span> spans = new ArrayList<>();
+
+        try
+        {
+            while (!closed)
+            {
+                Span span = buffer.poll(100, TimeUnit.MILLISECONDS);
+
+                if (span == null)
+                {
+                    writer.flush();
+                    continue;
+                }
+
+                spans.add(span);
+                buffer.drainTo(spans);
+                write(spans);
+                spans.clear();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(List<Span> spans) throws IOException
+    {
+        for (Span span : spans)
+        {
+            Integer tid = threads.get(span.component());
+
+            if (tid == null)
+            {
+                tid = threads.size() + 1;
+                threads.put(span.component(), tid);
+                event("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + tid + ",\"args\":{\"name\":\"" + escape(span.component()) + "\"}}");
+            }
+
+            event("{\"name\":\"" + escape(span.name()) + "\",\"cat\":\"shard-vault\",\"ph\":\"X\",\"ts\":" + span.start()
+                    + ",\"dur\":" + Math.max(0, span.end() - span.start()) + ",\"pid\":1,\"tid\":" + tid
+                    + ",\"args\":{\"trace\":\"" + Long.toHexString(span.traceId()) + "\",\"span\":\"" + Long.toHexString(span.spanId())
+                    + "\",\"parent\":\"" + Long.toHexString(span.parentSpanId()) + "\"}}");
+        }
+    }
+
+    private void event(String json) throws IOException
+    {
+        writer.write(first ? "\n" : ",\n");
+        writer.write(json);
+        first = false;
+    }
+
+    private static String escape(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    // Spans still buffered are written before the file is closed
+    @Override
+    public void close()
+    {
+        closed = true;
+
+        try
+        {
+            thread.join();
+
+            List<Span> spans = new ArrayList<>();
+            buffer.drainTo(spans);
+            write(spans);
+
+            if (droppedSpans.get() > 0)
+            {
+                event("{\"name\":\"process_labels\",\"ph\":\"M\",\"pid\":1,\"args\":{\"labels\":\"" + droppedSpans.get() + " spans dropped\"}}");
+            }
+
+            writer.write("\n]\n");
+            writer.close();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
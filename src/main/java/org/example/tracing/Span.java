@@ -0,0 +1,6 @@
+package org.example.tracing;
+
+// Times in microseconds since the epoch, component is the actor which recorded the span (vault, manager, ...)
+public record Span(String name, String component, long traceId, long spanId, long parentSpanId, long start, long end)
+{
+}
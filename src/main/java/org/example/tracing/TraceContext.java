@@ -0,0 +1,19 @@
+package org.example.tracing;
+
+// Carried by requests so the receiver can continue the trace, traceId 0 means the request isn't traced.
+// Time the message was sent (in microseconds, see Tracer.now) measures how long it waited in the mailbox.
+public record TraceContext(long traceId, long parentSpanId, long sentAt)
+{
+    public static final TraceContext NONE = new TraceContext(0, 0, 0);
+
+    // Not traced yet, the vault decides whether to sample the request
+    public static TraceContext untraced()
+    {
+        return new TraceContext(0, 0, Tracer.now());
+    }
+
+    public boolean isTraced()
+    {
+        return traceId != 0;
+    }
+}
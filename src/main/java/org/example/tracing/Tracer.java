@@ -0,0 +1,142 @@
+package org.example.tracing;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.ExtensionIdProvider;
+import akka.event.Logging;
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+// Samples requests and records spans of their hops (mailbox, processing, reply) across actors, configured by shard-vault.tracing.
+// Without an output file nothing is sampled and untraced requests cost a single clock read.
+public class Tracer implements Extension
+{
+    private static final long EPOCH_MICROS = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    private static final long START_NANOS = System.nanoTime();
+
+    private final double sampleRate;
+    private final ChromeTraceExporter exporter;
+
+    public static class Id extends AbstractExtensionId<Tracer> implements ExtensionIdProvider
+    {
+        public static final Id INSTANCE = new Id();
+
+        @Override
+        public Id lookup()
+        {
+            return INSTANCE;
+        }
+
+        @Override
+        public Tracer createExtension(ExtendedActorSystem system)
+        {
+            Config config = system.settings().config().getConfig("shard-vault.tracing");
+            String file = config.getString("file");
+
+            if (file.isEmpty() || config.getDouble("sample-rate") <= 0)
+            {
+                return new Tracer(0, null);
+            }
+
+            try
+            {
+                ChromeTraceExporter exporter = new ChromeTraceExporter(Path.of(file), config.getInt("buffer-size"));
+                system.registerOnTermination(exporter::close);
+
+                return new Tracer(config.getDouble("sample-rate"), exporter);
+            }
+            catch (IOException e)
+            {
+                Logging.getLogger(system, Tracer.class).error(e, "Cannot open trace file [{}], tracing is disabled", file);
+                return new Tracer(0, null);
+            }
+        }
+    }
+
+    public static Tracer get(ActorSystem system)
+    {
+        return Id.INSTANCE.get(system);
+    }
+
+    Tracer(double sampleRate, ChromeTraceExporter exporter)
+    {
+        this.sampleRate = sampleRate;
+        this.exporter = exporter;
+    }
+
+    // Monotonic wall clock time in microseconds
+    public static long now()
+    {
+        return EPOCH_MICROS + (System.nanoTime() - START_NANOS) / 1000;
+    }
+
+    // Continues a traced request or starts a new trace for a sampled one
+    public TraceContext sample(TraceContext received)
+    {
+        if (received.isTraced() || sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)
+        {
+            return received;
+        }
+
+        return new TraceContext(newId(), 0, received.sentAt());
+    }
+
+    public long newSpanId()
+    {
+        return newId();
+    }
+
+    // Context of a message sent from the span
+    public TraceContext child(TraceContext trace, long spanId)
+    {
+        return trace.isTraced() ? new TraceContext(trace.traceId(), spanId, now()) : TraceContext.NONE;
+    }
+
+    // Records the time the request waited in the mailbox and was handled, messages sent by the handler continue the trace
+    public void traced(String name, String component, TraceContext received, Consumer<TraceContext> handler)
+    {
+        if (!received.isTraced())
+        {
+            handler.accept(TraceContext.NONE);
+            return;
+        }
+
+        long start = now();
+        long spanId = newId();
+
+        recordTransit(component + " mailbox", component, received, start);
+        handler.accept(child(received, spanId));
+        record(name, component, received, spanId, start, now());
+    }
+
+    // Time the message spent between being sent and received
+    public void recordTransit(String name, String component, TraceContext trace, long receivedAt)
+    {
+        if (trace.isTraced() && trace.sentAt() > 0)
+        {
+            record(name, component, trace, newId(), trace.sentAt(), receivedAt);
+        }
+    }
+
+    public void record(String name, String component, TraceContext trace, long spanId, long start, long end)
+    {
+        if (trace.isTraced() && exporter != null)
+        {
+            exporter.export(new Span(name, component, trace.traceId(), spanId, trace.parentSpanId(), start, end));
+        }
+    }
+
+    private static long newId()
+    {
+        long id = ThreadLocalRandom.current().nextLong();
+        return id == 0 ? 1 : id;
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.workload;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+// Latencies in microseconds in log-linear buckets: exact below 64 us, then 32 buckets per power of two (about 3% precision).
+// Percentiles are reported as the upper bound of their bucket. Thread safe.
+public class LatencyHistogram
+{
+    private static final int LINEAR = 64;
+    private static final int SUB_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private final long[] counts = new long[LINEAR + (63 - 6) * SUB_BUCKETS];
+    private long totalCount = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    public synchronized void record(long micros)
+    {
+        long value = Math.max(0, micros);
+
+        ++counts[index(value)];
+        ++totalCount;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    public synchronized void add(LatencyHistogram other)
+    {
+        synchronized (other)
+        {
+            for (int i = 0; i < counts.length; ++i)
+            {
+                counts[i] += other.counts[i];
+            }
+
+            totalCount += other.totalCount;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+        }
+    }
+
+    // Copy of the recorded latencies, the histogram starts empty
+    public synchronized LatencyHistogram reset()
+    {
+        LatencyHistogram snapshot = new LatencyHistogram();
+        snapshot.add(this);
+
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        max = 0;
+
+        return snapshot;
+    }
+
+    public synchronized long count()
+    {
+        return totalCount;
+    }
+
+    public synchronized long max()
+    {
+        return max;
+    }
+
+    public synchronized double mean()
+    {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    public synchronized long percentile(double percentile)
+    {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100");
+
+        if (totalCount == 0)
+        {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; ++i)
+        {
+            seen += counts[i];
+
+            if (seen >= rank)
+            {
+                return Math.min(max, upperBound(i));
+            }
+        }
+
+        return max;
+    }
+
+    static int index(long value)
+    {
+        if (value < LINEAR)
+        {
+            return (int) value;
+        }
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+
+        return LINEAR + (magnitude - 6) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long upperBound(int index)
+    {
+        if (index < LINEAR)
+        {
+            return index;
+        }
+
+        int magnitude = (index - LINEAR) / SUB_BUCKETS + 6;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        long subBucket = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
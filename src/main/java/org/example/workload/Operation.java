@@ -0,0 +1,8 @@
+package org.example.workload;
+
+public enum Operation
+{
+    PUT,
+    GET,
+    DELETE
+}
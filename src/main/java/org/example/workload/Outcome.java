@@ -0,0 +1,11 @@
+package org.example.workload;
+
+public enum Outcome
+{
+    OK,
+    NOT_FOUND,
+    // Rejected by admission control of the vault
+    REJECTED,
+    // Failed write or read, conflicting request or no response within the timeout
+    ERROR
+}
@@ -0,0 +1,36 @@
+package org.example.workload;
+
+import java.util.random.RandomGenerator;
+
+// Sizes of written artifacts between the minimal and maximal size
+public enum SizeDistribution
+{
+    FIXED
+    {
+        @Override
+        public int sample(RandomGenerator random, int minSize, int maxSize)
+        {
+            return minSize;
+        }
+    },
+    UNIFORM
+    {
+        @Override
+        public int sample(RandomGenerator random, int minSize, int maxSize)
+        {
+            return random.nextInt(minSize, maxSize + 1);
+        }
+    },
+    // Every order of magnitude is equally likely, so most artifacts are small with a long tail of large ones
+    LOG_UNIFORM
+    {
+        @Override
+        public int sample(RandomGenerator random, int minSize, int maxSize)
+        {
+            double exponent = random.nextDouble(Math.log(minSize), Math.nextUp(Math.log(maxSize)));
+            return (int) Math.min(maxSize, Math.max(minSize, Math.round(Math.exp(exponent))));
+        }
+    };
+
+    public abstract int sample(RandomGenerator random, int minSize, int maxSize);
+}
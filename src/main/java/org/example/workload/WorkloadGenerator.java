@@ -0,0 +1,284 @@
+package org.example.workload;
+
+import akka.actor.ActorRef;
+import akka.pattern.Patterns;
+import com.google.common.primitives.Bytes;
+import org.example.message.ConsistencyLevel;
+import org.example.message.collector.ArtifactResponseFromCollector;
+import org.example.message.vault.AddArtifactToVault;
+import org.example.message.vault.ArtifactAddedToVault;
+import org.example.message.vault.ArtifactDeletedFromVault;
+import org.example.message.vault.ArtifactNotFoundInVault;
+import org.example.message.vault.ArtifactRequestRejected;
+import org.example.message.vault.DeleteArtifactFromVault;
+import org.example.message.vault.GetArtifactFromVault;
+import org.example.message.vault.UpdateArtifactInVault;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-loop load on a vault: request i is due at start + i / rate and its latency is measured from that time, not from when it was
+// sent, so stalls of the vault aren't hidden by requests which couldn't be sent in the meantime (coordinated omission).
+public class WorkloadGenerator
+{
+    private final WorkloadSettings settings;
+    private final ActorRef vault;
+    private final PrintStream out;
+
+    private final Random random;
+    private final ZipfianKeys keys;
+    // Written artifacts share slices of a single buffer, twice the maximal size so slices at different offsets differ
+    private final List<Byte> payload;
+    private final Set<String> stored = ConcurrentHashMap.newKeySet();
+    private final Semaphore inFlight;
+
+    private final Map<Operation, LatencyHistogram> intervalLatencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LatencyHistogram> totalLatencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder[]> intervalOutcomes = new EnumMap<>(Operation.class);
+    private final Map<Operation, long[]> totalOutcomes = new EnumMap<>(Operation.class);
+
+    private long startedAt;
+    private long lastGcCount = 0;
+    private long lastGcTime = 0;
+
+    public WorkloadGenerator(WorkloadSettings settings, ActorRef vault, PrintStream out)
+    {
+        this.settings = settings;
+        this.vault = vault;
+        this.out = out;
+
+        this.random = new Random(settings.seed());
+        this.keys = new ZipfianKeys(settings.numberOfKeys(), settings.zipfExponent());
+        this.inFlight = new Semaphore(settings.concurrency());
+
+        byte[] bytes = new byte[2 * settings.maxSize()];
+        random.nextBytes(bytes);
+        this.payload = Bytes.asList(bytes);
+
+        for (Operation operation : Operation.values())
+        {
+            intervalLatencies.put(operation, new LatencyHistogram());
+            totalLatencies.put(operation, new LatencyHistogram());
+
+            LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+
+            for (int i = 0; i < outcomes.length; ++i)
+            {
+                outcomes[i] = new LongAdder();
+            }
+
+            intervalOutcomes.put(operation, outcomes);
+            totalOutcomes.put(operation, new long[outcomes.length]);
+        }
+    }
+
+    // Writes every key once, so reads find their artifacts from the start
+    public void preload() throws InterruptedException
+    {
+        long start = System.nanoTime();
+
+        for (int rank = 0; rank < keys.numberOfKeys(); ++rank)
+        {
+            inFlight.acquire();
+            String key = key(rank);
+
+            Patterns.ask(vault, new AddArtifactToVault(key, data(), ConsistencyLevel.QUORUM), settings.requestTimeout())
+                    .whenComplete((response, failure) -> {
+                        if (response instanceof ArtifactAddedToVault)
+                        {
+                            stored.add(key);
+                        }
+
+                        inFlight.release();
+                    });
+        }
+
+        awaitInFlight();
+        out.printf("Preloaded %d of %d artifacts in %.1f s%n", stored.size(), keys.numberOfKeys(), (System.nanoTime() - start) / 1e9);
+    }
+
+    public void run() throws InterruptedException
+    {
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "workload-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        printHeader();
+        startedAt = System.nanoTime();
+        long end = startedAt + settings.duration().toNanos();
+        long period = settings.reportInterval().toNanos();
+        reporter.scheduleAtFixedRate(this::report, period, period, TimeUnit.NANOSECONDS);
+
+        for (long request = 0; ; ++request)
+        {
+            long due = startedAt + (long) (request * 1e9 / settings.requestRate());
+
+            if (due >= end)
+            {
+                break;
+            }
+
+            long delay = due - System.nanoTime();
+
+            if (delay > 0)
+            {
+                LockSupport.parkNanos(delay);
+            }
+
+            inFlight.acquire();
+            send(settings.operation(random.nextDouble()), key(keys.next(random)), due);
+        }
+
+        awaitInFlight();
+        reporter.shutdownNow();
+        report();
+        summary();
+    }
+
+    private void send(Operation operation, String key, long due)
+    {
+        Object request = switch (operation)
+        {
+            case PUT -> stored.contains(key) ? new UpdateArtifactInVault(key, data()) : new AddArtifactToVault(key, data());
+            case GET -> new GetArtifactFromVault(key, ConsistencyLevel.QUORUM);
+            case DELETE -> new DeleteArtifactFromVault(key);
+        };
+
+        Patterns.ask(vault, request, settings.requestTimeout()).whenComplete((response, failure) -> {
+            Outcome outcome = outcome(response);
+
+            if (operation == Operation.PUT && outcome == Outcome.OK)
+            {
+                stored.add(key);
+            }
+            else if (operation == Operation.DELETE && (outcome == Outcome.OK || outcome == Outcome.NOT_FOUND))
+            {
+                stored.remove(key);
+            }
+
+            completed(operation, outcome, due);
+        });
+    }
+
+    private static Outcome outcome(Object response)
+    {
+        return switch (response)
+        {
+            case ArtifactAddedToVault ignored -> Outcome.OK;
+            case ArtifactResponseFromCollector ignored -> Outcome.OK;
+            case ArtifactDeletedFromVault ignored -> Outcome.OK;
+            case ArtifactNotFoundInVault ignored -> Outcome.NOT_FOUND;
+            case ArtifactRequestRejected ignored -> Outcome.REJECTED;
+            case null, default -> Outcome.ERROR;
+        };
+    }
+
+    private void completed(Operation operation, Outcome outcome, long due)
+    {
+        intervalLatencies.get(operation).record((System.nanoTime() - due) / 1000);
+        intervalOutcomes.get(operation)[outcome.ordinal()].increment();
+        inFlight.release();
+    }
+
+    private List<Byte> data()
+    {
+        int size = settings.sizeDistribution().sample(random, settings.minSize(), settings.maxSize());
+        int offset = random.nextInt(settings.maxSize());
+
+        return payload.subList(offset, offset + size);
+    }
+
+    private static String key(int rank)
+    {
+        return "artifact-" + rank;
+    }
+
+    private void awaitInFlight() throws InterruptedException
+    {
+        // Unanswered requests are released by their ask timeout
+        inFlight.acquire(settings.concurrency());
+        inFlight.release(settings.concurrency());
+    }
+
+    private void printHeader()
+    {
+        out.printf("%8s %-6s %10s %9s %9s %9s %9s %9s %9s %9s %9s%n", "time", "op", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms",
+                "max ms", "not found", "rejected", "errors");
+    }
+
+    private synchronized void report()
+    {
+        double elapsed = (System.nanoTime() - startedAt) / 1e9;
+        double seconds = settings.reportInterval().toNanos() / 1e9;
+
+        for (Operation operation : Operation.values())
+        {
+            LatencyHistogram latencies = intervalLatencies.get(operation).reset();
+            long[] outcomes = new long[Outcome.values().length];
+
+            for (Outcome outcome : Outcome.values())
+            {
+                outcomes[outcome.ordinal()] = intervalOutcomes.get(operation)[outcome.ordinal()].sumThenReset();
+                totalOutcomes.get(operation)[outcome.ordinal()] += outcomes[outcome.ordinal()];
+            }
+
+            totalLatencies.get(operation).add(latencies);
+            print(String.format("%7.0fs", elapsed), operation, latencies, outcomes, Math.min(seconds, elapsed));
+        }
+
+        var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long gcCount = 0;
+        long gcTime = 0;
+
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcTime += Math.max(0, collector.getCollectionTime());
+        }
+
+        out.printf("%7.0fs heap %d/%d MB, gc %d collections in %d ms%n", elapsed, heap.getUsed() >> 20, heap.getCommitted() >> 20,
+                gcCount - lastGcCount, gcTime - lastGcTime);
+
+        lastGcCount = gcCount;
+        lastGcTime = gcTime;
+    }
+
+    private void summary()
+    {
+        out.println("Total");
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+
+        for (Operation operation : Operation.values())
+        {
+            print("   total", operation, totalLatencies.get(operation), totalOutcomes.get(operation), seconds);
+        }
+    }
+
+    private void print(String time, Operation operation, LatencyHistogram latencies, long[] outcomes, double seconds)
+    {
+        if (latencies.count() == 0)
+        {
+            return;
+        }
+
+        out.printf("%8s %-6s %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9d %9d %9d%n", time, operation, latencies.count() / seconds,
+                latencies.percentile(50) / 1000.0, latencies.percentile(90) / 1000.0, latencies.percentile(99) / 1000.0,
+                latencies.percentile(99.9) / 1000.0, latencies.max() / 1000.0, outcomes[Outcome.NOT_FOUND.ordinal()],
+                outcomes[Outcome.REJECTED.ordinal()], outcomes[Outcome.ERROR.ordinal()]);
+    }
+}
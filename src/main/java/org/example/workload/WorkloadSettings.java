@@ -0,0 +1,94 @@
+package org.example.workload;
+
+import com.google.common.base.Preconditions;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Requests are issued at the given rate regardless of responses, with at most concurrency of them in flight.
+// Ratios of the operations are relative to their sum.
+public record WorkloadSettings(double requestRate, int concurrency, Duration duration, Duration reportInterval, Duration requestTimeout,
+                               double putRatio, double getRatio, double deleteRatio, int numberOfKeys, double zipfExponent,
+                               SizeDistribution sizeDistribution, int minSize, int maxSize, int warehouses, int replicas, int shardSize,
+                               long seed)
+{
+    private static final Set<String> OPTIONS = Set.of("rate", "concurrency", "duration", "report-interval", "timeout", "put", "get",
+            "delete", "keys", "zipf", "sizes", "min-size", "max-size", "warehouses", "replicas", "shard-size", "seed");
+
+    public WorkloadSettings
+    {
+        Preconditions.checkArgument(requestRate > 0, "Request rate must be greater than 0");
+        Preconditions.checkArgument(concurrency >= 1, "Concurrency must be greater or equal 1");
+        Preconditions.checkArgument(putRatio >= 0 && getRatio >= 0 && deleteRatio >= 0, "Ratios must be greater or equal 0");
+        Preconditions.checkArgument(putRatio + getRatio + deleteRatio > 0, "At least one operation must have a positive ratio");
+        Preconditions.checkArgument(minSize >= 1 && minSize <= maxSize, "Sizes must satisfy 1 <= min size <= max size");
+        Preconditions.checkArgument(replicas >= 1 && replicas <= warehouses, "Replicas must be between 1 and the number of warehouses");
+    }
+
+    public static WorkloadSettings defaults()
+    {
+        return new WorkloadSettings(1000, 64, Duration.ofMinutes(1), Duration.ofSeconds(5), Duration.ofSeconds(5), 0.1, 0.85, 0.05,
+                10_000, 0.99, SizeDistribution.LOG_UNIFORM, 1024, 256 * 1024, 10, 3, 64 * 1024, 42);
+    }
+
+    // Options given as --name=value, durations in seconds, e.g. --rate=5000 --duration=3600 --sizes=UNIFORM
+    public static WorkloadSettings parse(String[] args)
+    {
+        Map<String, String> options = new HashMap<>();
+
+        for (String arg : args)
+        {
+            int separator = arg.indexOf('=');
+            Preconditions.checkArgument(arg.startsWith("--") && separator > 2, "Expected --name=value, got %s", arg);
+
+            String name = arg.substring(2, separator);
+            Preconditions.checkArgument(OPTIONS.contains(name), "Unknown option %s, expected one of %s", name, OPTIONS);
+            options.put(name, arg.substring(separator + 1));
+        }
+
+        WorkloadSettings defaults = defaults();
+
+        return new WorkloadSettings(
+                number(options, "rate", defaults.requestRate()),
+                (int) number(options, "concurrency", defaults.concurrency()),
+                seconds(options, "duration", defaults.duration()),
+                seconds(options, "report-interval", defaults.reportInterval()),
+                seconds(options, "timeout", defaults.requestTimeout()),
+                number(options, "put", defaults.putRatio()),
+                number(options, "get", defaults.getRatio()),
+                number(options, "delete", defaults.deleteRatio()),
+                (int) number(options, "keys", defaults.numberOfKeys()),
+                number(options, "zipf", defaults.zipfExponent()),
+                options.containsKey("sizes") ? SizeDistribution.valueOf(options.get("sizes")) : defaults.sizeDistribution(),
+                (int) number(options, "min-size", defaults.minSize()),
+                (int) number(options, "max-size", defaults.maxSize()),
+                (int) number(options, "warehouses", defaults.warehouses()),
+                (int) number(options, "replicas", defaults.replicas()),
+                (int) number(options, "shard-size", defaults.shardSize()),
+                (long) number(options, "seed", defaults.seed()));
+    }
+
+    private static double number(Map<String, String> options, String name, double defaultValue)
+    {
+        return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+    }
+
+    private static Duration seconds(Map<String, String> options, String name, Duration defaultValue)
+    {
+        return options.containsKey(name) ? Duration.ofMillis(Math.round(Double.parseDouble(options.get(name)) * 1000)) : defaultValue;
+    }
+
+    public Operation operation(double random)
+    {
+        double total = putRatio + getRatio + deleteRatio;
+
+        if (random * total < putRatio)
+        {
+            return Operation.PUT;
+        }
+
+        return random * total < putRatio + getRatio ? Operation.GET : Operation.DELETE;
+    }
+}
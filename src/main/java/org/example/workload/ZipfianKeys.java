@@ -0,0 +1,45 @@
+package org.example.workload;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+// Key ranks from 0 to n - 1, rank k is drawn with probability proportional to 1 / (k + 1)^exponent. Exponent 0 is uniform.
+public class ZipfianKeys
+{
+    private final double[] cumulative;
+
+    public ZipfianKeys(int numberOfKeys, double exponent)
+    {
+        Preconditions.checkArgument(numberOfKeys >= 1, "Number of keys must be greater or equal 1");
+        Preconditions.checkArgument(exponent >= 0, "Exponent must be greater or equal 0");
+
+        cumulative = new double[numberOfKeys];
+        double sum = 0;
+
+        for (int rank = 0; rank < numberOfKeys; ++rank)
+        {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+
+        for (int rank = 0; rank < numberOfKeys; ++rank)
+        {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public int numberOfKeys()
+    {
+        return cumulative.length;
+    }
+
+    public int next(RandomGenerator random)
+    {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
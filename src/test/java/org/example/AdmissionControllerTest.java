@@ -0,0 +1,105 @@
+package org.example;
+
+import org.example.admission.AdmissionController;
+import org.example.admission.AdmissionSettings;
+import org.example.admission.Overload;
+import org.example.admission.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControllerTest
+{
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void testTokenBucketRefillsAtRate()
+    {
+        TokenBucket bucket = new TokenBucket(2, 2, 0);
+
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(0));
+        assertEquals(SECOND / 2, bucket.nanosUntilAvailable(0));
+
+        assertTrue(bucket.tryAcquire(SECOND / 2));
+        assertFalse(bucket.isFull(SECOND / 2));
+        assertTrue(bucket.isFull(10 * SECOND));
+    }
+
+    @Test
+    public void testLimitInFlightWork()
+    {
+        AdmissionController<String> admission = new AdmissionController<>(new AdmissionSettings(2, 1, 100, Double.POSITIVE_INFINITY,
+                Integer.MAX_VALUE, Duration.ofMillis(50)));
+
+        assertTrue(admission.admitWrite("Client", 60, 0).isEmpty());
+        assertEquals(Overload.BYTES_IN_FLIGHT, admission.admitWrite("Client", 60, 0).orElseThrow().reason());
+        assertTrue(admission.admitWrite("Client", 40, 0).isEmpty());
+        assertEquals(Overload.WRITES_IN_FLIGHT, admission.admitWrite("Client", 1, 0).orElseThrow().reason());
+
+        admission.writeFinished(60);
+        assertEquals(40, admission.bytesInFlight());
+        assertTrue(admission.admitWrite("Client", 60, 0).isEmpty());
+
+        assertTrue(admission.admitRead("Client", 0).isEmpty());
+        Optional<AdmissionController.Rejection> rejection = admission.admitRead("Client", 0);
+        assertEquals(Overload.READS_IN_FLIGHT, rejection.orElseThrow().reason());
+        assertEquals(Duration.ofMillis(50), rejection.orElseThrow().retryAfter());
+
+        admission.readsFinished(1);
+        assertTrue(admission.admitRead("Client", 0).isEmpty());
+    }
+
+    @Test
+    public void testAdmitWriteLargerThanLimitAlone()
+    {
+        AdmissionController<String> admission = new AdmissionController<>(new AdmissionSettings(10, 10, 100, Double.POSITIVE_INFINITY,
+                Integer.MAX_VALUE, Duration.ofMillis(50)));
+
+        assertTrue(admission.admitWrite("Client", 1000, 0).isEmpty());
+        assertEquals(Overload.BYTES_IN_FLIGHT, admission.admitWrite("Client", 1, 0).orElseThrow().reason());
+    }
+
+    @Test
+    public void testLimitRatePerClient()
+    {
+        AdmissionController<String> admission = new AdmissionController<>(new AdmissionSettings(10, 10, 1000, 1, 1, Duration.ofMillis(50)));
+
+        assertTrue(admission.admitRead("Client1", 0).isEmpty());
+        assertTrue(admission.admitRead("Client2", 0).isEmpty());
+
+        AdmissionController.Rejection rejection = admission.admitRead("Client1", SECOND / 4).orElseThrow();
+        assertEquals(Overload.CLIENT_RATE, rejection.reason());
+        assertEquals(Duration.ofNanos(3 * SECOND / 4), rejection.retryAfter());
+
+        // Rejected requests don't take any capacity
+        assertEquals(2, admission.readsInFlight());
+        assertTrue(admission.admitRead("Client1", SECOND).isEmpty());
+    }
+
+    @Test
+    public void testEvictLeastRecentClient()
+    {
+        AdmissionController<String> admission = new AdmissionController<>(new AdmissionSettings(10, Integer.MAX_VALUE, 1000, 1, 1,
+                Duration.ofMillis(50)));
+
+        assertTrue(admission.admitRead("Client0", 0).isEmpty());
+        assertTrue(admission.admitRead("Client1", 0).isEmpty());
+        assertEquals(Overload.CLIENT_RATE, admission.admitRead("Client1", 0).orElseThrow().reason());
+
+        for (int i = 2; i <= 10_000; ++i)
+        {
+            assertTrue(admission.admitRead("Client" + i, 0).isEmpty());
+        }
+
+        // The recently seen client keeps its empty bucket while the least recent one starts over
+        assertEquals(10_000, admission.trackedClients());
+        assertEquals(Overload.CLIENT_RATE, admission.admitRead("Client1", 0).orElseThrow().reason());
+        assertTrue(admission.admitRead("Client0", 0).isEmpty());
+        assertEquals(10_000, admission.trackedClients());
+    }
+}
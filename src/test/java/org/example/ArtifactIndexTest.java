@@ -0,0 +1,113 @@
+package org.example;
+
+import org.example.metadata.ArtifactIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArtifactIndexTest
+{
+    @Test
+    public void testListAndCountWithPrefix()
+    {
+        ArtifactIndex index = new ArtifactIndex();
+
+        for (String artifactId : List.of("logs/2", "logs/10", "data", "logs/1", "logs", "log"))
+        {
+            assertTrue(index.add(artifactId));
+        }
+
+        assertFalse(index.add("logs/1"));
+        assertEquals(6, index.size());
+
+        assertEquals(List.of("log", "logs", "logs/1", "logs/10", "logs/2"), index.list("log", null, 10));
+        assertEquals(List.of("logs/1", "logs/10", "logs/2"), index.list("logs/", null, 10));
+        assertEquals(3, index.count("logs/"));
+        assertEquals(0, index.count("logs/3"));
+        assertEquals(6, index.count(""));
+
+        // Cursor needn't be in the index
+        assertEquals(List.of("logs/10", "logs/2"), index.list("logs/", "logs/1", 10));
+        assertEquals(List.of("logs/2"), index.list("logs/", "logs/100", 10));
+        assertEquals(List.of("logs/1"), index.list("logs/", null, 1));
+    }
+
+    @Test
+    public void testRemove()
+    {
+        ArtifactIndex index = new ArtifactIndex();
+        index.add("abc");
+        index.add("abd");
+        index.add("ab");
+
+        assertTrue(index.remove("ab"));
+        assertFalse(index.remove("ab"));
+        assertFalse(index.remove("a"));
+        assertTrue(index.remove("abc"));
+
+        assertFalse(index.contains("abc"));
+        assertTrue(index.contains("abd"));
+        assertEquals(List.of("abd"), index.list("a", null, 10));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testPagesMatchSortedSet()
+    {
+        Random random = new Random(0);
+        ArtifactIndex index = new ArtifactIndex();
+        TreeSet<String> expected = new TreeSet<>();
+
+        for (int i = 0; i < 20_000; ++i)
+        {
+            String artifactId = randomId(random);
+
+            if (random.nextInt(3) > 0)
+            {
+                assertEquals(expected.add(artifactId), index.add(artifactId));
+            }
+            else
+            {
+                assertEquals(expected.remove(artifactId), index.remove(artifactId));
+            }
+        }
+
+        for (String prefix : List.of("", "a", "b/", "ab/c"))
+        {
+            List<String> withPrefix = expected.stream().filter(artifactId -> artifactId.startsWith(prefix)).toList();
+            List<String> listed = new ArrayList<>();
+            String cursor = null;
+            List<String> page;
+
+            do
+            {
+                page = index.list(prefix, cursor, 7);
+                listed.addAll(page);
+                cursor = page.isEmpty() ? cursor : page.get(page.size() - 1);
+            }
+            while (page.size() == 7);
+
+            assertEquals(withPrefix, listed);
+            assertEquals(withPrefix.size(), index.count(prefix));
+        }
+    }
+
+    private static String randomId(Random random)
+    {
+        StringBuilder artifactId = new StringBuilder();
+
+        for (int length = random.nextInt(8); length > 0; --length)
+        {
+            artifactId.append("ab/c".charAt(random.nextInt(4)));
+        }
+
+        return artifactId.toString();
+    }
+}
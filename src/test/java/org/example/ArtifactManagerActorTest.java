@@ -6,9 +6,24 @@ import akka.testkit.TestKit;
 import akka.testkit.TestProbe;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.HashCode;
 import org.example.actor.ArtifactManagerActor;
+import org.example.message.ConsistencyLevel;
+import org.example.message.manager.CannotCompleteWrite;
 import org.example.message.manager.DeleteArtifactFromManager;
+import org.example.message.manager.HandOffShard;
+import org.example.message.manager.InconsistencyFound;
+import org.example.message.manager.StartReadRepair;
+import org.example.message.replicator.ReplicasRepaired;
+import org.example.message.vault.ArtifactAddedToVault;
+import org.example.message.vault.ReadRepairRequested;
+import org.example.message.vault.ShardNotAcknowledged;
+import org.example.message.warehouse.AddHintToWarehouse;
+import org.example.message.warehouse.AddShardToWarehouse;
 import org.example.message.warehouse.DeleteShardFromWarehouse;
+import org.example.message.warehouse.ShardStoredInWarehouse;
+import org.example.metadata.ArtifactVersion;
+import org.example.sharding.ShardLayout;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,6 +32,7 @@ import scala.concurrent.duration.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -26,6 +42,7 @@ public class ArtifactManagerActorTest
     private ActorSystem system;
     private final List<TestProbe> testProbes = new ArrayList<>();
     private ActorRef artifactManager;
+    private TestProbe client;
     private final String artifactId = "ArtifactName";
 
     @BeforeEach
@@ -45,7 +62,9 @@ public class ArtifactManagerActorTest
             warehouseAssignment.put(i, testProbe.ref());
         }
 
-        artifactManager = system.actorOf(ArtifactManagerActor.props(artifactId, Collections.nCopies(101, (byte) 1), warehouseAssignment, 5));
+        client = new TestProbe(system);
+        artifactManager = system.actorOf(ArtifactManagerActor.props(artifactId, Collections.nCopies(101, (byte) 1), warehouseAssignment,
+                ShardLayout.of(101, numberOfWarehouses), ConsistencyLevel.ONE, client.ref()));
 
         // Clear waiting messages
         for (TestProbe testProbe : testProbes)
@@ -74,4 +93,89 @@ public class ArtifactManagerActorTest
             }
         }};
     }
+
+    @Test
+    public void testWriteAcknowledged()
+    {
+        for (int shardId = 0; shardId < testProbes.size(); ++shardId)
+        {
+            client.expectNoMessage(Duration.create(10, TimeUnit.MILLISECONDS));
+            testProbes.get(shardId).reply(new ShardStoredInWarehouse(shardId, artifactId, shardId));
+        }
+
+        ArtifactAddedToVault message = client.expectMsgClass(ArtifactAddedToVault.class);
+        assertEquals(artifactId, message.artifactId());
+    }
+
+    @Test
+    public void testWriteNotAcknowledged()
+    {
+        testProbes.getFirst().reply(new ShardStoredInWarehouse(0, artifactId, 0));
+
+        CannotCompleteWrite message = client.expectMsgClass(Duration.create(6, TimeUnit.SECONDS), CannotCompleteWrite.class);
+        assertEquals(artifactId, message.artifactId());
+    }
+
+    @Test
+    public void testHandOffUnacknowledgedShard()
+    {
+        TestProbe vault = new TestProbe(system);
+        TestProbe owner = new TestProbe(system);
+        TestProbe substitute = new TestProbe(system);
+        TestProbe hintedClient = new TestProbe(system);
+
+        Multimap<Integer, ActorRef> warehouseAssignment = ArrayListMultimap.create();
+        warehouseAssignment.put(0, owner.ref());
+        List<Byte> data = Collections.nCopies(10, (byte) 1);
+
+        vault.childActorOf(ArtifactManagerActor.props("Hinted", data, warehouseAssignment, ShardLayout.of(10, 1), ConsistencyLevel.ALL, hintedClient.ref()));
+
+        owner.expectMsgClass(AddShardToWarehouse.class);
+
+        ShardNotAcknowledged notAcknowledged = vault.expectMsgClass(Duration.create(2, TimeUnit.SECONDS), ShardNotAcknowledged.class);
+        assertEquals(0, notAcknowledged.shardId());
+        assertEquals(owner.ref(), notAcknowledged.warehouse());
+
+        vault.reply(new HandOffShard(0, 7, owner.ref(), substitute.ref()));
+
+        AddHintToWarehouse hint = substitute.expectMsgClass(AddHintToWarehouse.class);
+        assertEquals(data, hint.data());
+        assertEquals(7, hint.ownerWarehouseId());
+
+        // The substitute counts as the missing replica
+        substitute.reply(new ShardStoredInWarehouse(8, "Hinted", 0));
+        hintedClient.expectMsgClass(ArtifactAddedToVault.class);
+    }
+
+    @Test
+    public void testRepairOnlyDivergentReplicas()
+    {
+        TestProbe vault = new TestProbe(system);
+        List<TestProbe> replicas = List.of(new TestProbe(system), new TestProbe(system), new TestProbe(system));
+
+        Multimap<Integer, ActorRef> warehouseAssignment = ArrayListMultimap.create();
+        replicas.forEach(replica -> warehouseAssignment.put(0, replica.ref()));
+        List<Byte> data = Collections.nCopies(10, (byte) 1);
+
+        ActorRef manager = vault.childActorOf(ArtifactManagerActor.props("Repaired", warehouseAssignment,
+                new ArtifactVersion(1, ShardLayout.of(10, 1), new int[]{0}, new HashCode[0])));
+
+        // Inconsistencies found by concurrent reads are merged into a single repair
+        manager.tell(new InconsistencyFound(0, data, Set.of(replicas.get(0).ref())), ActorRef.noSender());
+        manager.tell(new InconsistencyFound(0, data, Set.of(replicas.get(1).ref())), ActorRef.noSender());
+
+        assertEquals(new ReadRepairRequested("Repaired", 0), vault.expectMsgClass(ReadRepairRequested.class));
+        vault.expectNoMessage(Duration.create(100, TimeUnit.MILLISECONDS));
+
+        vault.reply(new StartReadRepair(0));
+
+        for (TestProbe replica : replicas.subList(0, 2))
+        {
+            assertEquals(data, replica.expectMsgClass(AddShardToWarehouse.class).data());
+            replica.reply(new ShardStoredInWarehouse(0, "Repaired", 0));
+        }
+
+        replicas.get(2).expectNoMessage(Duration.create(100, TimeUnit.MILLISECONDS));
+        assertEquals(new ReplicasRepaired("Repaired", 0, 2), vault.expectMsgClass(ReplicasRepaired.class));
+    }
 }
@@ -0,0 +1,86 @@
+package org.example;
+
+import org.example.buffer.CompositeByteList;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompositeByteListTest
+{
+    private static final List<Byte> FLAT = List.of((byte) 0, (byte) 1, (byte) 2, (byte) 3, (byte) 4, (byte) 5, (byte) 6);
+
+    private static CompositeByteList composite()
+    {
+        return CompositeByteList.of(List.of(List.of((byte) 0, (byte) 1, (byte) 2), List.of(), List.of((byte) 3), List.of((byte) 4, (byte) 5, (byte) 6)));
+    }
+
+    @Test
+    public void testRandomAndSequentialAccess()
+    {
+        CompositeByteList data = composite();
+
+        assertEquals(7, data.size());
+        assertEquals(3, data.numberOfSegments());
+        assertEquals(FLAT, data);
+        assertEquals(FLAT.hashCode(), data.hashCode());
+
+        for (int index = 0; index < FLAT.size(); ++index)
+        {
+            assertEquals(FLAT.get(index), data.get(index));
+        }
+
+        assertThrows(IndexOutOfBoundsException.class, () -> data.get(7));
+        assertThrows(UnsupportedOperationException.class, () -> data.add((byte) 7));
+    }
+
+    @Test
+    public void testSubListSharesSegments()
+    {
+        CompositeByteList data = composite();
+
+        CompositeByteList slice = data.subList(2, 6);
+        assertEquals(FLAT.subList(2, 6), slice);
+        assertEquals(3, slice.numberOfSegments());
+        assertEquals(FLAT.subList(3, 5), slice.subList(1, 3));
+        assertSame(CompositeByteList.EMPTY, data.subList(4, 4));
+        assertSame(data, data.subList(0, 7));
+    }
+
+    @Test
+    public void testInputStream() throws IOException
+    {
+        try (InputStream stream = composite().asInputStream())
+        {
+            assertEquals(0, stream.read());
+
+            byte[] buffer = new byte[4];
+            assertEquals(4, stream.read(buffer, 0, 4));
+            assertArrayEquals(new byte[]{1, 2, 3, 4}, buffer);
+
+            assertEquals(2, stream.available());
+            assertArrayEquals(new byte[]{5, 6}, stream.readAllBytes());
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    public void testChannel() throws IOException
+    {
+        try (ReadableByteChannel channel = composite().asChannel())
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(5);
+            assertEquals(5, channel.read(buffer));
+            assertArrayEquals(new byte[]{0, 1, 2, 3, 4}, buffer.array());
+
+            buffer.clear();
+            assertEquals(2, channel.read(buffer));
+            assertEquals(-1, channel.read(buffer));
+        }
+    }
+}
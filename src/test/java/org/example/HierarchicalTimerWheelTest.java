@@ -0,0 +1,61 @@
+package org.example;
+
+import org.example.expiry.HierarchicalTimerWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HierarchicalTimerWheelTest
+{
+    @Test
+    public void testExpireInOrder()
+    {
+        HierarchicalTimerWheel<String> wheel = new HierarchicalTimerWheel<>(1000, 6, 4, 0);
+
+        wheel.schedule("Late", 70_000);
+        wheel.schedule("Early", 2_000);
+        wheel.schedule("Overdue", 0);
+
+        assertEquals(List.of("Overdue"), wheel.advance(1_000));
+        assertEquals(List.of("Early"), wheel.advance(69_999));
+        assertEquals(List.of("Late"), wheel.advance(70_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testNeverExpireBeforeDeadline()
+    {
+        Random random = new Random(0);
+        long start = 1_000_000;
+        HierarchicalTimerWheel<Long> wheel = new HierarchicalTimerWheel<>(1000, 4, 3, start);
+
+        // Deadlines beyond the range of the wheel (4096 ticks) wrap around
+        for (int i = 0; i < 10_000; ++i)
+        {
+            long deadline = start + random.nextLong(10_000_000);
+            wheel.schedule(deadline, deadline);
+        }
+
+        List<Long> expired = new ArrayList<>();
+        long now = start;
+
+        while (wheel.size() > 0)
+        {
+            now += 1 + random.nextInt(5_000);
+
+            for (long deadline : wheel.advance(now))
+            {
+                assertTrue(deadline <= now);
+                assertTrue(deadline > now - 7_000);
+                expired.add(deadline);
+            }
+        }
+
+        assertEquals(10_000, expired.size());
+    }
+}
@@ -0,0 +1,110 @@
+package org.example;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.typesafe.config.ConfigFactory;
+import org.example.actor.VaultManagerActor;
+import org.example.actor.VaultSettings;
+import org.example.http.VaultHttpServer;
+import org.example.sharding.ShardSizing;
+import org.example.workload.LatencyHistogram;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Throughput and latency of uploads, downloads and range reads through the HTTP front-end of a local vault.
+// Every client reuses its keep-alive connection. Run with the test classpath:
+// java -cp ... org.example.HttpLoadBenchmark [clients] [requests per client] [artifact size]
+public class HttpLoadBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 256 * 1024;
+
+        ActorSystem system = ActorSystem.create("Benchmark", ConfigFactory.parseString("akka.loglevel = ERROR").withFallback(ConfigFactory.load()));
+        ActorRef vault = system.actorOf(VaultManagerActor.props(new ShardSizing(64 * 1024, 4 * 1024, 512 * 1024), 3, 6, VaultSettings.defaults()),
+                "Vault");
+
+        try (VaultHttpServer server = VaultHttpServer.start(system, vault, new InetSocketAddress("127.0.0.1", 0));
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            String base = "http://127.0.0.1:" + server.address().getPort() + VaultHttpServer.PATH;
+            byte[] body = new byte[size];
+            new Random(1).nextBytes(body);
+
+            for (String operation : List.of("PUT", "GET", "RANGE"))
+            {
+                LatencyHistogram latencies = new LatencyHistogram();
+                List<Future<Integer>> failures = new ArrayList<>();
+                long start = System.nanoTime();
+
+                for (int client = 0; client < clients; ++client)
+                {
+                    int id = client;
+                    failures.add(executor.submit(() -> run(operation, base + "Artifact-" + id + "-", body, requests, latencies)));
+                }
+
+                int failed = 0;
+
+                for (Future<Integer> future : failures)
+                {
+                    failed += future.get();
+                }
+
+                double seconds = (System.nanoTime() - start) / 1e9;
+                long transferred = operation.equals("RANGE") ? 4096L * latencies.count() : (long) size * latencies.count();
+
+                System.out.printf("%-5s %8.0f req/s %8.1f MiB/s  p50 %6d us  p99 %6d us  max %6d us  failed %d%n", operation,
+                        latencies.count() / seconds, transferred / seconds / (1 << 20), latencies.percentile(50), latencies.percentile(99),
+                        latencies.max(), failed);
+            }
+        }
+
+        system.terminate();
+    }
+
+    private static int run(String operation, String prefix, byte[] body, int requests, LatencyHistogram latencies) throws Exception
+    {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        int failed = 0;
+
+        for (int i = 0; i < requests; ++i)
+        {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(prefix + i));
+
+            switch (operation)
+            {
+                case "PUT" -> request.PUT(HttpRequest.BodyPublishers.ofByteArray(body));
+                case "GET" -> request.GET();
+                default ->
+                {
+                    int offset = ThreadLocalRandom.current().nextInt(body.length - 4096);
+                    request.GET().header("Range", "bytes=" + offset + "-" + (offset + 4095));
+                }
+            }
+
+            long start = System.nanoTime();
+            HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            latencies.record((System.nanoTime() - start) / 1000);
+
+            if (response.statusCode() >= 300)
+            {
+                ++failed;
+            }
+        }
+
+        return failed;
+    }
+}
@@ -0,0 +1,88 @@
+package org.example;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.event.Logging;
+import akka.pattern.Patterns;
+import com.typesafe.config.ConfigFactory;
+import org.example.actor.VaultManagerActor;
+import org.example.actor.VaultSettings;
+import org.example.message.ConsistencyLevel;
+import org.example.message.vault.AddArtifactToVault;
+import org.example.message.vault.GetArtifactFromVault;
+import org.example.sharding.ShardSizing;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Bytes allocated by all threads per write and read of a small artifact at the INFO log level, with log events discarded.
+// Run with the test classpath: java -cp ... org.example.LoggingAllocationBenchmark [operations]
+public class LoggingAllocationBenchmark
+{
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    // Receives log events without formatting or printing them
+    public static class DiscardingLogger extends AbstractActor
+    {
+        @Override
+        public Receive createReceive()
+        {
+            return receiveBuilder()
+                    .match(Logging.InitializeLogger.class, message -> getSender().tell(Logging.loggerInitialized(), getSelf()))
+                    .matchAny(message -> {})
+                    .build();
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        ActorSystem system = ActorSystem.create("Benchmark", ConfigFactory.parseString("""
+                akka.loglevel = INFO
+                akka.stdout-loglevel = OFF
+                akka.loggers = ["org.example.LoggingAllocationBenchmark$DiscardingLogger"]
+                """).withFallback(ConfigFactory.load()));
+
+        ActorRef vault = system.actorOf(VaultManagerActor.props(new ShardSizing(64, 16, 1024), 3, 4, VaultSettings.defaults()), "Vault");
+        List<Byte> data = Collections.nCopies(1024, (byte) 1);
+
+        // Warm up, then measure
+        run(vault, data, "Warmup-", operations);
+        long[] allocated = run(vault, data, "Artifact-", operations);
+
+        System.out.printf("Allocated per write: %d bytes%n", allocated[0] / operations);
+        System.out.printf("Allocated per read: %d bytes%n", allocated[1] / operations);
+
+        system.terminate();
+    }
+
+    private static long[] run(ActorRef vault, List<Byte> data, String prefix, int operations) throws Exception
+    {
+        long start = allocatedBytes();
+
+        for (int i = 0; i < operations; ++i)
+        {
+            Patterns.ask(vault, new AddArtifactToVault(prefix + i, data, ConsistencyLevel.ALL), TIMEOUT).toCompletableFuture().get();
+        }
+
+        long written = allocatedBytes();
+
+        for (int i = 0; i < operations; ++i)
+        {
+            Patterns.ask(vault, new GetArtifactFromVault(prefix + i, ConsistencyLevel.QUORUM), TIMEOUT).toCompletableFuture().get();
+        }
+
+        return new long[]{written - start, allocatedBytes() - written};
+    }
+
+    private static long allocatedBytes()
+    {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return Arrays.stream(threads.getThreadAllocatedBytes(threads.getAllThreadIds())).filter(bytes -> bytes > 0).sum();
+    }
+}
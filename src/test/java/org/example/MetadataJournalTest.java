@@ -0,0 +1,224 @@
+package org.example;
+
+import com.google.common.hash.HashCode;
+import org.example.metadata.ArtifactVersion;
+import org.example.metadata.MetadataEvent;
+import org.example.metadata.MetadataJournal;
+import org.example.metadata.VaultMetadata;
+import org.example.sharding.ShardLayout;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetadataJournalTest
+{
+    @TempDir
+    private Path directory;
+
+    private final int[][] placement = {{0, 1, 2}, {1, 2, 3}};
+
+    @Test
+    public void testRecoverFromJournal() throws IOException
+    {
+        try (MetadataJournal journal = new MetadataJournal(directory, 1000))
+        {
+            journal.recover();
+            journal.append(new MetadataEvent.WarehouseAdded(0, false));
+            journal.append(new MetadataEvent.ArtifactCreated("Artifact1", ShardLayout.of(10, 2), placement));
+            journal.append(new MetadataEvent.ArtifactCreated("Artifact2", ShardLayout.of(20, 2), placement));
+            journal.append(new MetadataEvent.ArtifactDeleted("Artifact1"));
+            journal.append(new MetadataEvent.ReplicaMoved("Artifact2", 0, 1, 4));
+        }
+
+        VaultMetadata metadata = recover();
+
+        assertEquals(List.of(0), List.copyOf(metadata.warehouses()));
+        assertFalse(metadata.containsArtifact("Artifact1"));
+        assertTrue(metadata.containsArtifact("Artifact2"));
+        assertEquals(ShardLayout.of(20, 2), metadata.artifact("Artifact2").layout());
+        assertArrayEquals(new int[]{0, 4, 2}, metadata.artifact("Artifact2").replicas(0));
+        assertArrayEquals(new int[]{1, 2, 3}, metadata.artifact("Artifact2").replicas(1));
+    }
+
+    @Test
+    public void testRecoverFromSnapshotAndTail() throws IOException
+    {
+        try (MetadataJournal journal = new MetadataJournal(directory, 10))
+        {
+            VaultMetadata metadata = journal.recover();
+
+            for (int i = 0; i < 25; ++i)
+            {
+                MetadataEvent event = new MetadataEvent.ArtifactCreated("Artifact" + i, ShardLayout.of(10, 2), placement);
+                metadata.apply(event);
+                journal.append(event);
+
+                if (journal.isSnapshotDue())
+                {
+                    journal.snapshot(metadata.copy()).join();
+                }
+            }
+        }
+
+        // Only the latest snapshot and the segments after it are kept
+        try (Stream<Path> files = Files.list(directory))
+        {
+            assertEquals(List.of("journal-21.log", "snapshot-20"), files.map(path -> path.getFileName().toString()).sorted().toList());
+        }
+
+        VaultMetadata metadata = recover();
+
+        assertEquals(25, metadata.numberOfArtifacts());
+        assertTrue(metadata.containsArtifact("Artifact0"));
+        assertTrue(metadata.containsArtifact("Artifact24"));
+    }
+
+    @Test
+    public void testSyncAppendedEventsTogether() throws IOException
+    {
+        try (MetadataJournal journal = new MetadataJournal(directory, 1000))
+        {
+            journal.recover();
+            journal.append(new MetadataEvent.ArtifactCreated("Artifact1", ShardLayout.of(10, 2), placement));
+            journal.append(new MetadataEvent.ArtifactCreated("Artifact2", ShardLayout.of(10, 2), placement));
+
+            // Appended events are buffered until the sync writes them at once
+            assertEquals(0, Files.size(directory.resolve("journal-1.log")));
+            journal.sync();
+
+            try (MetadataJournal recovered = new MetadataJournal(directory, 1000))
+            {
+                VaultMetadata metadata = recovered.recover();
+
+                assertTrue(metadata.containsArtifact("Artifact1"));
+                assertTrue(metadata.containsArtifact("Artifact2"));
+            }
+        }
+    }
+
+    @Test
+    public void testIgnoreTornRecord() throws IOException
+    {
+        try (MetadataJournal journal = new MetadataJournal(directory, 1000))
+        {
+            journal.recover();
+            journal.append(new MetadataEvent.ArtifactCreated("Artifact1", ShardLayout.of(10, 2), placement));
+            journal.append(new MetadataEvent.ArtifactCreated("Artifact2", ShardLayout.of(10, 2), placement));
+        }
+
+        Path segment = directory.resolve("journal-1.log");
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 3));
+
+        VaultMetadata metadata = recover();
+
+        assertTrue(metadata.containsArtifact("Artifact1"));
+        assertFalse(metadata.containsArtifact("Artifact2"));
+    }
+
+    @Test
+    public void testAppendAfterTornRecord() throws IOException
+    {
+        try (MetadataJournal journal = new MetadataJournal(directory, 1000))
+        {
+            journal.recover();
+            journal.append(new MetadataEvent.ArtifactCreated("Artifact1", ShardLayout.of(10, 2), placement));
+            journal.append(new MetadataEvent.ArtifactCreated("Artifact2", ShardLayout.of(10, 2), placement));
+        }
+
+        Path segment = directory.resolve("journal-1.log");
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 3));
+
+        try (MetadataJournal journal = new MetadataJournal(directory, 1000))
+        {
+            assertTrue(journal.recover().containsArtifact("Artifact1"));
+            journal.append(new MetadataEvent.ArtifactCreated("Artifact3", ShardLayout.of(10, 2), placement));
+        }
+
+        // Events written after the first recovery survive the next one
+        VaultMetadata metadata = recover();
+
+        assertTrue(metadata.containsArtifact("Artifact1"));
+        assertFalse(metadata.containsArtifact("Artifact2"));
+        assertTrue(metadata.containsArtifact("Artifact3"));
+
+        try (MetadataJournal journal = new MetadataJournal(directory, 1000))
+        {
+            journal.recover();
+            journal.append(new MetadataEvent.ArtifactDeleted("Artifact1"));
+        }
+
+        assertEquals(List.of("Artifact3"), recover().artifacts().stream().map(artifact -> artifact.artifactId()).toList());
+    }
+
+    @Test
+    public void testRecoverVersions() throws IOException
+    {
+        HashCode[] digests = {HashCode.fromInt(1), HashCode.fromInt(2)};
+
+        try (MetadataJournal journal = new MetadataJournal(directory, 1000))
+        {
+            VaultMetadata metadata = journal.recover();
+
+            List<MetadataEvent> events = List.of(
+                    new MetadataEvent.ArtifactCreated("Artifact1", ShardLayout.of(10, 2), placement, digests, 0),
+                    new MetadataEvent.VersionAdded("Artifact1", new ArtifactVersion(2, ShardLayout.of(10, 2), new int[]{0, 2}, digests),
+                            Map.of(2, new int[]{3, 4, 5}), 2),
+                    new MetadataEvent.VersionAdded("Artifact1", new ArtifactVersion(3, ShardLayout.of(12, 2), new int[]{3, 2}, digests),
+                            Map.of(3, new int[]{0, 1, 2}), 2));
+
+            for (MetadataEvent event : events)
+            {
+                metadata.apply(event);
+                journal.append(event);
+            }
+
+            journal.snapshot(metadata.copy()).join();
+        }
+
+        VaultMetadata metadata = recover();
+        var artifact = metadata.artifact("Artifact1");
+
+        // The first version is beyond the retention, its shard 1 isn't referenced anymore
+        assertEquals(List.of(2, 3), artifact.versions().stream().map(ArtifactVersion::version).toList());
+        assertEquals(ShardLayout.of(12, 2), artifact.layout());
+        assertArrayEquals(new int[]{3, 2}, artifact.latest().shardIds());
+        assertFalse(artifact.containsShard(1));
+        assertArrayEquals(new int[]{3, 4, 5}, artifact.replicas(2));
+        assertEquals(4, artifact.nextShardId());
+        assertEquals(digests[1], artifact.latest().digests()[1]);
+    }
+
+    @Test
+    public void testRecoverDigestsOfFirstVersion() throws IOException
+    {
+        HashCode[] digests = {HashCode.fromInt(1), HashCode.fromInt(2)};
+
+        try (MetadataJournal journal = new MetadataJournal(directory, 1000))
+        {
+            journal.recover();
+            journal.append(new MetadataEvent.ArtifactCreated("Artifact1", ShardLayout.of(10, 2), placement, new HashCode[2], 0));
+            journal.append(new MetadataEvent.DigestsAdded("Artifact1", 1, digests));
+        }
+
+        assertArrayEquals(digests, recover().artifact("Artifact1").latest().digests());
+    }
+
+    private VaultMetadata recover() throws IOException
+    {
+        try (MetadataJournal journal = new MetadataJournal(directory, 1000))
+        {
+            return journal.recover();
+        }
+    }
+}
@@ -7,6 +7,9 @@ import akka.testkit.TestProbe;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import org.example.actor.ShardCollectorActor;
+import org.example.message.ConsistencyLevel;
+import org.example.message.ReadMode;
+import org.example.message.collector.ArtifactRangeResponseFromCollector;
 import org.example.message.collector.ArtifactResponseFromCollector;
 import org.example.message.collector.CannotCompleteQuorum;
 import org.example.message.collector.CannotRecoverArtifact;
@@ -14,6 +17,7 @@ import org.example.message.manager.InconsistencyFound;
 import org.example.message.warehouse.GetShardFromWarehouse;
 import org.example.message.warehouse.ShardNotFoundInWarehouse;
 import org.example.message.warehouse.ShardResponseFromWarehouse;
+import org.example.tracing.TraceContext;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,6 +26,7 @@ import scala.concurrent.duration.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -71,7 +76,7 @@ public class ShardCollectorActorTest
     @Test
     public void testAskForShards()
     {
-        system.actorOf(ShardCollectorActor.props(artifactId, warehouses, artifactManager.ref(), originalSender.ref()));
+        system.actorOf(ShardCollectorActor.props(artifactId, numberOfShards, warehouses, ConsistencyLevel.ALL, artifactManager.ref(), originalSender.ref()));
 
         for (int shardId : testProbes.keySet())
         {
@@ -90,7 +95,7 @@ public class ShardCollectorActorTest
         List<Byte> expectedData = new ArrayList<>();
         for (int i = 0; i < numberOfShards; ++i) expectedData.add((byte) 1);
 
-        system.actorOf(ShardCollectorActor.props(artifactId, warehouses, artifactManager.ref(), originalSender.ref()));
+        system.actorOf(ShardCollectorActor.props(artifactId, numberOfShards, warehouses, ConsistencyLevel.ALL, artifactManager.ref(), originalSender.ref()));
 
         for (int shardId : testProbes.keySet())
         {
@@ -109,7 +114,7 @@ public class ShardCollectorActorTest
     @Test
     public void testBuildArtifactFailed()
     {
-        system.actorOf(ShardCollectorActor.props(artifactId, warehouses, artifactManager.ref(), originalSender.ref()));
+        system.actorOf(ShardCollectorActor.props(artifactId, numberOfShards, warehouses, ConsistencyLevel.ALL, artifactManager.ref(), originalSender.ref()));
 
         for (int shardId : testProbes.keySet())
         {
@@ -127,7 +132,7 @@ public class ShardCollectorActorTest
     @Test
     public void testQuorum()
     {
-        system.actorOf(ShardCollectorActor.props(artifactId, warehouses, artifactManager.ref(), originalSender.ref()));
+        system.actorOf(ShardCollectorActor.props(artifactId, numberOfShards, warehouses, ConsistencyLevel.QUORUM, artifactManager.ref(), originalSender.ref()));
 
         List<Byte> expectedData = new ArrayList<>();
         for (int i = 0; i < numberOfShards; ++i) expectedData.add((byte) 1);
@@ -163,7 +168,7 @@ public class ShardCollectorActorTest
     @Test
     public void testTieInQuorum()
     {
-        system.actorOf(ShardCollectorActor.props(artifactId, warehouses, artifactManager.ref(), originalSender.ref()));
+        system.actorOf(ShardCollectorActor.props(artifactId, numberOfShards, warehouses, ConsistencyLevel.ALL, artifactManager.ref(), originalSender.ref()));
 
         for (int shardId : testProbes.keySet())
         {
@@ -183,10 +188,54 @@ public class ShardCollectorActorTest
         assertEquals(artifactId, message.artifactId());
     }
 
+    @Test
+    public void testQuorumNotReachedWithSilentReplica()
+    {
+        system.actorOf(ShardCollectorActor.props(artifactId, numberOfShards, warehouses, ConsistencyLevel.ALL, artifactManager.ref(), originalSender.ref()));
+
+        // Every replica but the last one returns the same version, which falls short of all of them once the collection times out
+        for (int shardId : testProbes.keySet())
+        {
+            List<TestProbe> probes = testProbes.get(shardId).stream().toList();
+
+            for (int i = 0; i < probes.size() - 1; ++i)
+            {
+                probes.get(i).receiveOne(Duration.create(100, TimeUnit.MILLISECONDS));
+                probes.get(i).reply(new ShardResponseFromWarehouse(artifactId, shardId, List.of((byte) 1)));
+            }
+        }
+
+        CannotCompleteQuorum message = originalSender.expectMsgClass(CannotCompleteQuorum.class);
+        assertEquals(artifactId, message.artifactId());
+    }
+
+    @Test
+    public void testQuorumNotReachedWithSingleHolder()
+    {
+        system.actorOf(ShardCollectorActor.props(artifactId, numberOfShards, warehouses, ConsistencyLevel.QUORUM, artifactManager.ref(), originalSender.ref()));
+
+        // Only the first replica of every shard holds it, the others answer right away without it
+        for (int shardId : testProbes.keySet())
+        {
+            List<TestProbe> probes = testProbes.get(shardId).stream().toList();
+
+            for (int i = 0; i < probes.size(); ++i)
+            {
+                probes.get(i).receiveOne(Duration.create(100, TimeUnit.MILLISECONDS));
+                probes.get(i).reply(i == 0
+                        ? new ShardResponseFromWarehouse(artifactId, shardId, List.of((byte) 1))
+                        : new ShardNotFoundInWarehouse(artifactId, shardId));
+            }
+        }
+
+        CannotCompleteQuorum message = originalSender.expectMsgClass(Duration.create(500, TimeUnit.MILLISECONDS), CannotCompleteQuorum.class);
+        assertEquals(artifactId, message.artifactId());
+    }
+
     @Test
     public void testInconsistencyFound()
     {
-        system.actorOf(ShardCollectorActor.props(artifactId, warehouses, artifactManager.ref(), originalSender.ref()));
+        system.actorOf(ShardCollectorActor.props(artifactId, numberOfShards, warehouses, ConsistencyLevel.QUORUM, artifactManager.ref(), originalSender.ref()));
 
         List<Byte> expectedData = List.of((byte) 1);
 
@@ -217,7 +266,122 @@ public class ShardCollectorActorTest
         {
             InconsistencyFound message = artifactManager.expectMsgClass(InconsistencyFound.class);
             assertEquals(expectedData, message.correctData());
+
+            // Only the replica which returned other data is reported
+            assertEquals(Set.of(testProbes.get(message.shardId()).iterator().next().ref()), message.divergentReplicas());
+        }
+
+    }
+
+    @Test
+    public void testCollectRange()
+    {
+        List<Integer> shardIds = List.of(1, 2);
+
+        // Shards are 3 bytes long, the range starts at the second byte of shard 1
+        system.actorOf(ShardCollectorActor.propsForRange(artifactId, shardIds, warehouses, ConsistencyLevel.ALL, 4, 1, 4, artifactManager.ref(), originalSender.ref()));
+
+        for (int shardId : testProbes.keySet())
+        {
+            for (TestProbe testProbe : testProbes.get(shardId))
+            {
+                if (!shardIds.contains(shardId))
+                {
+                    testProbe.expectNoMessage(Duration.create(100, TimeUnit.MILLISECONDS));
+                    continue;
+                }
+
+                testProbe.expectMsgClass(Duration.create(200, TimeUnit.MILLISECONDS), GetShardFromWarehouse.class);
+                testProbe.reply(new ShardResponseFromWarehouse(artifactId, shardId, List.of((byte) (3 * shardId), (byte) (3 * shardId + 1), (byte) (3 * shardId + 2))));
+            }
         }
 
+        ArtifactRangeResponseFromCollector message = originalSender.expectMsgClass(ArtifactRangeResponseFromCollector.class);
+        assertEquals(artifactId, message.artifactId());
+        assertEquals(4, message.offset());
+        assertEquals(List.of((byte) 4, (byte) 5, (byte) 6, (byte) 7), message.data());
+    }
+
+    @Test
+    public void testReadConsistencyOne()
+    {
+        system.actorOf(ShardCollectorActor.props(artifactId, numberOfShards, warehouses, ConsistencyLevel.ONE, artifactManager.ref(), originalSender.ref()));
+
+        List<Byte> expectedData = Collections.nCopies(numberOfShards, (byte) 1);
+
+        // Only the first replica of every shard answers
+        for (int shardId : testProbes.keySet())
+        {
+            TestProbe testProbe = testProbes.get(shardId).stream().toList().getFirst();
+            testProbe.receiveOne(Duration.create(100, TimeUnit.MILLISECONDS));
+            testProbe.reply(new ShardResponseFromWarehouse(artifactId, shardId, List.of((byte) 1)));
+        }
+
+        ArtifactResponseFromCollector message = originalSender.expectMsgClass(Duration.create(500, TimeUnit.MILLISECONDS), ArtifactResponseFromCollector.class);
+        assertEquals(expectedData, message.data());
+    }
+
+    @Test
+    public void testHedgedRead()
+    {
+        system.actorOf(ShardCollectorActor.props(artifactId, List.of(0), warehouses, ConsistencyLevel.QUORUM, ReadMode.HEDGED, TraceContext.NONE,
+                artifactManager.ref(), originalSender.ref()));
+
+        // Only a quorum of the replicas is asked at first
+        List<TestProbe> asked = new ArrayList<>();
+        TestProbe notAsked = null;
+
+        for (TestProbe testProbe : testProbes.get(0))
+        {
+            if (testProbe.receiveOne(Duration.create(100, TimeUnit.MILLISECONDS)) != null)
+            {
+                asked.add(testProbe);
+            }
+            else
+            {
+                notAsked = testProbe;
+            }
+        }
+
+        assertEquals(2, asked.size());
+
+        // One of them never answers, so the remaining replica is asked once the hedge delay elapses
+        asked.getFirst().reply(new ShardResponseFromWarehouse(artifactId, 0, List.of((byte) 1)));
+        notAsked.expectMsgClass(Duration.create(1, TimeUnit.SECONDS), GetShardFromWarehouse.class);
+        notAsked.reply(new ShardResponseFromWarehouse(artifactId, 0, List.of((byte) 1)));
+
+        ArtifactResponseFromCollector message = originalSender.expectMsgClass(ArtifactResponseFromCollector.class);
+        assertEquals(List.of((byte) 1), message.data());
+    }
+
+    @Test
+    public void testQuorumOfLargeShards()
+    {
+        system.actorOf(ShardCollectorActor.props(artifactId, numberOfShards, warehouses, ConsistencyLevel.QUORUM, artifactManager.ref(), originalSender.ref()));
+
+        // Digests of shards this large are computed off the collector, the small invalid version is counted before the valid ones resolve the shard
+        List<Byte> validData = Collections.nCopies(100_000, (byte) 1);
+        List<Byte> invalidData = Collections.nCopies(10, (byte) 2);
+
+        for (int shardId : testProbes.keySet())
+        {
+            List<TestProbe> probes = testProbes.get(shardId).stream().toList();
+
+            for (int i = 0; i < probes.size(); ++i)
+            {
+                TestProbe testProbe = probes.get(i);
+                testProbe.receiveOne(Duration.create(100, TimeUnit.MILLISECONDS));
+                testProbe.reply(new ShardResponseFromWarehouse(artifactId, shardId, i == 0 ? invalidData : validData));
+            }
+        }
+
+        ArtifactResponseFromCollector message = originalSender.expectMsgClass(ArtifactResponseFromCollector.class);
+        assertEquals(numberOfShards * validData.size(), message.data().size());
+        assertEquals(validData, message.data().subList(0, validData.size()));
+
+        for (int shardId : testProbes.keySet())
+        {
+            assertEquals(validData, artifactManager.expectMsgClass(InconsistencyFound.class).correctData());
+        }
     }
 }
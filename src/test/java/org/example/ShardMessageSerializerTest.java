@@ -0,0 +1,94 @@
+package org.example;
+
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.testkit.TestKit;
+import akka.testkit.TestProbe;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import org.example.message.collector.ArtifactRangeResponseFromCollector;
+import org.example.message.vault.AttachWarehouseToVault;
+import org.example.message.warehouse.AddShardToWarehouse;
+import org.example.message.warehouse.ShardStoredInWarehouse;
+import org.example.message.warehouse.StatusResponseOfWarehouse;
+import org.example.remote.ShardMessageSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import scala.concurrent.duration.Duration;
+
+import java.io.NotSerializableException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ShardMessageSerializerTest
+{
+    private ActorSystem system;
+    private ShardMessageSerializer serializer;
+
+    @BeforeEach
+    public void setup()
+    {
+        system = ActorSystem.create("TestSystem");
+        serializer = new ShardMessageSerializer((ExtendedActorSystem) system);
+    }
+
+    @AfterEach
+    public void cleanup()
+    {
+        TestKit.shutdownActorSystem(system, Duration.create(5, TimeUnit.SECONDS), false);
+    }
+
+    private Object roundTrip(Object message) throws NotSerializableException
+    {
+        return serializer.fromBinary(serializer.toBinary(message), serializer.manifest(message));
+    }
+
+    @Test
+    public void testShardMessages() throws NotSerializableException
+    {
+        AddShardToWarehouse addShard = new AddShardToWarehouse("Artefakt-ż", 3, List.of((byte) 1, (byte) -2, (byte) 127));
+        ShardStoredInWarehouse shardStored = new ShardStoredInWarehouse(2, "Artefakt", 3);
+        ArtifactRangeResponseFromCollector rangeResponse = new ArtifactRangeResponseFromCollector("Artefakt", 10, List.of());
+
+        assertEquals(addShard, roundTrip(addShard));
+        assertEquals(shardStored, roundTrip(shardStored));
+        assertEquals(rangeResponse, roundTrip(rangeResponse));
+    }
+
+    @Test
+    public void testStatusResponse() throws NotSerializableException
+    {
+        Multimap<String, Integer> shards = ArrayListMultimap.create();
+        shards.putAll("A", List.of(0, 1, 2));
+        shards.put("B", 4);
+
+        StatusResponseOfWarehouse status = new StatusResponseOfWarehouse(7, shards);
+
+        assertEquals(status, roundTrip(status));
+    }
+
+    @Test
+    public void testAttachWarehouse() throws NotSerializableException
+    {
+        TestProbe warehouse = new TestProbe(system);
+        AttachWarehouseToVault attach = new AttachWarehouseToVault(5, warehouse.ref());
+
+        assertEquals(attach, roundTrip(attach));
+    }
+
+    @Test
+    public void testWriteIntoBuffer() throws NotSerializableException
+    {
+        AddShardToWarehouse addShard = new AddShardToWarehouse("Artefakt", 0, List.of((byte) 5, (byte) 6));
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        serializer.toBinary(addShard, buffer);
+        buffer.flip();
+
+        assertEquals(addShard, serializer.fromBinary(buffer, serializer.manifest(addShard)));
+    }
+}
@@ -0,0 +1,77 @@
+package org.example;
+
+import org.example.sharding.ShardLayout;
+import org.example.sharding.ShardSizing;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ShardSizingTest
+{
+    private final ShardSizing shardSizing = new ShardSizing(100, 10, 1000);
+
+    @Test
+    public void testShardCountScalesWithSize()
+    {
+        assertEquals(1, shardSizing.numberOfShards(100));
+        assertEquals(2, shardSizing.numberOfShards(101));
+        assertEquals(100, shardSizing.numberOfShards(10_000));
+    }
+
+    @Test
+    public void testSmallArtifactIsNotSplitBelowMinimalSize()
+    {
+        assertEquals(1, shardSizing.numberOfShards(0));
+        assertEquals(1, shardSizing.numberOfShards(5));
+        assertEquals(1, shardSizing.numberOfShards(19));
+
+        // Two shards would be 3 and 2 bytes long
+        assertEquals(1, new ShardSizing(4, 3, 16).numberOfShards(5));
+    }
+
+    @Test
+    public void testMaximalSizeWinsOverMinimalSize()
+    {
+        ShardSizing sizing = new ShardSizing(4, 3, 4);
+
+        assertEquals(2, sizing.numberOfShards(5));
+    }
+
+    @Test
+    public void testLayoutCoversWholeArtifact()
+    {
+        ShardLayout layout = shardSizing.layoutFor(1001);
+
+        assertEquals(11, layout.numberOfShards());
+        assertEquals(0, layout.start(0));
+        assertEquals(1001, layout.end(layout.numberOfShards() - 1));
+        assertEquals(1001, layout.size());
+
+        for (int shardId = 0; shardId < layout.numberOfShards() - 1; ++shardId)
+        {
+            assertEquals(layout.end(shardId), layout.start(shardId + 1));
+        }
+    }
+
+    @Test
+    public void testAppendFillsTailShard()
+    {
+        ShardLayout full = shardSizing.layoutForAppend(ShardLayout.of(1000, 10), 50);
+        assertEquals(ShardLayout.fromOffsets(new int[]{0, 100, 200, 300, 400, 500, 600, 700, 800, 900, 1000, 1050}), full);
+
+        ShardLayout partial = shardSizing.layoutForAppend(ShardLayout.fromOffsets(new int[]{0, 100, 150}), 230);
+        assertEquals(ShardLayout.fromOffsets(new int[]{0, 100, 200, 300, 380}), partial);
+
+        assertEquals(ShardLayout.fromOffsets(new int[]{0, 5}), shardSizing.layoutForAppend(ShardLayout.of(0, 1), 5));
+        assertEquals(partial, shardSizing.layoutForAppend(partial, 0));
+    }
+
+    @Test
+    public void testInvalidBounds()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new ShardSizing(10, 20, 100));
+        assertThrows(IllegalArgumentException.class, () -> new ShardSizing(200, 20, 100));
+        assertThrows(IllegalArgumentException.class, () -> new ShardSizing(10, 0, 100));
+    }
+}
@@ -0,0 +1,177 @@
+package org.example;
+
+import org.example.storage.ShardStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardStoreTest
+{
+    private static List<Byte> shard(int value)
+    {
+        return Collections.nCopies(100, (byte) value);
+    }
+
+    private static long numberOfFiles(Path directory) throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void testSpillLeastFrequentlyUsed(@TempDir Path directory) throws IOException
+    {
+        try (ShardStore store = ShardStore.tiered(directory, 250, Runnable::run))
+        {
+            store.put("A", 0, shard(0));
+            store.put("A", 1, shard(1));
+
+            store.get("A", 0);
+            store.get("A", 0);
+
+            store.put("A", 2, shard(2));
+
+            assertNotNull(store.get("A", 0));
+            assertNull(store.get("A", 1));
+            assertEquals(1, numberOfFiles(directory));
+            assertEquals(200, store.memoryUsed());
+            assertEquals(3, store.numberOfShards());
+        }
+    }
+
+    @Test
+    public void testLoadAndAdmitSpilledShard(@TempDir Path directory) throws IOException
+    {
+        try (ShardStore store = ShardStore.tiered(directory, 100, Runnable::run))
+        {
+            store.put("A", 0, shard(0));
+            store.put("A", 1, shard(1));
+
+            assertNull(store.get("A", 0));
+            assertNull(store.get("A", 0));
+
+            long version = store.version("A", 0);
+            List<Byte> data = store.load("A", 0).join();
+            assertEquals(shard(0), data);
+
+            // Accessed more often than the shard in memory
+            store.admit("A", 0, version, data);
+
+            assertEquals(shard(0), store.get("A", 0));
+            assertNull(store.get("A", 1));
+        }
+    }
+
+    @Test
+    public void testRemoveSpilledShard(@TempDir Path directory) throws IOException
+    {
+        try (ShardStore store = ShardStore.tiered(directory, 0, Runnable::run))
+        {
+            store.put("A", 0, shard(0));
+            assertEquals(1, numberOfFiles(directory));
+
+            assertTrue(store.remove("A", 0));
+            assertFalse(store.containsArtifact("A"));
+            assertEquals(0, numberOfFiles(directory));
+        }
+    }
+
+    @Test
+    public void testReadView(@TempDir Path directory) throws IOException
+    {
+        try (ShardStore store = ShardStore.tiered(directory, 250, Runnable::run))
+        {
+            ShardStore.ReadView view = store.readView();
+
+            store.put("A", 0, shard(0));
+            store.put("A", 1, shard(1));
+
+            // Reads through the view count as accesses when the store picks shards to spill
+            assertEquals(shard(0), view.get("A", 0));
+            assertEquals(shard(0), view.get("A", 0));
+
+            store.put("A", 2, shard(2));
+
+            assertEquals(shard(0), view.get("A", 0));
+            assertNull(view.get("A", 1));
+            assertEquals(200, store.memoryUsed());
+
+            store.put("A", 2, shard(3));
+            assertEquals(shard(3), view.get("A", 2));
+
+            store.removeArtifact("A");
+            assertNull(view.get("A", 0));
+            assertNull(view.get("A", 2));
+        }
+    }
+
+    @Test
+    public void testTombstoneAndSweep(@TempDir Path directory) throws IOException
+    {
+        try (ShardStore store = ShardStore.tiered(directory, 150, Runnable::run))
+        {
+            long artifact = ShardStore.ARTIFACT_OVERHEAD + 2;
+            long entry = ShardStore.SHARD_OVERHEAD + 100;
+
+            store.put("A", 0, shard(0));
+            store.put("A", 1, shard(1));
+            assertEquals(1, numberOfFiles(directory));
+
+            // Deleted shards disappear at once, their memory and files are kept until swept
+            assertEquals(2, store.tombstone("A"));
+            assertFalse(store.containsArtifact("A"));
+            assertNull(store.readView().get("A", 0));
+            assertEquals(0, store.numberOfShards());
+            assertEquals(2 * entry, store.storedBytes());
+            assertEquals(1, numberOfFiles(directory));
+
+            // Artifact added again is independent of its tombstones
+            store.put("A", 0, shard(5));
+            assertEquals(shard(5), store.get("A", 0));
+
+            assertEquals(1, store.sweep(1));
+            assertTrue(store.hasTombstones());
+            assertEquals(1, store.sweep(10));
+            assertFalse(store.hasTombstones());
+
+            assertEquals(artifact + entry, store.storedBytes());
+            assertEquals(100, store.memoryUsed());
+            assertEquals(0, numberOfFiles(directory));
+            assertEquals(shard(5), store.readView().get("A", 0));
+        }
+    }
+
+    @Test
+    public void testStoredBytesAccounting()
+    {
+        ShardStore store = ShardStore.inMemory();
+        long artifact = ShardStore.ARTIFACT_OVERHEAD + 2;
+        long entry = ShardStore.SHARD_OVERHEAD + 100;
+
+        assertEquals(artifact + entry, store.growth("A", 0, 100));
+
+        store.put("A", 0, shard(0));
+        store.put("A", 1, shard(1));
+        assertEquals(artifact + 2 * entry, store.storedBytes());
+
+        // Overwriting a shard only accounts for the difference in size
+        assertEquals(50, store.growth("A", 0, 150));
+        assertEquals(entry, store.growth("A", 2, 100));
+
+        assertTrue(store.remove("A", 0));
+        assertEquals(artifact + entry, store.storedBytes());
+
+        store.removeArtifact("A");
+        assertEquals(0, store.storedBytes());
+    }
+}
@@ -0,0 +1,138 @@
+package org.example;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.TestKit;
+import akka.testkit.TestProbe;
+import org.example.actor.WarehouseActor;
+import org.example.message.warehouse.*;
+import org.example.storage.StorageIo;
+import org.example.storage.StorageSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import scala.concurrent.duration.Duration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StorageIoTest
+{
+    private ActorSystem system;
+
+    @BeforeEach
+    public void setup()
+    {
+        system = ActorSystem.create("TestSystem");
+    }
+
+    @AfterEach
+    public void cleanup()
+    {
+        TestKit.shutdownActorSystem(system, Duration.create(5, TimeUnit.SECONDS), false);
+    }
+
+    @Test
+    public void testBoundConcurrentOperations() throws InterruptedException
+    {
+        StorageIo io = new StorageIo(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(8);
+
+        for (int i = 0; i < 8; ++i)
+        {
+            io.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+
+                try
+                {
+                    blocked.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+
+                running.decrementAndGet();
+                finished.countDown();
+            });
+        }
+
+        // Operations beyond the limit wait for a permit
+        Thread.sleep(200);
+        assertEquals(2, running.get());
+        assertEquals(0, io.availablePermits());
+
+        blocked.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testPipeLoadedShardToWarehouse(@TempDir Path directory) throws IOException, InterruptedException
+    {
+        List<Byte> data = Collections.nCopies(100, (byte) 1);
+        Path spillDirectory = directory.resolve("warehouse-0");
+
+        // Nothing fits in memory, every shard is spilled and read back from its file
+        ActorRef warehouse = system.actorOf(WarehouseActor.props(0, new TestProbe(system).ref(), StorageSettings.tiered(directory, 0)));
+
+        new TestKit(system)
+        {{
+            warehouse.tell(new AddShardToWarehouse("ArtifactName", 0, data), getRef());
+            expectMsgClass(ShardStoredInWarehouse.class);
+
+            awaitSpilled(spillDirectory, data.size());
+
+            warehouse.tell(new GetShardFromWarehouse("ArtifactName", 0), getRef());
+            assertEquals(data, expectMsgClass(ShardResponseFromWarehouse.class).data());
+
+            // A failed read is piped back as well and answered as a missing shard
+            try (Stream<Path> files = Files.list(spillDirectory))
+            {
+                for (Path file : files.toList())
+                {
+                    Files.delete(file);
+                }
+            }
+
+            warehouse.tell(new GetShardFromWarehouse("ArtifactName", 0), getRef());
+            assertEquals(new ShardNotFoundInWarehouse("ArtifactName", 0), expectMsgClass(ShardNotFoundInWarehouse.class));
+        }};
+    }
+
+    private static void awaitSpilled(Path spillDirectory, long size) throws IOException, InterruptedException
+    {
+        for (int attempt = 0; attempt < 50; ++attempt)
+        {
+            if (Files.isDirectory(spillDirectory))
+            {
+                try (Stream<Path> files = Files.list(spillDirectory))
+                {
+                    if (files.anyMatch(file -> file.toFile().length() == size))
+                    {
+                        // Spill completes once the written file is closed
+                        Thread.sleep(100);
+                        return;
+                    }
+                }
+            }
+
+            Thread.sleep(20);
+        }
+
+        fail("Shard not spilled to " + spillDirectory);
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import akka.actor.ActorSystem;
+import akka.testkit.TestKit;
+import com.typesafe.config.ConfigFactory;
+import org.example.tracing.TraceContext;
+import org.example.tracing.Tracer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import scala.concurrent.duration.Duration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TracerTest
+{
+    private static ActorSystem system(Path file, double sampleRate)
+    {
+        return ActorSystem.create("TestSystem", ConfigFactory.parseString("shard-vault.tracing { file = \"" + file + "\", sample-rate = "
+                + sampleRate + " }").withFallback(ConfigFactory.load()));
+    }
+
+    @Test
+    public void testExportSampledSpans(@TempDir Path directory) throws IOException
+    {
+        Path file = directory.resolve("trace.json");
+        ActorSystem system = system(file, 1.0);
+        Tracer tracer = Tracer.get(system);
+
+        TraceContext trace = tracer.sample(TraceContext.untraced());
+        assertTrue(trace.isTraced());
+        assertEquals(trace, tracer.sample(trace));
+
+        tracer.traced("vault get", "vault", trace, child -> {
+            assertEquals(trace.traceId(), child.traceId());
+            tracer.traced("manager get", "manager", child, grandchild -> {});
+        });
+
+        TestKit.shutdownActorSystem(system, Duration.create(5, TimeUnit.SECONDS), false);
+
+        String json = Files.readString(file).strip();
+        assertTrue(json.startsWith("[") && json.endsWith("]"));
+        assertTrue(json.contains("\"name\":\"vault mailbox\""));
+        assertTrue(json.contains("\"name\":\"vault get\""));
+        assertTrue(json.contains("\"name\":\"manager mailbox\""));
+        assertTrue(json.contains("\"name\":\"manager get\""));
+        assertTrue(json.contains("\"trace\":\"" + Long.toHexString(trace.traceId()) + "\""));
+    }
+
+    @Test
+    public void testNotSampledWithoutRate(@TempDir Path directory)
+    {
+        ActorSystem system = system(directory.resolve("trace.json"), 0);
+        Tracer tracer = Tracer.get(system);
+
+        TraceContext trace = tracer.sample(TraceContext.untraced());
+        assertFalse(trace.isTraced());
+        assertEquals(TraceContext.NONE, tracer.child(trace, tracer.newSpanId()));
+
+        TestKit.shutdownActorSystem(system, Duration.create(5, TimeUnit.SECONDS), false);
+        assertFalse(Files.exists(directory.resolve("trace.json")));
+    }
+}
@@ -0,0 +1,140 @@
+package org.example;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import org.example.actor.VaultManagerActor;
+import org.example.actor.VaultSettings;
+import org.example.http.VaultHttpServer;
+import org.example.sharding.ShardSizing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VaultHttpServerTest
+{
+    private ActorSystem system;
+    private VaultHttpServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void setup() throws IOException
+    {
+        system = ActorSystem.create("TestSystem");
+        ActorRef vault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 4, VaultSettings.defaults()));
+
+        // Small chunks, so uploads and downloads span several of them
+        server = new VaultHttpServer(system, vault, new InetSocketAddress("127.0.0.1", 0), 1000, 10_000, Duration.ofSeconds(5), 0);
+    }
+
+    @AfterEach
+    public void cleanup()
+    {
+        server.close();
+        TestKit.shutdownActorSystem(system);
+    }
+
+    private HttpRequest.Builder request(String artifactId)
+    {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.address().getPort() + VaultHttpServer.PATH + artifactId));
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder request) throws IOException, InterruptedException
+    {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    @Test
+    public void testUploadAndDownloadInChunks() throws IOException, InterruptedException
+    {
+        byte[] data = new byte[4500];
+        new Random(1).nextBytes(data);
+
+        assertEquals(201, send(request("Artifact").PUT(HttpRequest.BodyPublishers.ofByteArray(data))).statusCode());
+
+        HttpResponse<byte[]> response = send(request("Artifact").GET());
+        assertEquals(200, response.statusCode());
+        assertArrayEquals(data, response.body());
+
+        HttpResponse<byte[]> head = send(request("Artifact").method("HEAD", HttpRequest.BodyPublishers.noBody()));
+        assertEquals(200, head.statusCode());
+        assertEquals("4500", head.headers().firstValue("Content-Length").orElseThrow());
+        assertEquals(response.headers().firstValue("ETag"), head.headers().firstValue("ETag"));
+    }
+
+    @Test
+    public void testRangeRequests() throws IOException, InterruptedException
+    {
+        byte[] data = new byte[2500];
+        new Random(2).nextBytes(data);
+        send(request("Artifact").PUT(HttpRequest.BodyPublishers.ofByteArray(data)));
+
+        HttpResponse<byte[]> range = send(request("Artifact").GET().header("Range", "bytes=900-2099"));
+        assertEquals(206, range.statusCode());
+        assertEquals("bytes 900-2099/2500", range.headers().firstValue("Content-Range").orElseThrow());
+        assertArrayEquals(Arrays.copyOfRange(data, 900, 2100), range.body());
+
+        HttpResponse<byte[]> suffix = send(request("Artifact").GET().header("Range", "bytes=-10"));
+        assertArrayEquals(Arrays.copyOfRange(data, 2490, 2500), suffix.body());
+
+        assertEquals(416, send(request("Artifact").GET().header("Range", "bytes=2500-")).statusCode());
+    }
+
+    @Test
+    public void testReplaceAndDelete() throws IOException, InterruptedException
+    {
+        send(request("Artifact").PUT(HttpRequest.BodyPublishers.ofByteArray(new byte[1500])));
+        assertEquals(204, send(request("Artifact").PUT(HttpRequest.BodyPublishers.ofByteArray(new byte[]{1, 2, 3}))).statusCode());
+        assertArrayEquals(new byte[]{1, 2, 3}, send(request("Artifact").GET()).body());
+
+        assertEquals(204, send(request("Artifact").DELETE()).statusCode());
+        assertEquals(404, send(request("Artifact").GET()).statusCode());
+        assertEquals(404, send(request("Artifact").DELETE()).statusCode());
+    }
+
+    @Test
+    public void testRefuseUploadOverMaxSize() throws IOException, InterruptedException
+    {
+        assertEquals(201, send(request("Artifact").PUT(HttpRequest.BodyPublishers.ofByteArray(new byte[10_000]))).statusCode());
+
+        // Refused by its declared length as well as by the bytes read of a body without one
+        assertEquals(413, send(request("Artifact").PUT(HttpRequest.BodyPublishers.ofByteArray(new byte[10_001]))).statusCode());
+        assertEquals(413, send(request("Artifact").PUT(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(new byte[10_001]))))
+                .statusCode());
+
+        HttpResponse<byte[]> head = send(request("Artifact").method("HEAD", HttpRequest.BodyPublishers.noBody()));
+        assertEquals("10000", head.headers().firstValue("Content-Length").orElseThrow());
+        assertEquals("\"1\"", head.headers().firstValue("ETag").orElseThrow());
+    }
+
+    @Test
+    public void testReplaceInChunksAsOneVersion() throws IOException, InterruptedException
+    {
+        byte[] data = new byte[3500];
+        new Random(3).nextBytes(data);
+
+        HttpResponse<byte[]> created = send(request("Artifact").PUT(HttpRequest.BodyPublishers.ofByteArray(new byte[4500])));
+        assertEquals("\"1\"", created.headers().firstValue("ETag").orElseThrow());
+
+        HttpResponse<byte[]> replaced = send(request("Artifact").PUT(HttpRequest.BodyPublishers.ofByteArray(data)));
+        assertEquals(204, replaced.statusCode());
+        assertEquals("\"2\"", replaced.headers().firstValue("ETag").orElseThrow());
+
+        HttpResponse<byte[]> response = send(request("Artifact").GET());
+        assertEquals("\"2\"", response.headers().firstValue("ETag").orElseThrow());
+        assertArrayEquals(data, response.body());
+    }
+}
@@ -4,24 +4,43 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.pattern.Patterns;
 import akka.testkit.TestKit;
+import akka.testkit.TestProbe;
 import akka.util.Timeout;
 import org.example.actor.VaultManagerActor;
+import org.example.admission.AdmissionSettings;
+import org.example.admission.Overload;
+import org.example.actor.VaultSettings;
+import org.example.message.ConsistencyLevel;
+import org.example.message.collector.ArtifactRangeResponseFromCollector;
 import org.example.message.collector.ArtifactResponseFromCollector;
+import org.example.message.manager.CannotCompleteWrite;
 import org.example.message.vault.*;
+import org.example.message.warehouse.AddShardToWarehouse;
+import org.example.message.warehouse.DeleteArtifactsFromWarehouse;
+import org.example.message.warehouse.GetStatusOfWarehouse;
+import org.example.message.warehouse.ShardStoredInWarehouse;
+import org.example.message.warehouse.StatusResponseOfWarehouse;
+import org.example.sharding.ShardSizing;
+import org.example.tracing.TraceContext;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import scala.concurrent.duration.Duration;
 import scala.jdk.javaapi.FutureConverters;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class VaultManagerActorTest
 {
@@ -32,7 +51,7 @@ public class VaultManagerActorTest
     public void setup()
     {
         system = ActorSystem.create("TestSystem");
-        vault = system.actorOf(VaultManagerActor.props(3, 3, 10));
+        vault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 10));
     }
 
     @AfterEach
@@ -61,6 +80,30 @@ public class VaultManagerActorTest
         }};
     }
 
+    @Test
+    public void testAddArtifactAcknowledged() throws ExecutionException, InterruptedException
+    {
+        String artifactId = "ArtifactName";
+        List<Byte> data = Collections.nCopies(500, (byte) 100);
+
+        new TestKit(system)
+        {{
+            CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(vault, new AddArtifactToVault(artifactId, data, ConsistencyLevel.ALL),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            Object response = future.toCompletableFuture().get();
+
+            assertInstanceOf(ArtifactAddedToVault.class, response);
+            assertEquals(artifactId, ((ArtifactAddedToVault) response).artifactId());
+
+            future = FutureConverters.asJava(Patterns.ask(vault, new GetArtifactFromVault(artifactId, ConsistencyLevel.ONE),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            response = future.toCompletableFuture().get();
+
+            assertInstanceOf(ArtifactResponseFromCollector.class, response);
+            assertEquals(data, ((ArtifactResponseFromCollector) response).data());
+        }};
+    }
+
     @Test
     public void testRetrieveNonExistingArtifact() throws ExecutionException, InterruptedException
     {
@@ -197,4 +240,448 @@ public class VaultManagerActorTest
             assertEquals(data, artifactResponse.data());
         }};
     }
+
+    @Test
+    public void testRetrieveArtifactRange() throws ExecutionException, InterruptedException
+    {
+        String artifactId = "ArtifactName";
+        List<Byte> data = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) data.add((byte) i);
+        vault.tell(new AddArtifactToVault(artifactId, data), ActorRef.noSender());
+
+        new TestKit(system)
+        {{
+            // Range crossing the boundary between the first and the second shard
+            CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(vault, new GetArtifactRangeFromVault(artifactId, 95, 10),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            Object response = future.toCompletableFuture().get();
+
+            assertInstanceOf(ArtifactRangeResponseFromCollector.class, response);
+            ArtifactRangeResponseFromCollector rangeResponse = (ArtifactRangeResponseFromCollector) response;
+            assertEquals(artifactId, rangeResponse.artifactId());
+            assertEquals(95, rangeResponse.offset());
+            assertEquals(data.subList(95, 105), rangeResponse.data());
+
+            // Range exceeding the artifact is trimmed to its end
+            future = FutureConverters.asJava(Patterns.ask(vault, new GetArtifactRangeFromVault(artifactId, 450, 100),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            response = future.toCompletableFuture().get();
+
+            assertInstanceOf(ArtifactRangeResponseFromCollector.class, response);
+            assertEquals(data.subList(450, 500), ((ArtifactRangeResponseFromCollector) response).data());
+        }};
+    }
+
+    @Test
+    public void testRetrieveInvalidArtifactRange() throws ExecutionException, InterruptedException
+    {
+        String artifactId = "ArtifactName";
+        List<Byte> data = Collections.nCopies(500, (byte) 100);
+        vault.tell(new AddArtifactToVault(artifactId, data), ActorRef.noSender());
+
+        new TestKit(system)
+        {{
+            CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(vault, new GetArtifactRangeFromVault(artifactId, 501, 10),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            Object response = future.toCompletableFuture().get();
+
+            assertInstanceOf(InvalidArtifactRange.class, response);
+            InvalidArtifactRange rangeResponse = (InvalidArtifactRange) response;
+            assertEquals(artifactId, rangeResponse.artifactId());
+            assertEquals(500, rangeResponse.artifactSize());
+        }};
+    }
+
+    @Test
+    public void testRecoverMetadataAfterRestart(@TempDir Path metadataDirectory) throws ExecutionException, InterruptedException
+    {
+        VaultSettings settings = VaultSettings.defaults().withMetadataDirectory(metadataDirectory);
+        ActorRef durableVault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 10, settings));
+
+        List<Byte> data = Collections.nCopies(500, (byte) 100);
+
+        new TestKit(system)
+        {{
+            CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(durableVault, new AddArtifactToVault("Kept", data, ConsistencyLevel.ALL),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertInstanceOf(ArtifactAddedToVault.class, future.toCompletableFuture().get());
+
+            durableVault.tell(new AddArtifactToVault("Deleted", data), ActorRef.noSender());
+            durableVault.tell(new DeleteArtifactFromVault("Deleted"), ActorRef.noSender());
+
+            watch(durableVault);
+            system.stop(durableVault);
+            expectTerminated(durableVault, Duration.create(5, TimeUnit.SECONDS));
+
+            ActorRef recoveredVault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 10, settings));
+
+            future = FutureConverters.asJava(Patterns.ask(recoveredVault, new AddArtifactToVault("Kept", data),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertInstanceOf(ArtifactAlreadyExistsInVault.class, future.toCompletableFuture().get());
+
+            future = FutureConverters.asJava(Patterns.ask(recoveredVault, new DeleteArtifactFromVault("Deleted"),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertInstanceOf(ArtifactNotFoundInVault.class, future.toCompletableFuture().get());
+        }};
+    }
+
+    @Test
+    public void testRestoreReplicasOfFailedWarehouse() throws ExecutionException, InterruptedException
+    {
+        ActorRef smallVault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 4), "SmallVault");
+        List<Byte> data = Collections.nCopies(500, (byte) 100);
+
+        new TestKit(system)
+        {{
+            CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(smallVault, new AddArtifactToVault("ArtifactName", data, ConsistencyLevel.ALL),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertInstanceOf(ArtifactAddedToVault.class, future.toCompletableFuture().get());
+
+            ActorRef failedWarehouse = system.actorSelection("/user/SmallVault/Warehouse-0").resolveOne(java.time.Duration.ofSeconds(1)).toCompletableFuture().get();
+            watch(failedWarehouse);
+            system.stop(failedWarehouse);
+            expectTerminated(failedWarehouse, Duration.create(5, TimeUnit.SECONDS));
+
+            // Every shard gets its third replica back on the remaining warehouses
+            awaitAssert(() -> {
+                int storedReplicas = 0;
+
+                for (int warehouseId = 1; warehouseId < 4; ++warehouseId)
+                {
+                    try
+                    {
+                        ActorRef warehouse = system.actorSelection("/user/SmallVault/Warehouse-" + warehouseId).resolveOne(java.time.Duration.ofSeconds(1)).toCompletableFuture().get();
+                        Object status = Patterns.ask(warehouse, new GetStatusOfWarehouse(), java.time.Duration.ofSeconds(1)).toCompletableFuture().get();
+                        storedReplicas += ((StatusResponseOfWarehouse) status).shards().size();
+                    }
+                    catch (ExecutionException | InterruptedException e)
+                    {
+                        throw new AssertionError(e);
+                    }
+                }
+
+                assertEquals(15, storedReplicas);
+                return null;
+            }, Duration.create(5, TimeUnit.SECONDS), Duration.create(100, TimeUnit.MILLISECONDS));
+
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new GetArtifactFromVault("ArtifactName", ConsistencyLevel.ALL),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            Object response = future.toCompletableFuture().get();
+
+            assertInstanceOf(ArtifactResponseFromCollector.class, response);
+            assertEquals(data, ((ArtifactResponseFromCollector) response).data());
+        }};
+    }
+
+    @Test
+    public void testExpireArtifact() throws ExecutionException, InterruptedException
+    {
+        List<Byte> data = Collections.nCopies(500, (byte) 100);
+
+        new TestKit(system)
+        {{
+            CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(vault, new AddArtifactToVault("ShortLived", data, ConsistencyLevel.ALL,
+                    java.time.Duration.ofSeconds(1)), Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertInstanceOf(ArtifactAddedToVault.class, future.toCompletableFuture().get());
+
+            vault.tell(new AddArtifactToVault("Kept", data), ActorRef.noSender());
+
+            Thread.sleep(2500);
+
+            future = FutureConverters.asJava(Patterns.ask(vault, new GetArtifactFromVault("ShortLived"),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertInstanceOf(ArtifactNotFoundInVault.class, future.toCompletableFuture().get());
+
+            future = FutureConverters.asJava(Patterns.ask(vault, new GetArtifactFromVault("Kept"),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertInstanceOf(ArtifactResponseFromCollector.class, future.toCompletableFuture().get());
+        }};
+    }
+
+    @Test
+    public void testUpdateArtifactRewritesOnlyChangedShards() throws ExecutionException, InterruptedException
+    {
+        ActorRef smallVault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 4), "VersionedVault");
+        List<Byte> data = new ArrayList<>(Collections.nCopies(1000, (byte) 100));
+
+        new TestKit(system)
+        {{
+            CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(smallVault, new AddArtifactToVault("ArtifactName", data, ConsistencyLevel.ALL),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertEquals(new ArtifactAddedToVault("ArtifactName", 1), future.toCompletableFuture().get());
+
+            data.set(350, (byte) 7);
+
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new UpdateArtifactInVault("ArtifactName", data, ConsistencyLevel.ALL),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertEquals(new ArtifactAddedToVault("ArtifactName", 2), future.toCompletableFuture().get());
+
+            // Ten shards of the first version and the changed one of the second, three replicas each
+            int storedReplicas = 0;
+
+            for (int warehouseId = 0; warehouseId < 4; ++warehouseId)
+            {
+                ActorRef warehouse = system.actorSelection("/user/VersionedVault/Warehouse-" + warehouseId).resolveOne(java.time.Duration.ofSeconds(1)).toCompletableFuture().get();
+                Object status = Patterns.ask(warehouse, new GetStatusOfWarehouse(), java.time.Duration.ofSeconds(1)).toCompletableFuture().get();
+                storedReplicas += ((StatusResponseOfWarehouse) status).shards().size();
+            }
+
+            assertEquals(33, storedReplicas);
+
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new GetArtifactFromVault("ArtifactName", ConsistencyLevel.ALL),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            Object response = future.toCompletableFuture().get();
+
+            assertInstanceOf(ArtifactResponseFromCollector.class, response);
+            assertEquals(data, ((ArtifactResponseFromCollector) response).data());
+
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new UpdateArtifactInVault("Missing", data),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertInstanceOf(ArtifactNotFoundInVault.class, future.toCompletableFuture().get());
+        }};
+    }
+
+    @Test
+    public void testAppendToArtifact() throws ExecutionException, InterruptedException
+    {
+        ActorRef smallVault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 4), "AppendVault");
+        List<Byte> data = Collections.nCopies(1000, (byte) 100);
+        List<Byte> appended = Collections.nCopies(130, (byte) 7);
+
+        new TestKit(system)
+        {{
+            CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(smallVault, new AddArtifactToVault("Log", data, ConsistencyLevel.ALL),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertEquals(new ArtifactAddedToVault("Log", 1), future.toCompletableFuture().get());
+
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new AppendToArtifactInVault("Log", appended.subList(0, 50), ConsistencyLevel.ALL),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertEquals(new ArtifactAddedToVault("Log", 2), future.toCompletableFuture().get());
+
+            // Rewrites the partial tail shard [1000:1050] as [1000:1100] and adds [1100:1130]
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new AppendToArtifactInVault("Log", appended.subList(50, 130), ConsistencyLevel.ALL),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertEquals(new ArtifactAddedToVault("Log", 3), future.toCompletableFuture().get());
+
+            int storedReplicas = 0;
+
+            for (int warehouseId = 0; warehouseId < 4; ++warehouseId)
+            {
+                ActorRef warehouse = system.actorSelection("/user/AppendVault/Warehouse-" + warehouseId).resolveOne(java.time.Duration.ofSeconds(1)).toCompletableFuture().get();
+                Object status = Patterns.ask(warehouse, new GetStatusOfWarehouse(), java.time.Duration.ofSeconds(1)).toCompletableFuture().get();
+                storedReplicas += ((StatusResponseOfWarehouse) status).shards().size();
+            }
+
+            assertEquals(3 * (10 + 1 + 2), storedReplicas);
+
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new GetArtifactFromVault("Log", ConsistencyLevel.ALL),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            Object response = future.toCompletableFuture().get();
+
+            List<Byte> expected = new ArrayList<>(data);
+            expected.addAll(appended);
+
+            assertInstanceOf(ArtifactResponseFromCollector.class, response);
+            assertEquals(expected, ((ArtifactResponseFromCollector) response).data());
+        }};
+    }
+
+    @Test
+    public void testDeleteArtifactsInBulk() throws ExecutionException, InterruptedException
+    {
+        ActorRef smallVault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 4), "BulkVault");
+        List<Byte> data = Collections.nCopies(500, (byte) 100);
+
+        new TestKit(system)
+        {{
+            for (String artifactId : List.of("logs-1", "logs-2", "data-1"))
+            {
+                CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(smallVault, new AddArtifactToVault(artifactId, data, ConsistencyLevel.ALL),
+                        Timeout.create(java.time.Duration.ofSeconds(5))));
+                assertEquals(new ArtifactAddedToVault(artifactId, 1), future.toCompletableFuture().get());
+            }
+
+            CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(smallVault, new DeleteArtifactsWithPrefixFromVault("logs-"),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertEquals(Set.of("logs-1", "logs-2"), Set.copyOf(((ArtifactsDeletedFromVault) future.toCompletableFuture().get()).artifactIds()));
+
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new GetArtifactFromVault("logs-1"), Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertInstanceOf(ArtifactNotFoundInVault.class, future.toCompletableFuture().get());
+
+            // Artifacts not in the vault are skipped
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new DeleteArtifactsFromVault(List.of("data-1", "missing")),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertEquals(new ArtifactsDeletedFromVault(List.of("data-1")), future.toCompletableFuture().get());
+
+            // Warehouses got a single message each and no longer store any shard
+            for (int warehouseId = 0; warehouseId < 4; ++warehouseId)
+            {
+                ActorRef warehouse = system.actorSelection("/user/BulkVault/Warehouse-" + warehouseId).resolveOne(java.time.Duration.ofSeconds(1)).toCompletableFuture().get();
+                Object status = Patterns.ask(warehouse, new GetStatusOfWarehouse(), java.time.Duration.ofSeconds(1)).toCompletableFuture().get();
+                assertTrue(((StatusResponseOfWarehouse) status).shards().isEmpty());
+            }
+        }};
+    }
+
+    @Test
+    public void testListArtifactsInPages() throws ExecutionException, InterruptedException
+    {
+        ActorRef smallVault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 4), "ListingVault");
+        List<Byte> data = Collections.nCopies(100, (byte) 100);
+
+        new TestKit(system)
+        {{
+            for (String artifactId : List.of("logs/3", "logs/1", "data/1", "logs/2"))
+            {
+                CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(smallVault, new AddArtifactToVault(artifactId, data, ConsistencyLevel.ALL),
+                        Timeout.create(java.time.Duration.ofSeconds(5))));
+                assertEquals(new ArtifactAddedToVault(artifactId, 1), future.toCompletableFuture().get());
+            }
+
+            CompletionStage<Object> future = FutureConverters.asJava(Patterns.ask(smallVault, new ListArtifactsInVault("logs/", null, 2),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertEquals(new ArtifactListFromVault("logs/", List.of("logs/1", "logs/2"), 3, "logs/2"), future.toCompletableFuture().get());
+
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new ListArtifactsInVault("logs/", "logs/2", 2),
+                    Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertEquals(new ArtifactListFromVault("logs/", List.of("logs/3"), 3, null), future.toCompletableFuture().get());
+
+            // Deleted artifacts leave the listing
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new DeleteArtifactFromVault("logs/1"), Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertEquals(new ArtifactDeletedFromVault("logs/1"), future.toCompletableFuture().get());
+
+            future = FutureConverters.asJava(Patterns.ask(smallVault, new ListArtifactsInVault("logs/"), Timeout.create(java.time.Duration.ofSeconds(5))));
+            assertEquals(new ArtifactListFromVault("logs/", List.of("logs/2", "logs/3"), 2, null), future.toCompletableFuture().get());
+        }};
+    }
+
+    @Test
+    public void testRetryAfterFailedFirstWrite() throws ExecutionException, InterruptedException
+    {
+        ActorRef slowVault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 0,
+                VaultSettings.defaults().withWriteTimeout(java.time.Duration.ofMillis(300))));
+        List<TestProbe> warehouses = new ArrayList<>();
+
+        for (int warehouseId = 0; warehouseId < 3; ++warehouseId)
+        {
+            TestProbe warehouse = new TestProbe(system);
+            warehouses.add(warehouse);
+            Patterns.ask(slowVault, new AttachWarehouseToVault(warehouseId, warehouse.ref()), java.time.Duration.ofSeconds(5)).toCompletableFuture().get();
+        }
+
+        List<Byte> data = Collections.nCopies(50, (byte) 1);
+
+        // Warehouses don't acknowledge the first write
+        CompletionStage<Object> future = Patterns.ask(slowVault, new AddArtifactToVault("Retried", data, ConsistencyLevel.ALL),
+                java.time.Duration.ofSeconds(5));
+        warehouses.forEach(warehouse -> warehouse.expectMsgClass(AddShardToWarehouse.class));
+        assertEquals(new CannotCompleteWrite("Retried"), future.toCompletableFuture().get());
+
+        warehouses.forEach(warehouse -> assertEquals(new DeleteArtifactsFromWarehouse(List.of("Retried")),
+                warehouse.expectMsgClass(DeleteArtifactsFromWarehouse.class)));
+
+        future = Patterns.ask(slowVault, new ListArtifactsInVault(""), java.time.Duration.ofSeconds(5));
+        assertEquals(new ArtifactListFromVault("", List.of(), 0, null), future.toCompletableFuture().get());
+
+        future = Patterns.ask(slowVault, new AddArtifactToVault("Retried", data, ConsistencyLevel.ALL), java.time.Duration.ofSeconds(5));
+
+        for (int warehouseId = 0; warehouseId < 3; ++warehouseId)
+        {
+            AddShardToWarehouse shard = warehouses.get(warehouseId).expectMsgClass(AddShardToWarehouse.class);
+            warehouses.get(warehouseId).reply(new ShardStoredInWarehouse(warehouseId, "Retried", shard.shardId()));
+        }
+
+        assertEquals(new ArtifactAddedToVault("Retried", 1), future.toCompletableFuture().get());
+    }
+
+    @Test
+    public void testThrottleClientAskingRepeatedly() throws ExecutionException, InterruptedException
+    {
+        ActorRef limitedVault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 10,
+                VaultSettings.defaults().withAdmission(new AdmissionSettings(100, 100, Long.MAX_VALUE, 0.01, 2, java.time.Duration.ofMillis(100)))));
+
+        CompletionStage<Object> future = Patterns.ask(limitedVault, new AddArtifactToVault("Throttled", Collections.nCopies(50, (byte) 1)),
+                java.time.Duration.ofSeconds(5));
+        assertInstanceOf(ArtifactAddedToVault.class, future.toCompletableFuture().get());
+
+        // Every ask is sent from a new temporary actor, the client is recognized by its id
+        for (int i = 0; i < 2; ++i)
+        {
+            future = Patterns.ask(limitedVault, new GetArtifactFromVault("Throttled", ConsistencyLevel.ALL, TraceContext.untraced(), "Client"),
+                    java.time.Duration.ofSeconds(5));
+            assertInstanceOf(ArtifactResponseFromCollector.class, future.toCompletableFuture().get());
+        }
+
+        future = Patterns.ask(limitedVault, new GetArtifactFromVault("Throttled", ConsistencyLevel.ALL, TraceContext.untraced(), "Client"),
+                java.time.Duration.ofSeconds(5));
+        ArtifactRequestRejected rejected = assertInstanceOf(ArtifactRequestRejected.class, future.toCompletableFuture().get());
+        assertEquals(Overload.CLIENT_RATE, rejected.reason());
+        assertTrue(rejected.retryAfter().toMillis() > 100);
+
+        future = Patterns.ask(limitedVault, new GetArtifactFromVault("Throttled", ConsistencyLevel.ALL, TraceContext.untraced(), "OtherClient"),
+                java.time.Duration.ofSeconds(5));
+        assertInstanceOf(ArtifactResponseFromCollector.class, future.toCompletableFuture().get());
+    }
+
+    @Test
+    public void testRangeReadPinnedToVersion() throws ExecutionException, InterruptedException
+    {
+        CompletionStage<Object> future = Patterns.ask(vault, new AddArtifactToVault("Pinned", Collections.nCopies(500, (byte) 1)),
+                java.time.Duration.ofSeconds(5));
+        assertInstanceOf(ArtifactAddedToVault.class, future.toCompletableFuture().get());
+
+        future = Patterns.ask(vault, new UpdateArtifactInVault("Pinned", Collections.nCopies(500, (byte) 2)), java.time.Duration.ofSeconds(5));
+        assertEquals(new ArtifactAddedToVault("Pinned", 2), future.toCompletableFuture().get());
+
+        // Replaced version is still retained, reads pinned to it keep getting its data
+        future = Patterns.ask(vault, new GetArtifactRangeFromVault("Pinned", 0, 10, ConsistencyLevel.ALL, 1, TraceContext.untraced(), null),
+                java.time.Duration.ofSeconds(5));
+        ArtifactRangeResponseFromCollector range = assertInstanceOf(ArtifactRangeResponseFromCollector.class, future.toCompletableFuture().get());
+        assertEquals(Collections.nCopies(10, (byte) 1), range.data());
+
+        future = Patterns.ask(vault, new GetArtifactRangeFromVault("Pinned", 0, 10, ConsistencyLevel.ALL, 2, TraceContext.untraced(), null),
+                java.time.Duration.ofSeconds(5));
+        range = assertInstanceOf(ArtifactRangeResponseFromCollector.class, future.toCompletableFuture().get());
+        assertEquals(Collections.nCopies(10, (byte) 2), range.data());
+
+        // Two versions are retained by default, the first one is dropped by the next update
+        future = Patterns.ask(vault, new UpdateArtifactInVault("Pinned", Collections.nCopies(500, (byte) 3)), java.time.Duration.ofSeconds(5));
+        assertEquals(new ArtifactAddedToVault("Pinned", 3), future.toCompletableFuture().get());
+
+        future = Patterns.ask(vault, new GetArtifactRangeFromVault("Pinned", 0, 10, ConsistencyLevel.ALL, 1, TraceContext.untraced(), null),
+                java.time.Duration.ofSeconds(5));
+        assertEquals(new ArtifactVersionChanged("Pinned", 1, 3), future.toCompletableFuture().get());
+
+        future = Patterns.ask(vault, new GetArtifactRangeFromVault("Pinned", 0, 10, ConsistencyLevel.ALL, 2, TraceContext.untraced(), null),
+                java.time.Duration.ofSeconds(5));
+        range = assertInstanceOf(ArtifactRangeResponseFromCollector.class, future.toCompletableFuture().get());
+        assertEquals(Collections.nCopies(10, (byte) 2), range.data());
+    }
+
+    @Test
+    public void testReAddDeletedArtifactWithinGracePeriod() throws ExecutionException, InterruptedException
+    {
+        // Every warehouse holds every shard, retired shards of the deleted artifact share ids with those of the new one
+        ActorRef smallVault = system.actorOf(VaultManagerActor.props(new ShardSizing(100, 16, 1024), 3, 3,
+                VaultSettings.defaults().withRetainedVersions(1).withVersionGracePeriod(java.time.Duration.ofMillis(300))));
+        List<Byte> readded = Collections.nCopies(500, (byte) 3);
+
+        CompletionStage<Object> future = Patterns.ask(smallVault, new AddArtifactToVault("Reused", Collections.nCopies(500, (byte) 1)),
+                java.time.Duration.ofSeconds(5));
+        assertInstanceOf(ArtifactAddedToVault.class, future.toCompletableFuture().get());
+
+        future = Patterns.ask(smallVault, new UpdateArtifactInVault("Reused", Collections.nCopies(500, (byte) 2)), java.time.Duration.ofSeconds(5));
+        assertEquals(new ArtifactAddedToVault("Reused", 2), future.toCompletableFuture().get());
+
+        future = Patterns.ask(smallVault, new DeleteArtifactFromVault("Reused"), java.time.Duration.ofSeconds(5));
+        assertInstanceOf(ArtifactDeletedFromVault.class, future.toCompletableFuture().get());
+
+        future = Patterns.ask(smallVault, new AddArtifactToVault("Reused", readded, ConsistencyLevel.ALL), java.time.Duration.ofSeconds(5));
+        assertEquals(new ArtifactAddedToVault("Reused", 1), future.toCompletableFuture().get());
+
+        Thread.sleep(1000);
+
+        future = Patterns.ask(smallVault, new GetArtifactFromVault("Reused", ConsistencyLevel.ALL), java.time.Duration.ofSeconds(5));
+        assertEquals(readded, assertInstanceOf(ArtifactResponseFromCollector.class, future.toCompletableFuture().get()).data());
+    }
 }
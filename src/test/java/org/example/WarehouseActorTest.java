@@ -2,6 +2,8 @@ package org.example;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
+import akka.dispatch.Envelope;
+import akka.dispatch.MessageQueue;
 import akka.pattern.Patterns;
 import akka.testkit.TestKit;
 import akka.testkit.TestProbe;
@@ -9,10 +11,14 @@ import akka.util.Timeout;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import org.example.actor.WarehouseActor;
+import org.example.actor.WarehouseMailbox;
+import org.example.storage.ShardStore;
+import org.example.storage.StorageSettings;
 import org.example.message.warehouse.*;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import scala.Option;
 import scala.concurrent.duration.Duration;
 import scala.jdk.javaapi.FutureConverters;
 
@@ -24,6 +30,7 @@ import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class WarehouseActorTest
 {
@@ -37,7 +44,7 @@ public class WarehouseActorTest
     {
         system = ActorSystem.create("TestSystem");
         vaultProbe = new TestProbe(system);
-        warehouse = system.actorOf(WarehouseActor.props(warehouseId, vaultProbe.ref()));
+        warehouse = system.actorOf(WarehouseActor.props(warehouseId, vaultProbe.ref()), WarehouseActor.actorName(warehouseId));
     }
 
     @AfterEach
@@ -224,6 +231,24 @@ public class WarehouseActorTest
         }};
     }
 
+    @Test
+    public void testAddShardAcknowledged()
+    {
+        String artifactId = "ArtifactName";
+        int shardId = 3;
+        List<Byte> data = Collections.nCopies(5, (byte) 1);
+
+        new TestKit(system)
+        {{
+            warehouse.tell(new AddShardToWarehouse(artifactId, shardId, data), getRef());
+
+            ShardStoredInWarehouse message = expectMsgClass(ShardStoredInWarehouse.class);
+            assertEquals(warehouseId, message.warehouseId());
+            assertEquals(artifactId, message.artifactId());
+            assertEquals(shardId, message.shardId());
+        }};
+    }
+
     @Test
     public void testGetNumberOfStoredShards()
     {
@@ -237,4 +262,83 @@ public class WarehouseActorTest
         assertEquals(warehouseId, numberOfStoredShards.warehouseId());
         assertEquals(1, numberOfStoredShards.numberOfStoredShards());
     }
+
+    @Test
+    public void testReplayHintToOwner()
+    {
+        TestProbe owner = new TestProbe(system);
+        TestProbe artifactManager = new TestProbe(system);
+        List<Byte> data = Collections.nCopies(5, (byte) 1);
+
+        warehouse.tell(new AddHintToWarehouse("ArtifactName", 0, data, 1, owner.ref()), artifactManager.ref());
+
+        ShardStoredInWarehouse stored = artifactManager.expectMsgClass(ShardStoredInWarehouse.class);
+        assertEquals(warehouseId, stored.warehouseId());
+
+        AddShardToWarehouse replayed = owner.expectMsgClass(Duration.create(2, TimeUnit.SECONDS), AddShardToWarehouse.class);
+        assertEquals(data, replayed.data());
+
+        // Delivered hint isn't replayed again
+        owner.reply(new ShardStoredInWarehouse(1, "ArtifactName", 0));
+        owner.expectNoMessage(Duration.create(1500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRejectShardOverQuota()
+    {
+        List<Byte> data = Collections.nCopies(100, (byte) 1);
+        long quota = ShardStore.ARTIFACT_OVERHEAD + 2L * "ArtifactName".length() + ShardStore.SHARD_OVERHEAD + data.size();
+        ActorRef limited = system.actorOf(WarehouseActor.props(1, vaultProbe.ref(), StorageSettings.inMemory().withQuota(quota)));
+
+        new TestKit(system)
+        {{
+            limited.tell(new AddShardToWarehouse("ArtifactName", 0, data), getRef());
+            expectMsgClass(ShardStoredInWarehouse.class);
+
+            limited.tell(new AddShardToWarehouse("ArtifactName", 1, data), getRef());
+
+            ShardRejectedByWarehouse rejected = expectMsgClass(ShardRejectedByWarehouse.class);
+            assertEquals(1, rejected.shardId());
+            assertEquals(quota, rejected.storedBytes());
+            assertEquals(quota, rejected.quota());
+
+            // Replacing a stored shard with one of the same size fits
+            limited.tell(new AddShardToWarehouse("ArtifactName", 0, data), getRef());
+            expectMsgClass(ShardStoredInWarehouse.class);
+        }};
+    }
+
+    @Test
+    public void testMailboxRejectsOnlyShardsOverCapacity()
+    {
+        TestProbe sender = new TestProbe(system);
+        MessageQueue queue = new WarehouseMailbox(1).create(Option.empty(), Option.apply(system));
+        List<Byte> data = Collections.nCopies(5, (byte) 1);
+
+        queue.enqueue(warehouse, Envelope.apply(new AddShardToWarehouse("ArtifactName", 0, data), sender.ref(), system));
+        queue.enqueue(warehouse, Envelope.apply(new AddShardToWarehouse("ArtifactName", 1, data), sender.ref(), system));
+        queue.enqueue(warehouse, Envelope.apply(new DeleteArtifactsFromWarehouse(List.of("ArtifactName")), sender.ref(), system));
+        queue.enqueue(warehouse, Envelope.apply(new DeleteShardFromWarehouse("ArtifactName", 0), sender.ref(), system));
+
+        // The sender is answered on behalf of the warehouse and may send the shard again later
+        ShardRejectedByWarehouse rejection = sender.expectMsgClass(ShardRejectedByWarehouse.class);
+        assertEquals(warehouse, sender.lastSender());
+        assertTrue(rejection.isOverloaded());
+        assertEquals(warehouseId, rejection.warehouseId());
+        assertEquals("ArtifactName", rejection.artifactId());
+        assertEquals(1, rejection.shardId());
+        assertEquals(3, queue.numberOfMessages());
+
+        queue.enqueue(warehouse, Envelope.apply(new GetShardFromWarehouse("ArtifactName", 0), sender.ref(), system));
+        assertEquals(new ShardNotFoundInWarehouse("ArtifactName", 0), sender.expectMsgClass(ShardNotFoundInWarehouse.class));
+
+        assertInstanceOf(AddShardToWarehouse.class, queue.dequeue().message());
+        assertInstanceOf(DeleteArtifactsFromWarehouse.class, queue.dequeue().message());
+        assertInstanceOf(DeleteShardFromWarehouse.class, queue.dequeue().message());
+
+        // Capacity is freed once a shard is dequeued
+        queue.enqueue(warehouse, Envelope.apply(new AddShardToWarehouse("ArtifactName", 2, data), sender.ref(), system));
+        assertEquals(1, queue.numberOfMessages());
+        sender.expectNoMessage();
+    }
 }
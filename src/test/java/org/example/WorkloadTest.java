@@ -0,0 +1,87 @@
+package org.example;
+
+import org.example.workload.LatencyHistogram;
+import org.example.workload.Operation;
+import org.example.workload.SizeDistribution;
+import org.example.workload.WorkloadSettings;
+import org.example.workload.ZipfianKeys;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkloadTest
+{
+    @Test
+    public void testHistogramPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int micros = 1; micros <= 10_000; ++micros)
+        {
+            histogram.record(micros);
+        }
+
+        assertEquals(10_000, histogram.count());
+        assertEquals(10_000, histogram.max());
+        assertEquals(5000.5, histogram.mean(), 1e-9);
+
+        // Within the precision of the buckets
+        assertEquals(5000, histogram.percentile(50), 5000 * 0.04);
+        assertEquals(9900, histogram.percentile(99), 9900 * 0.04);
+        assertEquals(10_000, histogram.percentile(100));
+
+        LatencyHistogram snapshot = histogram.reset();
+        assertEquals(10_000, snapshot.count());
+        assertEquals(0, histogram.count());
+    }
+
+    @Test
+    public void testZipfianKeysFavorLowRanks()
+    {
+        ZipfianKeys keys = new ZipfianKeys(1000, 1.0);
+        Random random = new Random(1);
+        int[] counts = new int[1000];
+
+        for (int i = 0; i < 100_000; ++i)
+        {
+            ++counts[keys.next(random)];
+        }
+
+        // Rank 0 is drawn twice as often as rank 1 and about 13% of the time (1 / H(1000))
+        assertEquals(2.0, (double) counts[0] / counts[1], 0.15);
+        assertEquals(0.134, counts[0] / 100_000.0, 0.01);
+    }
+
+    @Test
+    public void testSizesWithinBounds()
+    {
+        Random random = new Random(1);
+
+        for (SizeDistribution distribution : SizeDistribution.values())
+        {
+            for (int i = 0; i < 1000; ++i)
+            {
+                int size = distribution.sample(random, 10, 1000);
+                assertTrue(size >= 10 && size <= 1000);
+            }
+        }
+    }
+
+    @Test
+    public void testParseSettings()
+    {
+        WorkloadSettings settings = WorkloadSettings.parse(new String[]{"--rate=250", "--duration=1.5", "--put=1", "--get=1", "--delete=0",
+                "--sizes=FIXED"});
+
+        assertEquals(250, settings.requestRate());
+        assertEquals(Duration.ofMillis(1500), settings.duration());
+        assertEquals(SizeDistribution.FIXED, settings.sizeDistribution());
+        assertEquals(Operation.PUT, settings.operation(0.49));
+        assertEquals(Operation.GET, settings.operation(0.51));
+
+        assertThrows(IllegalArgumentException.class, () -> WorkloadSettings.parse(new String[]{"--unknown=1"}));
+    }
+}